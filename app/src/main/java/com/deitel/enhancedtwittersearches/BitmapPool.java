@@ -0,0 +1,123 @@
+package com.deitel.enhancedtwittersearches;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Mutable bitmaps that are no longer shown, kept so that new thumbnails can
+ * be decoded into them through BitmapFactory.Options.inBitmap instead of
+ * allocating new pixel memory for every decode. Since KitKat a bitmap can be
+ * reused for any image that fits into its allocation, so {@link #get}
+ * returns the smallest pooled bitmap that is large enough. Before KitKat
+ * only a bitmap of exactly the same size can be reused, and {@link #get}
+ * only returns such a bitmap.
+ * <p/>
+ * The pool is bounded by the bytes it holds; the least recently added
+ * bitmaps are dropped first. Thread safe.
+ */
+public class BitmapPool {
+
+    private final long maxBytes;
+    private final LinkedList<Bitmap> bitmaps = new LinkedList<Bitmap>(); // oldest first
+    private long size; // allocation bytes of all pooled bitmaps
+
+    private long hits; // get calls that returned a bitmap
+    private long misses; // get calls that did not
+
+    public BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Adds bitmap, which must no longer be drawn anywhere.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap.isRecycled() || !bitmap.isMutable() || byteCount(bitmap) > maxBytes)
+            return;
+
+        bitmaps.addLast(bitmap);
+        size += byteCount(bitmap);
+        while (size > maxBytes)
+            size -= byteCount(bitmaps.removeFirst());
+    }
+
+    /**
+     * Removes and returns the smallest pooled bitmap holding at least
+     * width x height pixels of config, or null if there is none. Before
+     * KitKat the bitmap must be exactly width x height.
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        int needed = width * height * bytesPerPixel(config);
+
+        Bitmap best = null;
+        for (Bitmap bitmap : bitmaps) {
+            if (bitmap.getConfig() != config)
+                continue;
+
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+                if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                    best = bitmap;
+                    break;
+                }
+            } else {
+                int bytes = bitmap.getAllocationByteCount();
+                if (bytes >= needed && (best == null || bytes < best.getAllocationByteCount()))
+                    best = bitmap;
+            }
+        }
+
+        if (best == null) {
+            ++misses;
+            return null;
+        }
+        ++hits;
+        remove(best);
+        return best;
+    }
+
+    public synchronized void clear() {
+        bitmaps.clear();
+        size = 0;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    // removes bitmap by identity; Bitmap.equals compares nothing else
+    private void remove(Bitmap bitmap) {
+        for (Iterator<Bitmap> i = bitmaps.iterator(); i.hasNext(); ) {
+            if (i.next() == bitmap) {
+                i.remove();
+                size -= byteCount(bitmap);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Memory held by bitmap: its allocation, which can be larger than its
+     * pixels after a reuse, or before KitKat, where that can't be queried and
+     * reuse requires the same size anyway, its pixels.
+     */
+    public static int byteCount(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)
+            return bitmap.getAllocationByteCount();
+        return bitmap.getByteCount();
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        return config == Bitmap.Config.RGB_565 ? 2 : 4;
+    }
+}
@@ -0,0 +1,157 @@
+package com.deitel.enhancedtwittersearches;
+
+import android.content.Context;
+import android.util.Log;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves saved-search result pages to WebViews from a {@link PageCache}.
+ * Fresh pages are returned straight from disk. Stale pages are returned too,
+ * for instant display, while a fresh copy is fetched in the background for
+ * the next visit (stale-while-revalidate). Pages that are not cached are
+ * fetched, stored and returned. Requests for a page that is already being
+ * fetched, e.g. when a search is opened twice in quick succession, share
+ * that fetch through a {@link SingleFlight} keyed by the normalized URL.
+ * <p/>
+ * {@link #intercept} is meant for WebViewClient.shouldInterceptRequest and
+ * runs on the WebView's network thread.
+ */
+public class CachedPageLoader {
+
+    private static final String TAG = "CachedPageLoader";
+
+    private static final MetricsRegistry.Counter FRESH_HITS =
+            MetricsRegistry.getInstance().counter("CachedPageLoader.freshHits");
+    private static final MetricsRegistry.Counter STALE_HITS =
+            MetricsRegistry.getInstance().counter("CachedPageLoader.staleHits");
+    private static final MetricsRegistry.Counter MISSES =
+            MetricsRegistry.getInstance().counter("CachedPageLoader.misses");
+    private static final Tracer.Span FETCH_SPAN = Tracer.span("CachedPageLoader.fetch");
+
+    private static final String CACHE_DIRECTORY = "pages";
+    private static final long MAX_CACHE_BYTES = 8 * 1024 * 1024;
+    private static final long TIME_TO_LIVE = 5 * 60 * 1000; // 5 minutes
+    private static final int TIMEOUT_MILLIS = 15 * 1000;
+    private static final int MAX_PAGE_BYTES = 2 * 1024 * 1024;
+
+    private static CachedPageLoader instance;
+
+    private final PageCache cache;
+    private final PageFetcher fetcher = new PageFetcher(TIMEOUT_MILLIS, MAX_PAGE_BYTES);
+    private final SingleFlight<String, PageCache.Page> fetches =
+            new SingleFlight<String, PageCache.Page>("CachedPageLoader.fetches");
+
+    // refreshes stale pages one at a time
+    private final ExecutorService revalidator = Executors.newSingleThreadExecutor();
+
+    // URLs with a refresh in progress
+    private final Set<String> revalidating = Collections.synchronizedSet(new HashSet<String>());
+
+    public static synchronized CachedPageLoader getInstance(Context context) {
+        if (instance == null)
+            instance = new CachedPageLoader(new File(context.getCacheDir(), CACHE_DIRECTORY));
+        return instance;
+    }
+
+    private CachedPageLoader(File directory) {
+        cache = new PageCache(directory, MAX_CACHE_BYTES, TIME_TO_LIVE);
+    }
+
+    /**
+     * Returns the page for url from the cache, fetching it if necessary.
+     *
+     * @param userAgent the WebView's User-Agent, so the server sends the same page
+     * @return the response, or null to let the WebView load url itself
+     */
+    public WebResourceResponse intercept(String url, String userAgent) {
+        PageCache.Page page = cache.get(url);
+
+        if (page != null) {
+            if (cache.isFresh(page)) {
+                FRESH_HITS.increment();
+            } else {
+                STALE_HITS.increment();
+                revalidate(url, userAgent);
+            }
+
+            if (BuildConfig.DEBUG)
+                Log.d(TAG, (cache.isFresh(page) ? "Fresh" : "Stale") + " cache hit for " + url);
+            return toResponse(page);
+        }
+
+        MISSES.increment();
+        try {
+            return toResponse(fetchShared(url, userAgent));
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to fetch " + url, e);
+            return null;
+        }
+    }
+
+    // fetches url into the cache in the background unless that is already happening
+    private void revalidate(final String url, final String userAgent) {
+        if (!revalidating.add(url))
+            return;
+
+        revalidator.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    fetchShared(url, userAgent);
+                } catch (IOException e) {
+                    Log.w(TAG, "Unable to refresh " + url, e);
+                } finally {
+                    revalidating.remove(url);
+                }
+            }
+        });
+    }
+
+    // fetches url, or waits for the fetch of the same page already in progress
+    private PageCache.Page fetchShared(final String url, final String userAgent)
+            throws IOException {
+        return fetches.execute(SearchUrlBuilder.normalize(url),
+                new SingleFlight.Load<PageCache.Page>() {
+                    @Override
+                    public PageCache.Page load() throws IOException {
+                        return fetch(url, userAgent);
+                    }
+                });
+    }
+
+    // fetches url with the WebView's cookies and stores the result
+    private PageCache.Page fetch(String url, String userAgent) throws IOException {
+        CookieManager cookieManager = CookieManager.getInstance();
+
+        long span = FETCH_SPAN.begin();
+        PageFetcher.Response response = fetcher.fetch(url, userAgent, cookieManager.getCookie(url));
+        FETCH_SPAN.end(span);
+        // the cookies were set by the page the search redirected to
+        for (String cookie : response.cookies)
+            cookieManager.setCookie(response.url, cookie);
+
+        PageCache.Page page = new PageCache.Page(url, response.mimeType, response.encoding,
+                System.currentTimeMillis(), response.body);
+        try {
+            cache.put(page);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to cache " + url, e);
+        }
+        return page;
+    }
+
+    private static WebResourceResponse toResponse(PageCache.Page page) {
+        return new WebResourceResponse(page.mimeType, page.encoding,
+                new ByteArrayInputStream(page.body));
+    }
+}
@@ -6,18 +6,43 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.app.ListFragment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.text.Editable;
+import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
+import android.widget.EditText;
 import android.widget.ListView;
 import android.widget.TextView;
+import android.widget.Toast;
 
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A fragment representing a list of Items.
@@ -30,14 +55,83 @@ public class ListViewFragment extends ListFragment {
 
     private static final String TAG = "ListViewFragment";
 
+    // timed while tracing is on
+    private static final Tracer.Span SETUP_SPAN = Tracer.span("ListViewFragment.setupListView");
+    private static final Tracer.Span ADD_SPAN = Tracer.span("ListViewFragment.addTaggedSearch");
+
     private OnItemListSelectedListener mListener;
 
-    // name of SharedPreferences XML file that stores the saved searches
-    private static final String SEARCHES = "searches";
+    // files in the app's external files directory used by import and export
+    private static final String IMPORT_FILE = "searches.import";
+    private static final String EXPORT_FILE = "searches.export";
+
+    // preference key: tags are listed most used first instead of by name
+    private static final String MOST_USED_FIRST = "mostUsedFirst";
 
-    private SharedPreferences savedSearches; // user's favorite searches
+    // preference key: ListSnapshot of the rows on screen when the list was last shown
+    private static final String LIST_SNAPSHOT = "listSnapshot";
+
+    private SavedSearchRepository savedSearches; // user's favorite searches
+    private SharedPreferences preferences; // the activity's preferences
+    private boolean mostUsedFirst; // tags are in TagRanking order instead of TAG_ORDER
     private ArrayList<String> tags; // list of tags for saved searches
-    private ArrayAdapter<String> adapter; // binds tags to ListView
+    private TagListAdapter adapter; // binds tags to ListView
+    private LoadSearchesTask loadTask; // non-null until the tags are loaded
+    private ListSnapshot snapshot; // rows shown from the last run until the tags are loaded
+
+    // opens and saves made while the tags load; they wait for the load
+    // instead of blocking the UI thread on the repository lock
+    private final ArrayList<Runnable> afterLoad = new ArrayList<Runnable>();
+
+    private TagFilter tagFilter; // type-ahead index over tags and queries, built lazily
+    private String filterText = ""; // current contents of the filter box
+    private TagListAdapter filteredAdapter; // binds the tags matching filterText to ListView
+
+    // limits of polling the saved searches for new results
+    private static final int REFRESH_CONCURRENCY = 4; // searches fetched at once
+    // every search goes to the same host, so a lower per-host cap would idle workers
+    private static final int REFRESH_PER_HOST = REFRESH_CONCURRENCY;
+    private static final int REFRESH_TIMEOUT_MILLIS = 15 * 1000;
+    private static final long MIN_POLL_INTERVAL = 2 * 60 * 1000; // while a search finds results
+    private static final long MAX_POLL_INTERVAL = 60 * 60 * 1000; // after repeated empty polls
+
+    // matches handed to the results fragment; they travel in its arguments,
+    // which must stay well below the binder transaction limit
+    private static final int MAX_SHOWN_MATCHES = 200;
+
+    // opens of a results fragment within this long of the last one are
+    // dropped before they touch the saved searches, so a double tap neither
+    // stacks two fragments nor records the use twice
+    private static final long OPEN_DEBOUNCE_MILLIS = 600;
+    private static final MetricsRegistry.Counter SUPPRESSED_OPENS =
+            MetricsRegistry.getInstance().counter("ListViewFragment.suppressedOpens");
+
+    // estimated similarity of two queries for "Find duplicates" to group them
+    private static final double DUPLICATE_SIMILARITY = 0.7;
+
+    private SearchRefresher refresher; // fetches the searches being polled, created on first use
+    private final ArrayList<SearchRefresher.Refresh> polls =
+            new ArrayList<SearchRefresher.Refresh>(); // polls in progress
+    private final PollScheduler pollScheduler =
+            new PollScheduler(MIN_POLL_INTERVAL, MAX_POLL_INTERVAL);
+    private boolean polling; // true while resumed; searches are only polled then
+    private long refreshStartTime = -1; // elapsedRealtime of the pending "Refresh all", or -1
+    private Map<String, Integer> unreadCounts = new HashMap<String, Integer>(); // per tag
+    private ResultIndex resultIndex = new ResultIndex(); // results fetched for the searches
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // polls the searches that are due, then waits for the next one
+    private final Runnable pollRunnable = new Runnable() {
+        @Override
+        public void run() {
+            pollDueSearches();
+        }
+    };
+
+    private long lastOpenTime; // elapsedRealtime when results were last opened
+    private long loadStartTime; // elapsedRealtime when loading started
+    private long timeToFirstTag = -1; // ms from load start until the first tag is shown
+    private long timeToAllTags = -1; // ms from load start until every tag is shown
 
     public static ListViewFragment newInstance() {
         ListViewFragment fragment = new ListViewFragment();
@@ -54,18 +148,84 @@ public class ListViewFragment extends ListFragment {
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        setHasOptionsMenu(true);
+    }
+
+    @Override
+    public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
+        super.onCreateOptionsMenu(menu, inflater);
+        inflater.inflate(R.menu.list_view_fragment, menu);
+        menu.findItem(R.id.mostUsedFirst).setChecked(mostUsedFirst);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.importSearches:
+                new ImportTask().execute(getTransferFile(IMPORT_FILE));
+                return true;
+            case R.id.exportSearches:
+                new ExportTask().execute(getTransferFile(EXPORT_FILE));
+                return true;
+            case R.id.mostUsedFirst:
+                mostUsedFirst = !item.isChecked();
+                item.setChecked(mostUsedFirst);
+                preferences.edit().putBoolean(MOST_USED_FIRST, mostUsedFirst).apply();
+                if (loadTask == null)
+                    reloadTags();
+                return true;
+            case R.id.refreshAll:
+                refreshAll();
+                return true;
+            case R.id.searchResults:
+                showSearchResultsDialog();
+                return true;
+            case R.id.findDuplicates:
+                new FindDuplicatesTask().execute();
+                return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container,
+                             Bundle savedInstanceState) {
+        // put the filter box above ListFragment's own list and progress views
+        View view = inflater.inflate(R.layout.fragment_list_view, container, false);
+        ViewGroup listHolder = (ViewGroup) view.findViewById(R.id.listHolder);
+        listHolder.addView(super.onCreateView(inflater, listHolder, savedInstanceState));
+
+        EditText filterEditText = (EditText) view.findViewById(R.id.filterEditText);
+        filterEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                applyFilter(s.toString());
+            }
+        });
+
+        return view;
     }
 
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
         super.onActivityCreated(savedInstanceState);
 
+        setupListView(getActivity());
+
         // setup listener for a item long click
         getListView().setOnItemLongClickListener(new AdapterView.OnItemLongClickListener() {
             @Override
             public boolean onItemLongClick(AdapterView<?> adapterView, View view, int i, long l) {
                 // get the tag that the user long touched
-            final String tag = ((TextView) view).getText().toString();
+            final String tag = (String) adapterView.getItemAtPosition(i);
 
             // create a new AlertDialog
             AlertDialog.Builder builder =
@@ -91,7 +251,8 @@ public class ListViewFragment extends ListFragment {
                            break;
                         case 1: // edit
                            // set EditTexts to match chosen tag and query
-                            mListener.editTaggedSearch(tag, savedSearches.getString(tag,""));
+                            mListener.editTaggedSearch(tag, savedSearches.getQuery(tag),
+                                    savedSearches.getFilters(tag));
                            break;
                         case 2: // delete
                            deleteSearch(tag);
@@ -121,11 +282,11 @@ public class ListViewFragment extends ListFragment {
 
     // allows user to choose an app for sharing a saved search's URL
     private void shareSearch(String tag) {
-        // create the URL representing the search
-        String urlString = getString(R.string.searchURL) +
-                Uri.encode(savedSearches.getString(tag, ""), "UTF-8");
+        // the URL representing the search, built when it was saved
+        String urlString = savedSearches.getUrl(tag);
 
-        Log.d(TAG, "In shareSearch for " + urlString);
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, "In shareSearch for " + urlString);
 
         // create Intent to share urlString
         Intent shareIntent = new Intent();
@@ -143,7 +304,8 @@ public class ListViewFragment extends ListFragment {
 
     // deletes a search after the user confirms the delete operation
     private void deleteSearch(final String tag) {
-        Log.d(TAG, "In deleteSearch for tag:" + tag);
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, "In deleteSearch for tag:" + tag);
         // create a new AlertDialog
         AlertDialog.Builder confirmBuilder = new AlertDialog.Builder(getActivity());
 
@@ -166,16 +328,24 @@ public class ListViewFragment extends ListFragment {
                 new DialogInterface.OnClickListener() {
                     // called when "Cancel" Button is clicked
                     public void onClick(DialogInterface dialog, int id) {
-                        tags.remove(tag); // remove tag from tags
+                        if (tagFilter != null)
+                            tagFilter.remove(tag, savedSearches.getQuery(tag));
 
-                        // get SharedPreferences.Editor to remove saved search
-                        SharedPreferences.Editor preferencesEditor =
-                                savedSearches.edit();
-                        preferencesEditor.remove(tag); // remove search
-                        preferencesEditor.apply(); // saves the changes
+                        // remove search, then remove tag from tags at its sorted position
+                        unreadCounts.remove(tag);
+                        pollScheduler.remove(tag);
+                        int position = savedSearches.remove(tag);
+                        if (mostUsedFirst && position >= 0) {
+                            tags.remove(tag);
+                            adapter.setTags(tags);
+                        } else if (position >= 0 && position < tags.size() &&
+                                tag.equals(tags.get(position))) {
+                            tags.remove(position);
 
-                        // rebind tags ArrayList to ListView to show updated list
-                        adapter.notifyDataSetChanged();
+                            // only the deleted row changes in the ListView
+                            adapter.setTags(tags);
+                        }
+                        refreshFilter();
                     }
                 } // end OnClickListener
         ); // end call to setPositiveButton
@@ -188,19 +358,67 @@ public class ListViewFragment extends ListFragment {
         super.onAttach(activity);
         try {
             mListener = (OnItemListSelectedListener) activity;
-
-            setupListView(activity);
-
         } catch (ClassCastException e) {
             throw new ClassCastException(activity.toString()
                     + " must implement OnItemListSelectedListener");
         }
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+
+        polling = true;
+        schedulePoll();
+
+        // searches opened since the list was last shown may have moved up
+        if (mostUsedFirst && loadTask == null && tags != null)
+            reloadTags();
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+
+        // stop polling while the list is not visible
+        polling = false;
+        handler.removeCallbacks(pollRunnable);
+        for (SearchRefresher.Refresh poll : polls)
+            poll.cancel();
+        polls.clear();
+        pollScheduler.cancelPolls();
+        if (refreshStartTime >= 0) {
+            refreshStartTime = -1;
+            getActivity().setProgressBarIndeterminateVisibility(false);
+        }
+
+        // write pending changes before the app may be killed
+        savedSearches.flush();
+        saveSnapshot();
+    }
+
     @Override
     public void onDetach() {
         super.onDetach();
         mListener = null;
+        if (savedSearches == null)
+            return; // detached before the list was set up
+
+        savedSearches.flush();
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, "Saved searches: " + savedSearches.getMutationCount() +
+                    " changes in " + savedSearches.getWriteCount() + " writes");
+
+        if (loadTask != null) {
+            loadTask.cancel(false);
+            loadTask = null;
+        }
+        afterLoad.clear();
+
+        if (refresher != null) {
+            refresher.shutdown();
+            refresher = null;
+        }
     }
 
     @Override
@@ -208,46 +426,752 @@ public class ListViewFragment extends ListFragment {
         super.onListItemClick(l, v, position, id);
 
         if (null != mListener) {
-            String tag = ((TextView) v).getText().toString();
-            String uriString = mListener.buildSearchString(savedSearches.getString(tag, ""));
+            if (isDuplicateOpen(SystemClock.elapsedRealtime()))
+                return;
+
+            final String tag = (String) getListAdapter().getItem(position);
+            if (loadTask != null) {
+                // a streamed or snapshot row; the repository is still loading
+                afterLoad.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        openSearch(tag);
+                    }
+                });
+                return;
+            }
+            openSearch(tag);
+        }
+    }
 
-            Log.d(TAG, "In onListItemClick() for:" + uriString);
+    // shows the results of tag
+    private void openSearch(String tag) {
+        if (null != mListener) {
+            // the results about to be shown count as seen
+            savedSearches.markSeen(tag);
+            savedSearches.recordUse(tag);
+            if (unreadCounts.remove(tag) != null) {
+                adapter.refreshRow(tag);
+                filteredAdapter.refreshRow(tag);
+            }
+            String uriString = savedSearches.getUrl(tag);
 
-            mListener.onItemSelectedInteraction(uriString);
+            if (BuildConfig.DEBUG)
+                Log.d(TAG, "In onListItemClick() for:" + uriString);
+
+            mListener.onItemSelectedInteraction(tag, uriString);
         }
     }
 
+    // true if results were opened less than OPEN_DEBOUNCE_MILLIS before now;
+    // otherwise now becomes the time of the last open
+    private boolean isDuplicateOpen(long now) {
+        if (lastOpenTime != 0 && now - lastOpenTime < OPEN_DEBOUNCE_MILLIS) {
+            SUPPRESSED_OPENS.increment();
+            return true;
+        }
+        lastOpenTime = now;
+        return false;
+    }
+
     // setup adapter for the listview
     private void setupListView(Activity activity) {
-        // get the SharedPreferences containing the user's saved searches
-        savedSearches = activity.getSharedPreferences(SEARCHES, Context.MODE_PRIVATE);
+        Trace.beginSection("ListViewFragment.setupListView");
+        long span = SETUP_SPAN.begin();
+
+        // get the repository containing the user's saved searches
+        savedSearches = SavedSearchRepository.getInstance(activity);
+        preferences = activity.getPreferences(Context.MODE_PRIVATE);
+        mostUsedFirst = preferences.getBoolean(MOST_USED_FIRST, false);
+
+        // tags are streamed in while the repository loads
+        tags = new ArrayList<String>();
+
+        // create the adapter; it is bound to the ListView when the first
+        // tags arrive, until then ListFragment shows its progress indicator
+        TagListListener listener = new TagListListener();
+        adapter = new TagListAdapter(activity, listener);
+
+        // the filtered list is shown instead while the filter box has text
+        filteredAdapter = new TagListAdapter(activity, listener);
+        tagFilter = null;
+        unreadCounts.clear();
+        resultIndex = new ResultIndex();
+        pollScheduler.clear();
+
+        loadStartTime = SystemClock.elapsedRealtime();
+        timeToFirstTag = -1;
+        timeToAllTags = -1;
+
+        loadTask = new LoadSearchesTask();
+        loadTask.execute();
+
+        // show the rows from the last run while loading, scrolled the same way
+        snapshot = ListSnapshot.decode(preferences.getString(LIST_SNAPSHOT, null));
+        if (snapshot != null && !snapshot.getTags().isEmpty()) {
+            tags.addAll(snapshot.getTags());
+            adapter.setTags(tags);
+            setListAdapter(adapter);
+            if (BuildConfig.DEBUG)
+                Log.d(TAG, "Showing " + tags.size() + " tags from the last run");
+        } else {
+            snapshot = null;
+        }
+        SETUP_SPAN.end(span);
+        Trace.endSection();
+    }
+
+    // remembers the rows on screen for the next cold start
+    private void saveSnapshot() {
+        if (loadTask != null || getListAdapter() != adapter || getView() == null)
+            return; // the list does not show all tags
+
+        List<String> shown = adapter.getTags();
+        ListView listView = getListView();
+        int first = listView.getFirstVisiblePosition();
+        int last = Math.min(listView.getLastVisiblePosition(), shown.size() - 1);
+        View firstRow = listView.getChildAt(0);
+        int offset = firstRow != null ? firstRow.getTop() : 0;
+
+        if (first > last) {
+            preferences.edit().remove(LIST_SNAPSHOT).apply();
+        } else {
+            ListSnapshot current = new ListSnapshot(first, offset, shown.subList(first, last + 1));
+            preferences.edit().putString(LIST_SNAPSHOT, current.encode()).apply();
+        }
+    }
+
+    // replaces the shown tags with all saved tags in the chosen order
+    private void reloadTags() {
+        tags.clear();
+        tags.addAll(mostUsedFirst ? savedSearches.getTagsByUse() : savedSearches.getTags());
+        adapter.setTags(tags);
+    }
+
+    // ms from attach until the first saved tag was shown, or -1 if not yet
+    public long getTimeToFirstTag() {
+        return timeToFirstTag;
+    }
+
+    // ms from attach until all saved tags were shown, or -1 if not yet
+    public long getTimeToAllTags() {
+        return timeToAllTags;
+    }
+
+    // binds the adapter, replacing the progress indicator with the list
+    private void showTags() {
+        if (filterText.length() > 0)
+            refreshFilter();
+        else if (getListAdapter() != adapter)
+            setListAdapter(adapter);
+    }
 
-        // store the saved tags in an ArrayList then sort them
-        tags = new ArrayList<String>(savedSearches.getAll().keySet());
-        Collections.sort(tags, String.CASE_INSENSITIVE_ORDER);
+    // shows the tags matching text, or all tags when text is empty
+    private void applyFilter(String text) {
+        filterText = text.trim();
 
-        // create ArrayAdapter and use it to bind tags to the ListView
-        adapter = new ArrayAdapter<String>(activity, R.layout.list_item, tags);
-        setListAdapter(adapter);
+        // keep the progress indicator up until the first tags are loaded
+        if (getListAdapter() == null)
+            return;
 
+        if (filterText.length() == 0) {
+            setListAdapter(adapter);
+            return;
+        }
+
+        if (tagFilter == null)
+            tagFilter = savedSearches.newTagFilter();
+
+        filteredAdapter.setTags(tagFilter.filter(filterText));
+
+        if (getListAdapter() != filteredAdapter)
+            setListAdapter(filteredAdapter);
     }
 
-    // add new search to the save file, then refresh all Buttons
-    public void addTaggedSearch(String query, String tag)
+    // applies the filter again after the saved searches changed
+    private void refreshFilter() {
+        if (filterText.length() > 0)
+            applyFilter(filterText);
+    }
+
+    // add new search to the save file, then refresh all Buttons;
+    // filters are the SearchUrlBuilder flags the search is run with
+    public void addTaggedSearch(final String query, final String tag, final int filters)
     {
-        Log.d(TAG,"In addTaggedSearch: " + tag + " query:" + query);
+        if (BuildConfig.DEBUG)
+            Log.d(TAG,"In addTaggedSearch: " + tag + " query:" + query + " filters:" + filters);
+
+        if (loadTask != null) {
+            afterLoad.add(new Runnable() {
+                @Override
+                public void run() {
+                    addTaggedSearch(query, tag, filters);
+                }
+            });
+            return;
+        }
+
+        // ask before saving a query another search already runs
+        long span = ADD_SPAN.begin();
+        boolean unchanged = query.equals(savedSearches.getQuery(tag)) &&
+                filters == savedSearches.getFilters(tag);
+        String duplicate = unchanged ? null : savedSearches.findDuplicate(tag, query, filters);
+        if (duplicate == null) {
+            saveTaggedSearch(query, tag, filters);
+            ADD_SPAN.end(span);
+            return;
+        }
+        ADD_SPAN.end(span);
 
-        // get a SharedPreferences.Editor to store new tag/query pair
-        SharedPreferences.Editor preferencesEditor = savedSearches.edit();
-        preferencesEditor.putString(tag, query); // store current search
-        preferencesEditor.apply(); // store the updated preferences
+        AlertDialog.Builder builder = new AlertDialog.Builder(getActivity());
+        builder.setMessage(getString(R.string.duplicateMessage, duplicate));
+        builder.setPositiveButton(R.string.saveAnyway, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                saveTaggedSearch(query, tag, filters);
+            }
+        });
+        builder.setNegativeButton(R.string.cancel, null);
+        builder.create().show();
+    }
 
-        // if tag is new, add to and sort tags, then display updated list
-        if (!tags.contains(tag))
+    private void saveTaggedSearch(String query, String tag, int filters) {
+        String oldQuery = savedSearches.getQuery(tag);
+        int oldFilters = savedSearches.getFilters(tag);
+        if (tagFilter != null) {
+            if (oldQuery.length() > 0)
+                tagFilter.remove(tag, oldQuery);
+            tagFilter.add(tag, query);
+        }
+
+        // results found for the old query do not count; poll the new one right away
+        if (!query.equals(oldQuery) || filters != oldFilters) {
+            unreadCounts.remove(tag);
+            pollScheduler.add(tag, SystemClock.elapsedRealtime());
+            schedulePoll();
+        }
+
+        // store current search; the repository returns where a new tag belongs
+        int position = savedSearches.put(tag, query, filters);
+
+        // if tag is new, insert it at its sorted position, then display updated list;
+        // unused tags rank last in the most used order
+        if (position >= 0 && loadTask == null)
         {
-            tags.add(tag); // add new tag
-            Collections.sort(tags, String.CASE_INSENSITIVE_ORDER);
-            adapter.notifyDataSetChanged(); // rebind tags to ListView
+            if (mostUsedFirst)
+                tags.add(tag);
+            else
+                tags.add(position, tag); // add new tag
+            adapter.setTags(tags); // only the new row changes in the ListView
+        }
+        refreshFilter();
+    }
+
+    // reads the saved searches off the UI thread, appending the sorted tags
+    // to the list chunk by chunk as they are read
+    private class LoadSearchesTask extends AsyncTask<Void, List<String>, Void>
+            implements SavedSearchRepository.LoadListener {
+        private int modCount; // repository state the streamed tags match
+        private int size; // number of tags the repository holds after loading
+        private TagFilter filter; // filter index built along with the load
+        private Map<String, Integer> unread; // unread result counts stored with the searches
+        private final ResultIndex results = new ResultIndex(); // results in the result log
+        private ArrayList<String> tagsByUse; // all tags most used first, if mostUsedFirst
+
+        @Override
+        protected Void doInBackground(Void... params) {
+            Trace.beginSection("LoadSearchesTask");
+            synchronized (savedSearches) {
+                savedSearches.load(this);
+                modCount = savedSearches.getModCount();
+                size = savedSearches.size();
+                filter = savedSearches.newTagFilter();
+                unread = savedSearches.getUnreadCounts();
+                if (mostUsedFirst)
+                    tagsByUse = savedSearches.getTagsByUse();
+            }
+
+            // index the results logged by earlier polls for local search
+            savedSearches.replayResults(new ResultLog.ResultVisitor() {
+                @Override
+                public void visit(String tag, SearchResult result) {
+                    results.add(tag, result);
+                }
+            });
+            Trace.endSection();
+            return null;
+        }
+
+        // called on the loading thread for every chunk of sorted tags
+        @Override
+        public void onTagsLoaded(List<String> chunk) {
+            publishProgress(chunk);
+        }
+
+        @Override
+        protected void onProgressUpdate(List<String>... chunks) {
+            if (mostUsedFirst)
+                return; // chunks are in name order; the ranked tags come at the end
+
+            // snapshot rows from further down the list stay until all tags are in
+            if (snapshot != null) {
+                if (snapshot.getPosition() > 0)
+                    return;
+                tags.clear();
+            }
+
+            for (List<String> chunk : chunks)
+                tags.addAll(chunk);
+            adapter.setTags(tags); // the list is bound once the first tags are applied
+            snapshot = null;
+
+            if (timeToFirstTag < 0 && !tags.isEmpty())
+                timeToFirstTag = SystemClock.elapsedRealtime() - loadStartTime;
+        }
+
+        @Override
+        protected void onPostExecute(Void result) {
+            // searches changed while loading, or the file was not in tag
+            // order, so the streamed tags are incomplete
+            if (tagsByUse != null && modCount == savedSearches.getModCount()) {
+                tags.clear();
+                tags.addAll(tagsByUse);
+                adapter.setTags(tags);
+            } else if (mostUsedFirst || snapshot != null ||
+                    modCount != savedSearches.getModCount() || size != tags.size()) {
+                reloadTags();
+            }
+            snapshot = null; // the diff moves the rows on screen to their loaded positions
+
+            // the filter index is only usable if nothing changed since it was built
+            tagFilter = modCount == savedSearches.getModCount() ? filter : null;
+
+            timeToAllTags = SystemClock.elapsedRealtime() - loadStartTime;
+            if (timeToFirstTag < 0)
+                timeToFirstTag = timeToAllTags;
+            showTags();
+            loadTask = null;
+
+            // start polling every search for new results, unless the
+            // background sync just did
+            unreadCounts = unread;
+            resultIndex = results;
+            adapter.refreshRows();
+            long sinceSync = SearchSyncService.getMillisSinceSync(getActivity());
+            long firstPoll = SystemClock.elapsedRealtime() +
+                    Math.max(0, MIN_POLL_INTERVAL - sinceSync);
+            restorePollSchedules(firstPoll);
+            schedulePoll();
+
+            if (BuildConfig.DEBUG)
+                Log.d(TAG, "Loaded " + tags.size() + " tags, first tag after " +
+                        timeToFirstTag + "ms, all tags after " + timeToAllTags + "ms");
+
+            // opens and saves made while loading, in the order they were made
+            ArrayList<Runnable> deferred = new ArrayList<Runnable>(afterLoad);
+            afterLoad.clear();
+            for (Runnable action : deferred)
+                action.run();
+        }
+    }
+
+    /**
+     * Schedules every tag as saved with it, but no earlier than firstPoll.
+     * Tags without a saved schedule, or whose poll is already due, are spread
+     * evenly over one minimum interval from firstPoll, so a cold start does
+     * not poll them all at once.
+     */
+    private void restorePollSchedules(long firstPoll) {
+        long now = SystemClock.elapsedRealtime();
+        long wallNow = System.currentTimeMillis();
+
+        ArrayList<String> due = new ArrayList<String>();
+        for (String tag : tags) {
+            long nextPollTime = savedSearches.getNextPollTime(tag);
+            long next = now + (nextPollTime - wallNow);
+            if (nextPollTime == 0 || next < firstPoll)
+                due.add(tag);
+            else
+                pollScheduler.add(tag, next, savedSearches.getPollInterval(tag));
+        }
+
+        for (int i = 0; i < due.size(); ++i) {
+            String tag = due.get(i);
+            pollScheduler.add(tag, firstPoll + i * MIN_POLL_INTERVAL / due.size(),
+                    savedSearches.getPollInterval(tag));
+        }
+    }
+
+    // polls every saved search now and reports when all polls completed
+    private void refreshAll() {
+        if (loadTask != null || !polling || refreshStartTime >= 0)
+            return;
+
+        refreshStartTime = SystemClock.elapsedRealtime();
+        getActivity().setProgressBarIndeterminateVisibility(true);
+
+        pollScheduler.pollAllAt(refreshStartTime);
+        pollDueSearches();
+        pollsFinished();
+    }
+
+    // starts fetching the searches that are due for a poll
+    private void pollDueSearches() {
+        if (!polling || mListener == null)
+            return;
+
+        List<String> due = pollScheduler.startDuePolls(SystemClock.elapsedRealtime());
+        if (!due.isEmpty()) {
+            // ask only for results newer than those already found
+            Map<String, String> urlsByTag = new LinkedHashMap<String, String>();
+            for (String tag : due)
+                urlsByTag.put(tag, savedSearches.getPollUrl(tag));
+
+            if (refresher == null) {
+                refresher = new SearchRefresher(REFRESH_CONCURRENCY, REFRESH_PER_HOST,
+                        REFRESH_TIMEOUT_MILLIS);
+            }
+
+            PollListener listener = new PollListener();
+            listener.poll = refresher.refresh(urlsByTag, listener);
+            polls.add(listener.poll);
+        }
+        schedulePoll();
+    }
+
+    // runs pollRunnable when the next search is due
+    private void schedulePoll() {
+        handler.removeCallbacks(pollRunnable);
+
+        long next = pollScheduler.nextDue();
+        if (polling && next != Long.MAX_VALUE)
+            handler.postDelayed(pollRunnable, Math.max(0, next - SystemClock.elapsedRealtime()));
+    }
+
+    // called on the UI thread with the results of a poll, or null if it failed
+    private void pollCompleted(String tag, List<SearchResult> results) {
+        int added = 0;
+        if (results != null) {
+            for (SearchResult result : results)
+                resultIndex.add(tag, result);
+            added = savedSearches.addPolledResults(tag, results);
+        }
+
+        pollScheduler.polled(tag, SystemClock.elapsedRealtime(), added > 0);
+        long interval = pollScheduler.getInterval(tag);
+        if (interval > 0)
+            savedSearches.setPollSchedule(tag, System.currentTimeMillis() + interval, interval);
+
+        if (added > 0) {
+            Integer unread = unreadCounts.get(tag);
+            unreadCounts.put(tag, (unread != null ? unread : 0) + added);
+            adapter.refreshRow(tag);
+            filteredAdapter.refreshRow(tag);
+        }
+        schedulePoll();
+    }
+
+    // reports the end of "Refresh all" once no poll is running any more
+    private void pollsFinished() {
+        if (refreshStartTime < 0 || !polls.isEmpty() || !isAdded())
+            return;
+
+        long elapsed = SystemClock.elapsedRealtime() - refreshStartTime;
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, "Refreshed " + pollScheduler.size() + " searches in " + elapsed + "ms");
+
+        refreshStartTime = -1;
+        getActivity().setProgressBarIndeterminateVisibility(false);
+        Toast.makeText(getActivity(), getString(R.string.refreshMessage, pollScheduler.size(), elapsed),
+                Toast.LENGTH_SHORT).show();
+    }
+
+    // hands the outcome of a poll to the UI thread, unless the poll was cancelled
+    private class PollListener implements SearchRefresher.RefreshListener {
+        private SearchRefresher.Refresh poll;
+
+        @Override
+        public void onRefreshed(final String tag, final List<SearchResult> results) {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (polls.contains(poll))
+                        pollCompleted(tag, results);
+                }
+            });
+        }
+
+        @Override
+        public void onRefreshFailed(final String tag, IOException error) {
+            Log.w(TAG, "Unable to poll " + tag, error);
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (polls.contains(poll))
+                        pollCompleted(tag, null);
+                }
+            });
+        }
+
+        @Override
+        public void onRefreshFinished() {
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (polls.remove(poll))
+                        pollsFinished();
+                }
+            });
+        }
+    }
+
+    // asks for a query and shows the fetched results that match it
+    private void showSearchResultsDialog() {
+        final EditText queryEditText = new EditText(getActivity());
+        queryEditText.setHint(R.string.searchResultsPrompt);
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(getActivity());
+        builder.setTitle(R.string.searchResults);
+        builder.setView(queryEditText);
+        builder.setPositiveButton(R.string.OK, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                searchResults(queryEditText.getText().toString());
+            }
+        });
+        builder.setNegativeButton(R.string.cancel, null);
+        builder.create().show();
+    }
+
+    // shows the results in the local index that match query
+    private void searchResults(String query) {
+        if (mListener == null)
+            return;
+
+        long start = SystemClock.elapsedRealtime();
+        // newest first, skipping results of searches deleted since they were indexed
+        int[] documents = resultIndex.search(query);
+        HashSet<String> current = new HashSet<String>(tags);
+        ArrayList<SearchResult> matches =
+                new ArrayList<SearchResult>(Math.min(documents.length, MAX_SHOWN_MATCHES));
+        int count = 0; // all matches, including those not shown
+        for (int i = documents.length - 1; i >= 0; --i) {
+            if (current.contains(resultIndex.getTag(documents[i]))) {
+                if (matches.size() < MAX_SHOWN_MATCHES)
+                    matches.add(resultIndex.getResult(documents[i]));
+                ++count;
+            }
+        }
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, "Found " + count + " of " + resultIndex.size() + " results for " +
+                    query + " in " + (SystemClock.elapsedRealtime() - start) + "ms");
+
+        if (matches.isEmpty()) {
+            Toast.makeText(getActivity(), getString(R.string.noMatchingResults, query),
+                    Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (isDuplicateOpen(SystemClock.elapsedRealtime()))
+            return;
+        if (count > matches.size()) {
+            Toast.makeText(getActivity(), getString(R.string.matchesCapped, matches.size(), count),
+                    Toast.LENGTH_SHORT).show();
+        }
+        mListener.showResults(query, matches);
+    }
+
+    // groups the saved searches whose queries are nearly the same off the UI thread
+    private class FindDuplicatesTask extends AsyncTask<Void, Void, List<List<String>>> {
+        private int count; // searches compared
+
+        @Override
+        protected List<List<String>> doInBackground(Void... params) {
+            long start = SystemClock.elapsedRealtime();
+            List<SavedSearch> searches = savedSearches.getSearches();
+            count = searches.size();
+            List<List<String>> groups = new NearDuplicateFinder(DUPLICATE_SIMILARITY)
+                    .findGroups(searches);
+            if (BuildConfig.DEBUG)
+                Log.d(TAG, "Found " + groups.size() + " groups of similar searches among " +
+                        count + " in " + (SystemClock.elapsedRealtime() - start) + "ms");
+            return groups;
+        }
+
+        @Override
+        protected void onPostExecute(List<List<String>> groups) {
+            if (!isAdded())
+                return;
+
+            if (groups.isEmpty()) {
+                Toast.makeText(getActivity(), getString(R.string.noDuplicates, count),
+                        Toast.LENGTH_SHORT).show();
+                return;
+            }
+
+            // one line per group, e.g. "nasa, NASA news"
+            StringBuilder message = new StringBuilder();
+            for (List<String> group : groups) {
+                if (message.length() > 0)
+                    message.append('\n');
+                message.append(TextUtils.join(", ", group));
+            }
+
+            AlertDialog.Builder builder = new AlertDialog.Builder(getActivity());
+            builder.setTitle(R.string.findDuplicates);
+            builder.setMessage(message);
+            builder.setPositiveButton(R.string.OK, null);
+            builder.create().show();
+        }
+    }
+
+    // file in the app's external files directory, or null if there is no storage
+    private File getTransferFile(String name) {
+        File directory = getActivity().getExternalFilesDir(null);
+        return directory != null ? new File(directory, name) : null;
+    }
+
+    // displays the outcome of an import or export
+    private void showTransferResult(int messageId, int count, File file, IOException error) {
+        if (!isAdded())
+            return;
+
+        String message = error != null ?
+                getString(R.string.transferFailed, error.getMessage()) :
+                getString(messageId, count, file.getName());
+        Toast.makeText(getActivity(), message, Toast.LENGTH_LONG).show();
+    }
+
+    // streams searches from the import file into the repository in bulk
+    private class ImportTask extends AsyncTask<File, Void, Integer> {
+        private File file;
+        private IOException error;
+
+        @Override
+        protected Integer doInBackground(File... files) {
+            file = files[0];
+            InputStream in = null;
+            try {
+                if (file == null)
+                    throw new IOException("No external storage");
+                in = new FileInputStream(file);
+                return savedSearches.importSearches(in);
+            } catch (IOException e) {
+                error = e;
+                return 0;
+            } finally {
+                closeQuietly(in);
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Integer count) {
+            // rebind all tags once; a running load picks them up by itself
+            if (loadTask == null && adapter != null) {
+                reloadTags();
+
+                tagFilter = null; // rebuilt on the next filtered keystroke
+                refreshFilter();
+
+                // imported searches replace the polling state of existing ones
+                unreadCounts = savedSearches.getUnreadCounts();
+                long now = SystemClock.elapsedRealtime();
+                for (String tag : tags) {
+                    if (!pollScheduler.contains(tag))
+                        pollScheduler.add(tag, now);
+                }
+                schedulePoll();
+            }
+
+            showTransferResult(R.string.importMessage, count, file, error);
+        }
+    }
+
+    // streams all searches from the repository into the export file
+    private class ExportTask extends AsyncTask<File, Void, Integer> {
+        private File file;
+        private IOException error;
+
+        @Override
+        protected Integer doInBackground(File... files) {
+            file = files[0];
+            OutputStream out = null;
+            try {
+                if (file == null)
+                    throw new IOException("No external storage");
+                out = new BufferedOutputStream(new FileOutputStream(file));
+                savedSearches.exportSearches(out);
+                return savedSearches.size();
+            } catch (IOException e) {
+                error = e;
+                return 0;
+            } finally {
+                closeQuietly(out);
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Integer count) {
+            showTransferResult(R.string.exportMessage, count, file, error);
+        }
+    }
+
+    // labels tags with the number of results found since they were last
+    // opened, and keeps the rows on screen in place when tags are inserted
+    // or removed above them
+    private class TagListListener implements TagListAdapter.Listener {
+
+        @Override
+        public CharSequence getLabel(String tag) {
+            Integer count = unreadCounts.get(tag);
+            return count != null ? getString(R.string.tagWithCount, tag, count) : tag;
+        }
+
+        @Override
+        public void onTagsApplied(TagListAdapter applied, TagDiff diff) {
+            if (applied != adapter || getView() == null)
+                return;
+            if (BuildConfig.DEBUG)
+                Log.d(TAG, "Applied tag changes " + diff);
+
+            // replace the progress indicator once the first tags are in
+            if (getListAdapter() == null) {
+                if (!adapter.isEmpty())
+                    showTags();
+                return;
+            }
+            if (getListAdapter() != adapter)
+                return;
+
+            ListView listView = getListView();
+            if (diff.getOldSize() == 0) {
+                // the rows from the last run, scrolled the same way
+                if (snapshot != null)
+                    listView.setSelectionFromTop(0, snapshot.getOffset());
+                return;
+            }
+
+            // the ListView has not been laid out again yet, so its rows still
+            // show the old tags; pin the first one that is still listed
+            int first = listView.getFirstVisiblePosition();
+            int count = Math.min(listView.getChildCount(), diff.getOldSize() - first);
+            for (int i = 0; i < count; ++i) {
+                int position = diff.newPosition(first + i);
+                if (position >= 0) {
+                    if (position != first + i)
+                        listView.setSelectionFromTop(position, listView.getChildAt(i).getTop());
+                    return;
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to close stream", e);
+            }
         }
     }
 
@@ -262,9 +1186,9 @@ public class ListViewFragment extends ListFragment {
      * >Communicating with Other Fragments</a> for more information.
      */
     public interface OnItemListSelectedListener {
-        void onItemSelectedInteraction(String id);
-        String buildSearchString(String topic);
-        void editTaggedSearch(String tag, String topic);
+        void onItemSelectedInteraction(String tag, String id);
+        void editTaggedSearch(String tag, String topic, int filters);
+        void showResults(String title, ArrayList<SearchResult> results);
         }
 
 }
@@ -0,0 +1,376 @@
+package com.deitel.enhancedtwittersearches;
+
+import android.app.AlertDialog;
+import android.app.ListFragment;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
+import android.webkit.CookieManager;
+import android.widget.BaseAdapter;
+import android.widget.ImageView;
+import android.widget.ListView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows the results of a saved search as a plain list instead of rendering
+ * the search page in a WebView. The page is fetched and parsed natively by
+ * {@link SearchResultParser} while it downloads, and the results are added
+ * to the list in chunks as they are parsed. It can also show results that
+ * were fetched earlier, such as matches from the {@link ResultIndex}.
+ * Results with an image show its thumbnail, loaded by {@link ThumbnailLoader}.
+ * Fragments opened for the same search while its page is loading share
+ * that load instead of fetching the page again.
+ * <p/>
+ * Use the {@link LiteResultsFragment#newInstance} factory method to
+ * create an instance of this fragment.
+ */
+public class LiteResultsFragment extends ListFragment {
+
+    private static final String TAG = "LiteResultsFragment";
+
+    // fetching and parsing a search page, timed while tracing is on
+    private static final Tracer.Span LOAD_SPAN = Tracer.span("LiteResultsFragment.load");
+    // loads in progress, keyed by normalized search URL
+    private static final SingleFlight<String, List<SearchResult>> loads =
+            new SingleFlight<String, List<SearchResult>>("LiteResultsFragment.loads");
+    private static final String ARG_URL = "url";
+    private static final String ARG_TAG = "tag";
+    private static final String ARG_RESULTS = "results";
+
+    private static final int TIMEOUT_MILLIS = 15 * 1000;
+    private static final int CHUNK_SIZE = 10; // results parsed before the list is updated
+    private static final int BENCHMARK_ROUNDS = 5; // decodes of each image per way of decoding
+
+    private String url; // search page to show
+    private String tag; // saved search being shown
+
+    private final ArrayList<SearchResult> results = new ArrayList<SearchResult>();
+    private ResultAdapter adapter; // binds results to ListView
+    private LoadResultsTask loadTask; // non-null while results are loading
+    private ThumbnailLoader thumbnailLoader;
+    private final ArrayList<ImageView> thumbnailViews = new ArrayList<ImageView>(); // one per row
+
+    /**
+     * Factory method for a fragment showing the results of a saved search.
+     *
+     * @param url URL of the search.
+     * @param tag Tag of the saved search.
+     * @return A new instance of fragment LiteResultsFragment.
+     */
+    public static LiteResultsFragment newInstance(String url, String tag) {
+        LiteResultsFragment fragment = new LiteResultsFragment();
+        Bundle args = new Bundle();
+        args.putString(ARG_URL, url);
+        args.putString(ARG_TAG, tag);
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    /**
+     * Factory method for a fragment showing results that were already fetched.
+     *
+     * @param results Results to show, in order. They are kept in the fragment's
+     * arguments, so the list must stay small.
+     * @param tag Title of the results, for logging.
+     * @return A new instance of fragment LiteResultsFragment.
+     */
+    public static LiteResultsFragment newInstance(ArrayList<SearchResult> results, String tag) {
+        LiteResultsFragment fragment = new LiteResultsFragment();
+        Bundle args = new Bundle();
+        args.putSerializable(ARG_RESULTS, results);
+        args.putString(ARG_TAG, tag);
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    public LiteResultsFragment() {
+        // Required empty public constructor
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        ArrayList<SearchResult> given = null;
+        if (getArguments() != null) {
+            url = getArguments().getString(ARG_URL);
+            tag = getArguments().getString(ARG_TAG);
+            given = (ArrayList<SearchResult>) getArguments().getSerializable(ARG_RESULTS);
+        }
+
+        setHasOptionsMenu(true);
+        thumbnailLoader = ThumbnailLoader.getInstance(getActivity());
+        adapter = new ResultAdapter();
+        if (given != null) {
+            results.addAll(given);
+        } else {
+            loadTask = new LoadResultsTask();
+            loadTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, url);
+        }
+    }
+
+    @Override
+    public void onViewCreated(View view, Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+
+        // keep the progress indicator until the first results arrive
+        if (!results.isEmpty() || loadTask == null)
+            setListAdapter(adapter);
+    }
+
+    // stop loading thumbnails into rows that are going away
+    @Override
+    public void onDestroyView() {
+        for (ImageView view : thumbnailViews)
+            thumbnailLoader.cancel(view);
+        thumbnailViews.clear();
+        super.onDestroyView();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (loadTask != null)
+            loadTask.cancel(false);
+    }
+
+    // open the tweet's own page in the browser
+    @Override
+    public void onListItemClick(ListView l, View v, int position, long id) {
+        SearchResult result = adapter.getItem(position);
+        startActivity(new Intent(Intent.ACTION_VIEW,
+                Uri.parse(getString(R.string.statusURL) + result.getStatusPath())));
+    }
+
+    @Override
+    public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
+        inflater.inflate(R.menu.lite_results_fragment, menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.benchmarkThumbnails) {
+            ArrayList<String> imageUrls = new ArrayList<String>();
+            for (SearchResult result : results) {
+                if (result.getImageUrl() != null)
+                    imageUrls.add(result.getImageUrl());
+            }
+
+            if (imageUrls.isEmpty())
+                Toast.makeText(getActivity(), R.string.noThumbnails, Toast.LENGTH_SHORT).show();
+            else
+                new BenchmarkTask().executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, imageUrls);
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void showResults() {
+        if (getListAdapter() == null && getView() != null)
+            setListAdapter(adapter);
+    }
+
+    // fetches and parses the search page off the UI thread, publishing
+    // results chunk by chunk as they are parsed
+    private class LoadResultsTask extends AsyncTask<String, List<SearchResult>, Integer>
+            implements PageFetcher.BodyReader<Integer>, SearchResultParser.ResultListener {
+        private final long startTime = SystemClock.elapsedRealtime();
+        private final long span = LOAD_SPAN.begin();
+        private final PageFetcher fetcher = new PageFetcher(TIMEOUT_MILLIS, 0);
+        private List<SearchResult> chunk = new ArrayList<SearchResult>(CHUNK_SIZE);
+        private List<SearchResult> all; // every result parsed, if this task loads the page
+        private IOException error;
+
+        @Override
+        protected Integer doInBackground(String... urls) {
+            final String url = urls[0];
+            try {
+                List<SearchResult> loaded = loads.execute(SearchUrlBuilder.normalize(url),
+                        new SingleFlight.Load<List<SearchResult>>() {
+                            @Override
+                            public List<SearchResult> load() throws IOException {
+                                all = new ArrayList<SearchResult>();
+                                fetcher.fetch(url, null,
+                                        CookieManager.getInstance().getCookie(url),
+                                        LoadResultsTask.this);
+                                return all;
+                            }
+                        });
+
+                // another fragment loaded the page; show its results at once
+                if (all == null && !loaded.isEmpty() && !isCancelled())
+                    publishProgress(loaded);
+                return loaded.size();
+            } catch (IOException e) {
+                error = e;
+                return 0;
+            }
+        }
+
+        // called on the loading thread with the page body as it downloads
+        @Override
+        public Integer read(InputStream body, String encoding) throws IOException {
+            int count = new SearchResultParser().parse(new InputStreamReader(body, encoding), this);
+            if (!chunk.isEmpty())
+                publishProgress(chunk);
+            return count;
+        }
+
+        // called on the loading thread for every result parsed
+        @Override
+        public void onResult(SearchResult result) {
+            all.add(result);
+            chunk.add(result);
+            if (chunk.size() == CHUNK_SIZE && !isCancelled()) {
+                publishProgress(chunk);
+                chunk = new ArrayList<SearchResult>(CHUNK_SIZE);
+            }
+        }
+
+        @Override
+        protected void onProgressUpdate(List<SearchResult>... chunks) {
+            for (List<SearchResult> chunk : chunks)
+                results.addAll(chunk);
+            adapter.notifyDataSetChanged();
+            showResults();
+        }
+
+        @Override
+        protected void onPostExecute(Integer count) {
+            LOAD_SPAN.end(span);
+            loadTask = null;
+            if (error != null) {
+                Log.w(TAG, "Unable to load results for " + tag, error);
+                if (getView() != null)
+                    setEmptyText(getString(R.string.liteResultsFailed));
+            }
+            showResults();
+
+            if (BuildConfig.DEBUG)
+                Log.d(TAG, "Parsed " + count + " results for " + tag + " in " +
+                        (SystemClock.elapsedRealtime() - startTime) + "ms");
+        }
+    }
+
+    // runs a ThumbnailBenchmark over the images of the shown results
+    private class BenchmarkTask extends AsyncTask<List<String>, Void, List<ThumbnailBenchmark.Result>> {
+        private IOException error;
+
+        @Override
+        protected List<ThumbnailBenchmark.Result> doInBackground(List<String>... imageUrls) {
+            try {
+                return new ThumbnailBenchmark(thumbnailLoader).run(imageUrls[0], BENCHMARK_ROUNDS);
+            } catch (IOException e) {
+                error = e;
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(List<ThumbnailBenchmark.Result> benchmark) {
+            if (error != null) {
+                Log.w(TAG, "Unable to load images for the benchmark", error);
+                if (getActivity() != null)
+                    Toast.makeText(getActivity(), R.string.liteResultsFailed, Toast.LENGTH_SHORT).show();
+                return;
+            }
+            if (!isAdded())
+                return; // left the screen while the benchmark ran
+
+            StringBuilder message = new StringBuilder();
+            for (ThumbnailBenchmark.Result result : benchmark) {
+                String line = result.outOfMemory ?
+                        getString(R.string.thumbnailBenchmarkOutOfMemory, result.name,
+                                result.decodes) :
+                        getString(R.string.thumbnailBenchmarkResult, result.name,
+                                result.getDecodesPerSecond(), result.peakHeapBytes / 1024);
+                Log.i(TAG, line);
+                message.append(line).append('\n');
+            }
+            new AlertDialog.Builder(getActivity())
+                    .setTitle(R.string.benchmarkThumbnails)
+                    .setMessage(message.toString().trim())
+                    .setPositiveButton(R.string.OK, null)
+                    .show();
+        }
+    }
+
+    // binds SearchResults to list_item_result rows, reusing row views
+    private class ResultAdapter extends BaseAdapter {
+
+        @Override
+        public int getCount() {
+            return results.size();
+        }
+
+        @Override
+        public SearchResult getItem(int position) {
+            return results.get(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return results.get(position).getId();
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            ViewHolder holder;
+            if (convertView == null) {
+                convertView = LayoutInflater.from(parent.getContext())
+                        .inflate(R.layout.list_item_result, parent, false);
+                holder = new ViewHolder();
+                holder.user = (TextView) convertView.findViewById(R.id.userTextView);
+                holder.time = (TextView) convertView.findViewById(R.id.timeTextView);
+                holder.text = (TextView) convertView.findViewById(R.id.resultTextView);
+                holder.thumbnail = (ImageView) convertView.findViewById(R.id.thumbnailImageView);
+                thumbnailViews.add(holder.thumbnail);
+                convertView.setTag(holder);
+            } else {
+                holder = (ViewHolder) convertView.getTag();
+            }
+
+            SearchResult result = results.get(position);
+            holder.user.setText(result.getUser());
+            holder.time.setText(result.getTime());
+            holder.text.setText(result.getText());
+            if (result.getImageUrl() != null) {
+                holder.thumbnail.setVisibility(View.VISIBLE);
+                thumbnailLoader.load(result.getImageUrl(), holder.thumbnail);
+            } else {
+                thumbnailLoader.cancel(holder.thumbnail);
+                holder.thumbnail.setVisibility(View.GONE);
+            }
+            return convertView;
+        }
+    }
+
+    // row views looked up once per row
+    private static class ViewHolder {
+        TextView user;
+        TextView time;
+        TextView text;
+        ImageView thumbnail;
+    }
+}
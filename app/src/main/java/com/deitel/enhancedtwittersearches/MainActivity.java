@@ -5,17 +5,34 @@ package com.deitel.enhancedtwittersearches;
 
 import android.app.Activity;
 import android.app.AlertDialog;
+import android.app.Fragment;
 import android.app.FragmentManager;
 import android.app.FragmentTransaction;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.View.OnClickListener;
+import android.view.ViewTreeObserver;
 import android.view.Window;
 import android.view.inputmethod.InputMethodManager;
 import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.ImageButton;
+import android.widget.Toast;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
 
 public class MainActivity extends Activity implements ListViewFragment.OnItemListSelectedListener,
         WebViewFragment.OnWebViewFragmentListener {
@@ -30,17 +47,60 @@ public class MainActivity extends Activity implements ListViewFragment.OnItemLis
 
    private ListViewFragment listViewFragment;
 
+   private static final String TAG = "MainActivity";
+
+   // tag of the list fragment, so it can be found again after a restart
+   private static final String LIST_FRAGMENT = "list";
+
+   // files in the app's external files directory that metrics are dumped to
+   private static final String PAGE_LOAD_METRICS_FILE = "page_loads.csv";
+   private static final String METRICS_FILE = "metrics.csv";
+
+   // keys of this activity's preferences
+   private static final String PREFETCH = "prefetch"; // prefetching opted in
+   private static final String PREFETCH_URL = "prefetchUrl"; // search most likely to be opened next
+   private static final String LITE_RESULTS = "liteResults"; // show parsed results instead of the page
+   private static final String TRACING = "tracing"; // hot paths are timed, see Tracer
+
+   private SharedPreferences preferences; // this activity's preferences
+   private WebViewPool webViewPool; // WebViews shared by WebViewFragments
+
+   private long createTime; // elapsedRealtime when onCreate started
+   private boolean firstFrameDrawn; // the list and prefetching wait for the first frame
+
    // called when MainActivity is first created
    @Override
    protected void onCreate(Bundle savedInstanceState)
    {
+      createTime = SystemClock.elapsedRealtime();
+      Trace.beginSection("MainActivity.onCreate");
       super.onCreate(savedInstanceState);
 
       requestWindowFeature(Window.FEATURE_INDETERMINATE_PROGRESS);
 
       setContentView(R.layout.activity_main);
 
-      insertListViewFragment();
+      // a list fragment restored by the FragmentManager is reused; a new one
+      // is only inserted after the input form has been drawn
+      listViewFragment =
+         (ListViewFragment) getFragmentManager().findFragmentByTag(LIST_FRAGMENT);
+      final View content = findViewById(android.R.id.content);
+      content.getViewTreeObserver().addOnPreDrawListener(
+         new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+               content.getViewTreeObserver().removeOnPreDrawListener(this);
+
+               // runs once the frame being drawn is on screen
+               content.post(new Runnable() {
+                  @Override
+                  public void run() {
+                     onFirstFrameDrawn();
+                  }
+               });
+               return true;
+            }
+         });
 
       // get references to the EditTexts  
       queryEditText = (EditText) findViewById(R.id.queryEditText);
@@ -51,14 +111,116 @@ public class MainActivity extends Activity implements ListViewFragment.OnItemLis
          (ImageButton) findViewById(R.id.saveButton);
       saveButton.setOnClickListener(saveButtonListener);
 
-      // setup the checkboxes for search filter
-      liveCheckBox = (CheckBox) findViewById(R.id.liveCheckBox);
-      newsCheckBox = (CheckBox) findViewById(R.id.newsCheckBox);
-      photosCheckBox = (CheckBox) findViewById(R.id.photosCheckBox);
-      videosCheckBox = (CheckBox) findViewById(R.id.videosCheckBox);
+      // the filter checkboxes are set up on first use
+
+      preferences = getPreferences(Context.MODE_PRIVATE);
+      Tracer.setEnabled(preferences.getBoolean(TRACING, false));
+      webViewPool = new WebViewPool(this);
+      webViewPool.setPrefetchEnabled(preferences.getBoolean(PREFETCH, false));
 
+      // new results are fetched in the background while the app is closed
+      SearchSyncService.schedule(this);
+
+      Trace.endSection();
    } // end method onCreate
 
+   @Override
+   protected void onResume() {
+      super.onResume();
+
+      // creating a WebView would delay the first frame; wait for it
+      if (firstFrameDrawn)
+         prefetchLikelySearch();
+   }
+
+   // inserts the list and starts the work that was held back for the first frame
+   private void onFirstFrameDrawn() {
+      if (firstFrameDrawn || isFinishing())
+         return;
+      firstFrameDrawn = true;
+      if (BuildConfig.DEBUG)
+         Log.d(TAG, "First frame drawn " + (SystemClock.elapsedRealtime() - createTime) +
+            "ms after onCreate");
+
+      Trace.beginSection("MainActivity.onFirstFrameDrawn");
+      if (listViewFragment == null)
+         insertListViewFragment();
+      prefetchLikelySearch();
+      Trace.endSection();
+   }
+
+   // warm the pooled WebView with the search most likely to be opened next
+   private void prefetchLikelySearch() {
+      webViewPool.prefetch(preferences.getString(PREFETCH_URL, null));
+   }
+
+   // URL of the most used search, or openedUrl if there is none; the
+   // repository is loaded once a search has been opened, so this doesn't
+   // read from disk
+   private String likelySearchUrl(String openedUrl) {
+      SavedSearchRepository savedSearches = SavedSearchRepository.getInstance(this);
+      ArrayList<String> tagsByUse = savedSearches.getTagsByUse();
+      String url = tagsByUse.isEmpty() ? null : savedSearches.getUrl(tagsByUse.get(0));
+      return url != null ? url : openedUrl;
+   }
+
+   @Override
+   protected void onDestroy() {
+      super.onDestroy();
+      webViewPool.clear();
+   }
+
+   @Override
+   public void onTrimMemory(int level) {
+      super.onTrimMemory(level);
+
+      // idle WebViews are cheap to recreate compared to what they hold
+      if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+         webViewPool.trim();
+         ThumbnailLoader.getInstance(this).trimMemory();
+      }
+   }
+
+   @Override
+   public boolean onCreateOptionsMenu(Menu menu) {
+      getMenuInflater().inflate(R.menu.main, menu);
+      menu.findItem(R.id.prefetchSearches).setChecked(webViewPool.isPrefetchEnabled());
+      menu.findItem(R.id.liteResults).setChecked(preferences.getBoolean(LITE_RESULTS, false));
+      menu.findItem(R.id.traceHotPaths).setChecked(Tracer.isEnabled());
+      return true;
+   }
+
+   @Override
+   public boolean onOptionsItemSelected(MenuItem item) {
+      if (item.getItemId() == R.id.prefetchSearches) {
+         boolean enabled = !item.isChecked();
+         item.setChecked(enabled);
+
+         preferences.edit().putBoolean(PREFETCH, enabled).apply();
+         webViewPool.setPrefetchEnabled(enabled);
+         prefetchLikelySearch();
+         return true;
+      }
+      else if (item.getItemId() == R.id.liteResults) {
+         boolean enabled = !item.isChecked();
+         item.setChecked(enabled);
+         preferences.edit().putBoolean(LITE_RESULTS, enabled).apply();
+         return true;
+      }
+      else if (item.getItemId() == R.id.traceHotPaths) {
+         boolean enabled = !item.isChecked();
+         item.setChecked(enabled);
+         preferences.edit().putBoolean(TRACING, enabled).apply();
+         Tracer.setEnabled(enabled);
+         return true;
+      }
+      else if (item.getItemId() == R.id.dumpMetrics) {
+         dumpMetrics();
+         return true;
+      }
+      return super.onOptionsItemSelected(item);
+   }
+
    @Override
    public void onBackPressed() {
       // we need to handle the back button pressed event
@@ -78,7 +240,7 @@ public class MainActivity extends Activity implements ListViewFragment.OnItemLis
 
       FragmentManager fm = getFragmentManager();
       FragmentTransaction fragmentTransaction = fm.beginTransaction();
-      fragmentTransaction.replace(R.id.fragment_container, listViewFragment);
+      fragmentTransaction.replace(R.id.fragment_container, listViewFragment, LIST_FRAGMENT);
       fragmentTransaction.commit();
    }
 
@@ -92,9 +254,14 @@ public class MainActivity extends Activity implements ListViewFragment.OnItemLis
          if (queryEditText.getText().length() > 0 &&
             tagEditText.getText().length() > 0)
          {
-            // actual saving done by ListViewFragment
+            // actual saving done by ListViewFragment, which may not be
+            // inserted yet if the first frame is still being drawn
+            if (listViewFragment == null) {
+               insertListViewFragment();
+               getFragmentManager().executePendingTransactions();
+            }
             listViewFragment.addTaggedSearch(queryEditText.getText().toString(),
-               tagEditText.getText().toString());
+               tagEditText.getText().toString(), getSelectedFilters());
 
             queryEditText.setText(""); // clear queryEditText
             tagEditText.setText(""); // clear tagEditText
@@ -123,58 +290,132 @@ public class MainActivity extends Activity implements ListViewFragment.OnItemLis
    }; // end OnClickListener anonymous inner class
 
    @Override
-   public void onItemSelectedInteraction(String id) {
+   public void onItemSelectedInteraction(String tag, String id) {
+      long clickTime = SystemClock.elapsedRealtime();
+
+      // remember the most used search, counting this open, so it can be
+      // prefetched next time
+      preferences.edit().putString(PREFETCH_URL, likelySearchUrl(id)).apply();
+
       // instantiate simple fragment using factory method
-      WebViewFragment webViewFragment = WebViewFragment.newInstance(id);
+      Fragment resultsFragment;
+      if (preferences.getBoolean(LITE_RESULTS, false))
+         resultsFragment = LiteResultsFragment.newInstance(id, tag);
+      else
+         resultsFragment = WebViewFragment.newInstance(id, tag, clickTime);
 
+      showResultsFragment(resultsFragment);
+   }
+
+   // shows results that were already fetched in the lite results list
+   @Override
+   public void showResults(String title, ArrayList<SearchResult> results) {
+      showResultsFragment(LiteResultsFragment.newInstance(results, title));
+   }
+
+   // replaces the tag list with fragment, flipping it in like a card
+   private void showResultsFragment(Fragment fragment) {
       FragmentTransaction ft = getFragmentManager().beginTransaction();
 
       // perform card flip animation
       ft.setCustomAnimations(
               R.anim.card_flip_left_in, R.anim.card_flip_left_out, R.anim.card_flip_right_in, R.anim.card_flip_right_out);
 
-      ft.replace(R.id.fragment_container, webViewFragment);
+      ft.replace(R.id.fragment_container, fragment);
       ft.addToBackStack(null);
       ft.commit();
-
    }
 
-   // build the twitter search string based on the tag and selected filter(s)
-    public String buildSearchString(String topic) {
-
-        boolean isDefaultFilter = liveCheckBox.isChecked() && newsCheckBox.isChecked() &&
-                photosCheckBox.isChecked() && videosCheckBox.isChecked();
-
-       String twitterURL = getString(R.string.searchURL2);
-       if (isDefaultFilter) {
-            return twitterURL + "?q=" + topic;
-        }
-
-        StringBuilder filterString = new StringBuilder("?");
+   // bitmask of the checked filter CheckBoxes, saved with a search
+    private int getSelectedFilters() {
+        findFilterCheckBoxes();
+        int filters = 0;
 
         if (liveCheckBox.isChecked())
-            filterString.append("f=tweets&");
+            filters |= SearchUrlBuilder.LIVE;
 
         if (newsCheckBox.isChecked())
-            filterString.append("f=news&");
+            filters |= SearchUrlBuilder.NEWS;
 
         if (photosCheckBox.isChecked())
-            filterString.append("f=images&");
+            filters |= SearchUrlBuilder.PHOTOS;
 
         if (videosCheckBox.isChecked())
-            filterString.append("f=videos&");
+            filters |= SearchUrlBuilder.VIDEOS;
+
+        return filters;
+    }
 
-        return twitterURL + filterString.toString() + "q=" + topic;
+   // checks the filter CheckBoxes in the bitmask filters
+    private void setSelectedFilters(int filters) {
+        findFilterCheckBoxes();
+        liveCheckBox.setChecked((filters & SearchUrlBuilder.LIVE) != 0);
+        newsCheckBox.setChecked((filters & SearchUrlBuilder.NEWS) != 0);
+        photosCheckBox.setChecked((filters & SearchUrlBuilder.PHOTOS) != 0);
+        videosCheckBox.setChecked((filters & SearchUrlBuilder.VIDEOS) != 0);
     }
 
-   // populate the edit text and tag for editing
+    private void findFilterCheckBoxes() {
+        if (liveCheckBox == null) {
+            // setup the checkboxes for search filter
+            liveCheckBox = (CheckBox) findViewById(R.id.liveCheckBox);
+            newsCheckBox = (CheckBox) findViewById(R.id.newsCheckBox);
+            photosCheckBox = (CheckBox) findViewById(R.id.photosCheckBox);
+            videosCheckBox = (CheckBox) findViewById(R.id.videosCheckBox);
+        }
+    }
+
+   // populate the edit text, tag and filters for editing
    @Override
-   public void editTaggedSearch(String tag, String topic) {
+   public void editTaggedSearch(String tag, String topic, int filters) {
       tagEditText.setText(tag);
       queryEditText.setText(topic);
+      setSelectedFilters(filters);
    }
 
 
+   // writes the page-load metrics and the metrics registry to files for offline analysis
+   private void dumpMetrics() {
+      File directory = getExternalFilesDir(null);
+      if (directory == null) {
+         Toast.makeText(this, R.string.noExternalStorage, Toast.LENGTH_LONG).show();
+         return;
+      }
+
+      final File pageLoadFile = new File(directory, PAGE_LOAD_METRICS_FILE);
+      final File metricsFile = new File(directory, METRICS_FILE);
+      Toast.makeText(this, getString(R.string.dumpMessage, directory.getPath()),
+         Toast.LENGTH_LONG).show();
+
+      new Thread(new Runnable() {
+         @Override
+         public void run() {
+            try {
+               Writer out = new BufferedWriter(new FileWriter(pageLoadFile));
+               try {
+                  PageLoadMetrics.getInstance().dump(out);
+               } finally {
+                  out.close();
+               }
+
+               out = new BufferedWriter(new FileWriter(metricsFile));
+               try {
+                  MetricsRegistry.getInstance().dump(out);
+               } finally {
+                  out.close();
+               }
+            } catch (IOException e) {
+               Log.e(TAG, "Unable to dump metrics", e);
+            }
+         }
+      }).start();
+   }
+
+   @Override
+   public WebViewPool getWebViewPool() {
+      return webViewPool;
+   }
+
    // Display or hide hour glass in the toolbar
    @Override
    public void showHourGlass(boolean show) {
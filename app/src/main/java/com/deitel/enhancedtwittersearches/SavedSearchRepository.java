@@ -0,0 +1,722 @@
+package com.deitel.enhancedtwittersearches;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Stores the user's saved searches in a single binary file (see
+ * {@link SavedSearchCodec}) and keeps them in a sorted, case-insensitive
+ * {@link SavedSearchIndex}.
+ * <p/>
+ * The file is read lazily by {@link #load()}, which does disk I/O and must be
+ * called off the UI thread. On first load the searches from the old "searches"
+ * SharedPreferences file are migrated into the new file.
+ * <p/>
+ * Changes are written behind: mutations within a short window are coalesced
+ * into one write of the whole file by a {@link WriteBehindQueue}. Call
+ * {@link #flush()} when the app leaves the foreground.
+ * <p/>
+ * The results found by polling are kept in a {@link ResultLog} in the cache
+ * directory. A tag's results are evicted when its search is deleted or its
+ * query changes. Appends and evictions run in order on a background thread,
+ * since they can map a new segment or wait for compaction.
+ * <p/>
+ * Every search opened is counted in a {@link TagRanking}, which orders the
+ * tags for the "most used first" view; the decayed counts are saved with
+ * the searches.
+ * <p/>
+ * Searches are also indexed by their normalized query and filters (see
+ * {@link QueryNormalizer}), so a new search that repeats an existing one is
+ * found with one hash lookup.
+ * <p/>
+ * Each search keeps its search URL, so opening or sharing a search is a
+ * lookup. The URL is built when the search is saved, imported or loaded, so
+ * a stored URL for another query or from an older encoding is never used.
+ */
+public class SavedSearchRepository {
+
+    private static final String TAG = "SavedSearchRepository";
+
+    // timed while tracing is on
+    private static final Tracer.Span BUILD_URL_SPAN = Tracer.span("SavedSearchRepository.buildUrl");
+
+    // name of the file that stores the saved searches
+    private static final String SEARCHES_FILE = "searches.dat";
+
+    // name of the SharedPreferences XML file used by earlier versions
+    private static final String LEGACY_SEARCHES = "searches";
+
+    // tags delivered in the first LoadListener chunk; enough to fill a screen
+    private static final int FIRST_CHUNK_SIZE = 32;
+
+    // largest chunk delivered to a LoadListener
+    private static final int MAX_CHUNK_SIZE = 1024;
+
+    // how long mutations are collected before the file is rewritten
+    private static final long WRITE_WINDOW_MILLIS = 500;
+
+    // result log in the cache directory; at most 16 segments of 256KB
+    private static final String RESULTS_DIRECTORY = "results";
+    private static final int RESULT_SEGMENT_SIZE = 256 * 1024;
+    private static final int MAX_RESULT_SEGMENTS = 16;
+
+    // searches opened between halvings of all use counts
+    private static final int USE_DECAY_PERIOD = 100;
+
+    private static SavedSearchRepository instance;
+
+    private final Context context;
+    private final SearchUrlBuilder urlBuilder;
+    private final AtomicFile searchesFile;
+    private final SavedSearchIndex index = new SavedSearchIndex();
+    private final ResultLog resultLog; // results found by polling, by tag
+    private final TagRanking ranking = new TagRanking(USE_DECAY_PERIOD); // tags by use
+
+    // tags by normalized query; more than one tag per key if the user saved duplicates anyway
+    private final HashMap<String, ArrayList<String>> tagsByKey =
+            new HashMap<String, ArrayList<String>>();
+
+    // writes the file in the background, coalescing mutations
+    private final WriteBehindQueue writeQueue = new WriteBehindQueue(new Runnable() {
+        @Override
+        public void run() {
+            List<SavedSearch> snapshot;
+            synchronized (SavedSearchRepository.this) {
+                if (readFailed)
+                    return; // never replace searches that could not be read
+                snapshot = index.snapshot();
+            }
+            writeSearches(snapshot);
+        }
+    }, WRITE_WINDOW_MILLIS);
+
+    // appends to and evicts from the result log, in order, off the caller's thread
+    private final ExecutorService logWriter = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "SavedSearchRepository log");
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+
+    private boolean loaded;
+    private boolean readFailed; // the file is damaged; it is left as is until the next start
+
+    public static synchronized SavedSearchRepository getInstance(Context context) {
+        if (instance == null)
+            instance = new SavedSearchRepository(context.getApplicationContext());
+        return instance;
+    }
+
+    private SavedSearchRepository(Context context) {
+        this.context = context;
+        urlBuilder = new SearchUrlBuilder(context.getString(R.string.searchURL2));
+        searchesFile = new AtomicFile(new File(context.getFilesDir(), SEARCHES_FILE));
+        resultLog = new ResultLog(new File(context.getCacheDir(), RESULTS_DIRECTORY),
+                RESULT_SEGMENT_SIZE, MAX_RESULT_SEGMENTS);
+    }
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Reads the saved searches from disk if that has not happened yet,
+     * migrating the legacy SharedPreferences file when there is no data file.
+     */
+    public synchronized void load() {
+        load(null);
+    }
+
+    /**
+     * Like {@link #load()}, but streams the tags to listener in sorted chunks
+     * while the file is read, so the first tags can be shown before the rest
+     * of the file has been parsed. The first chunk is small and later chunks
+     * grow. If the file turns out not to be in tag order, streaming stops and
+     * the caller should fall back to {@link #getTags()} once load returns.
+     */
+    public synchronized void load(LoadListener listener) {
+        if (loaded) {
+            if (listener != null)
+                deliverTags(listener);
+            return;
+        }
+
+        ChunkBuffer chunks = listener != null ? new ChunkBuffer(listener) : null;
+
+        // openRead restores the backup left by an interrupted write
+        FileInputStream stream = null;
+        try {
+            stream = searchesFile.openRead();
+        } catch (FileNotFoundException e) {
+            // nothing saved yet
+        }
+
+        if (stream != null) {
+            try {
+                // save the URLs that had to be rebuilt
+                int rebuilt = readSearches(stream, chunks);
+                if (rebuilt > 0)
+                    writeQueue.mutated(rebuilt);
+            } catch (IOException e) {
+                // keep what was read, but don't persist changes over the file
+                Log.e(TAG, "Unable to read saved searches, changes will not be saved", e);
+                readFailed = true;
+            }
+        } else {
+            migrateLegacySearches();
+            if (listener != null)
+                deliverTags(listener);
+        }
+
+        if (chunks != null)
+            chunks.flush();
+
+        rebuildRanking();
+        rebuildKeys();
+
+        try {
+            resultLog.open();
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to open result log", e);
+        }
+
+        loaded = true;
+    }
+
+    public synchronized int getModCount() {
+        return index.getModCount();
+    }
+
+    public synchronized int size() {
+        load();
+        return index.size();
+    }
+
+    // query saved under tag, or "" if there is none
+    public synchronized String getQuery(String tag) {
+        load();
+        SavedSearch search = index.get(tag);
+        return search != null ? search.getQuery() : "";
+    }
+
+    // sorted copy of all tags
+    public synchronized ArrayList<String> getTags() {
+        load();
+        return index.getTags();
+    }
+
+    // type-ahead filter over all current searches, built off the UI thread
+    public synchronized TagFilter newTagFilter() {
+        load();
+        TagFilter filter = new TagFilter();
+        filter.addAll(index.snapshot());
+        return filter;
+    }
+
+    /**
+     * Saves query under tag, to be run with the given filters.
+     *
+     * @param filters SearchUrlBuilder filter flags
+     * @return the sorted position of a new tag, or -1 if an existing tag was updated
+     */
+    public synchronized int put(String tag, String query, int filters) {
+        load();
+        SavedSearch search = index.get(tag);
+        boolean changed = search == null || !search.getQuery().equals(query) ||
+                search.getFilters() != filters;
+        if (search != null && changed) {
+            evictResults(tag); // found by the old query
+            removeKey(search);
+        }
+
+        int position = index.put(tag, query, filters);
+        search = index.get(tag);
+        buildUrl(search);
+        if (position >= 0)
+            ranking.add(tag, 0);
+        if (changed)
+            addKey(search);
+        writeQueue.mutated();
+        return position;
+    }
+
+    // search URL of tag, or null if there is no such search
+    public synchronized String getUrl(String tag) {
+        load();
+        SavedSearch search = index.get(tag);
+        return search != null ? search.getUrl() : null;
+    }
+
+    // SearchUrlBuilder filter flags of tag, or 0 if there is no such search
+    public synchronized int getFilters(String tag) {
+        load();
+        SavedSearch search = index.get(tag);
+        return search != null ? search.getFilters() : 0;
+    }
+
+    // System.currentTimeMillis of the next poll of tag, or 0 if it has no saved schedule
+    public synchronized long getNextPollTime(String tag) {
+        load();
+        SavedSearch search = index.get(tag);
+        return search != null ? search.getNextPollTime() : 0;
+    }
+
+    // ms between polls of tag, or 0 if it has no saved schedule
+    public synchronized long getPollInterval(String tag) {
+        load();
+        SavedSearch search = index.get(tag);
+        return search != null ? search.getPollInterval() : 0;
+    }
+
+    // saves the poll schedule of tag, so its backoff survives a restart
+    public synchronized void setPollSchedule(String tag, long nextPollTime, long pollInterval) {
+        load();
+        SavedSearch search = index.get(tag);
+        if (search != null && (search.getNextPollTime() != nextPollTime ||
+                search.getPollInterval() != pollInterval)) {
+            search.setPollSchedule(nextPollTime, pollInterval);
+            writeQueue.mutated();
+        }
+    }
+
+    /**
+     * Deletes the search saved under tag.
+     *
+     * @return the sorted position the tag occupied, or -1 if there was none
+     */
+    public synchronized int remove(String tag) {
+        load();
+        SavedSearch search = index.get(tag);
+        int position = index.remove(tag);
+        if (position >= 0) {
+            writeQueue.mutated();
+            evictResults(tag);
+            ranking.remove(tag);
+            removeKey(search);
+        }
+        return position;
+    }
+
+    /**
+     * Finds a search other than tag with the same filters whose query is the
+     * same as query once normalized, e.g. "Mars  NASA" for "nasa mars".
+     *
+     * @return the tag of such a search, or null if there is none
+     */
+    public synchronized String findDuplicate(String tag, String query, int filters) {
+        load();
+        ArrayList<String> tags = tagsByKey.get(QueryNormalizer.normalize(query, filters));
+        if (tags != null) {
+            for (String other : tags) {
+                if (!other.equals(tag))
+                    return other;
+            }
+        }
+        return null;
+    }
+
+    // copy of all searches in tag order, e.g. for a batch pass off the UI thread
+    public synchronized List<SavedSearch> getSearches() {
+        load();
+        ArrayList<SavedSearch> searches = new ArrayList<SavedSearch>(index.size());
+        for (int i = 0; i < index.size(); ++i) {
+            searches.add(new SavedSearch(index.get(index.tagAt(i))));
+        }
+        return searches;
+    }
+
+    // counts one use of tag, e.g. when its search is opened
+    public synchronized void recordUse(String tag) {
+        load();
+        SavedSearch search = index.get(tag);
+        if (search == null)
+            return;
+
+        if (ranking.recordUse(tag)) {
+            // every count was halved
+            for (int i = 0; i < index.size(); ++i) {
+                SavedSearch decayed = index.get(index.tagAt(i));
+                decayed.setUseCount(ranking.getCount(decayed.getTag()));
+            }
+        } else {
+            search.setUseCount(ranking.getCount(tag));
+        }
+        writeQueue.mutated();
+    }
+
+    // all tags, most used first
+    public synchronized ArrayList<String> getTagsByUse() {
+        load();
+        return ranking.getTags();
+    }
+
+    // URL to poll for results of tag newer than those already found, or null if there is none
+    public synchronized String getPollUrl(String tag) {
+        load();
+        SavedSearch search = index.get(tag);
+        if (search == null)
+            return null;
+        return search.getNewestId() > 0 ?
+                urlBuilder.build(search.getFilters(), search.getPollQuery()) : search.getUrl();
+    }
+
+    /**
+     * Records the results a poll of tag found and appends those newer than
+     * any found before to the result log.
+     *
+     * @return the number of new results that count as unread
+     */
+    public synchronized int addPolledResults(String tag, List<SearchResult> results) {
+        load();
+        SavedSearch search = index.get(tag);
+        if (search == null)
+            return 0; // deleted while polling
+
+        long[] resultIds = new long[results.size()];
+        for (int i = 0; i < resultIds.length; ++i)
+            resultIds[i] = results.get(i).getId();
+
+        long newestId = search.getNewestId();
+        int added = search.addPolledResults(resultIds);
+        if (search.getNewestId() == newestId)
+            return added;
+
+        writeQueue.mutated();
+        ArrayList<SearchResult> newResults = new ArrayList<SearchResult>();
+        for (SearchResult result : results) {
+            if (result.getId() > newestId)
+                newResults.add(result);
+        }
+        logResults(tag, newResults);
+        return added;
+    }
+
+    /**
+     * Passes every result in the result log to visitor. Reads the mapped
+     * log, so it should be called off the UI thread.
+     *
+     * @return the number of results read
+     */
+    public int replayResults(ResultLog.ResultVisitor visitor) {
+        try {
+            return resultLog.readAll(visitor);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read result log", e);
+            return 0;
+        }
+    }
+
+    // marks all results of tag found so far as seen, e.g. when it is opened
+    public synchronized void markSeen(String tag) {
+        load();
+        SavedSearch search = index.get(tag);
+        if (search != null && (search.getUnreadCount() > 0 ||
+                search.getLastSeenId() != search.getNewestId())) {
+            search.markSeen();
+            writeQueue.mutated();
+        }
+    }
+
+    // unread result count of every tag that has unread results
+    public synchronized Map<String, Integer> getUnreadCounts() {
+        load();
+        HashMap<String, Integer> counts = new HashMap<String, Integer>();
+        for (int i = 0; i < index.size(); ++i) {
+            SavedSearch search = index.get(index.tagAt(i));
+            if (search.getUnreadCount() > 0)
+                counts.put(search.getTag(), search.getUnreadCount());
+        }
+        return counts;
+    }
+
+    /**
+     * Adds every search read from in (see {@link SearchTransfer}) in one bulk
+     * operation: searches are appended unsorted and the tags are sorted once
+     * at the end, followed by a single write of the searches file.
+     * <p/>
+     * The stream is parsed without holding the repository lock, so the UI
+     * thread is only held up while the parsed searches are merged in.
+     *
+     * @return the number of searches read
+     */
+    public int importSearches(InputStream in) throws IOException {
+        load();
+
+        final ArrayList<SavedSearch> parsed = new ArrayList<SavedSearch>();
+        try {
+            return SearchTransfer.read(in, new SearchTransfer.SearchSink() {
+                @Override
+                public void accept(SavedSearch search) {
+                    buildUrl(search);
+                    parsed.add(search);
+                }
+            });
+        } finally {
+            // keep whatever was read before a failure, in order
+            merge(parsed);
+        }
+    }
+
+    /**
+     * Writes all searches to out in tag order. The searches are copied under
+     * the repository lock and written after it is released.
+     */
+    public void exportSearches(OutputStream out) throws IOException {
+        final List<SavedSearch> searches;
+        synchronized (this) {
+            load();
+            searches = index.snapshot();
+        }
+        SearchTransfer.write(new SearchTransfer.SearchSource() {
+            @Override
+            public int size() {
+                return searches.size();
+            }
+
+            @Override
+            public SavedSearch get(int position) {
+                return searches.get(position);
+            }
+        }, out);
+    }
+
+    // writes pending changes now instead of at the end of the write window
+    public void flush() {
+        writeQueue.flush();
+    }
+
+    // number of changes made through put, remove and the polling methods
+    public long getMutationCount() {
+        return writeQueue.getMutationCount();
+    }
+
+    // number of times the searches file has been rewritten for those changes
+    public long getWriteCount() {
+        return writeQueue.getWriteCount();
+    }
+
+    // appends searches to the index with a single sort and write
+    private synchronized void merge(List<SavedSearch> searches) {
+        if (searches.isEmpty())
+            return;
+
+        int modCount = index.getModCount();
+        for (SavedSearch search : searches)
+            index.append(search);
+        index.finishAppend();
+        rebuildRanking();
+        rebuildKeys();
+
+        if (index.getModCount() != modCount)
+            writeQueue.mutated(index.getModCount() - modCount);
+    }
+
+    // ranks the tags by the use counts stored with the searches
+    private void rebuildRanking() {
+        ranking.clear();
+        for (int i = 0; i < index.size(); ++i) {
+            SavedSearch search = index.get(index.tagAt(i));
+            ranking.add(search.getTag(), search.getUseCount());
+        }
+    }
+
+    // indexes every search by its normalized query
+    private void rebuildKeys() {
+        tagsByKey.clear();
+        for (int i = 0; i < index.size(); ++i)
+            addKey(index.get(index.tagAt(i)));
+    }
+
+    private void addKey(SavedSearch search) {
+        String key = QueryNormalizer.normalize(search.getQuery(), search.getFilters());
+        ArrayList<String> tags = tagsByKey.get(key);
+        if (tags == null) {
+            tags = new ArrayList<String>(1);
+            tagsByKey.put(key, tags);
+        }
+        tags.add(search.getTag());
+    }
+
+    private void removeKey(SavedSearch search) {
+        String key = QueryNormalizer.normalize(search.getQuery(), search.getFilters());
+        ArrayList<String> tags = tagsByKey.get(key);
+        if (tags != null && tags.remove(search.getTag()) && tags.isEmpty())
+            tagsByKey.remove(key);
+    }
+
+    // sets the URL of search to the one built from its query and filters;
+    // true if that replaced a different stored URL
+    private boolean buildUrl(SavedSearch search) {
+        long span = BUILD_URL_SPAN.begin();
+        String url = urlBuilder.build(search.getFilters(), search.getQuery());
+        BUILD_URL_SPAN.end(span);
+        if (url.equals(search.getUrl()))
+            return false;
+        search.setUrl(url);
+        return true;
+    }
+
+    private void logResults(final String tag, final List<SearchResult> results) {
+        logWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (SearchResult result : results)
+                        resultLog.append(tag, result);
+                } catch (IOException e) {
+                    Log.w(TAG, "Unable to log results of " + tag, e);
+                }
+            }
+        });
+    }
+
+    private void evictResults(final String tag) {
+        logWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    resultLog.evict(tag);
+                } catch (IOException e) {
+                    Log.w(TAG, "Unable to evict results of " + tag, e);
+                }
+            }
+        });
+    }
+
+    // hands the whole index to listener in sorted chunks
+    private void deliverTags(LoadListener listener) {
+        ChunkBuffer chunks = new ChunkBuffer(listener);
+        for (int i = 0; i < index.size(); ++i)
+            chunks.add(index.tagAt(i));
+        chunks.flush();
+    }
+
+    // returns the number of searches whose stored URL was rebuilt
+    private int readSearches(FileInputStream stream, ChunkBuffer chunks) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        int rebuilt = 0;
+        try {
+            int version = SavedSearchCodec.readHeader(in);
+
+            SavedSearch search;
+            while ((search = SavedSearchCodec.readSearch(in, version)) != null) {
+                if (buildUrl(search))
+                    ++rebuilt;
+                index.append(search);
+
+                // stop streaming as soon as the file is out of order
+                if (chunks != null && index.isSorted())
+                    chunks.add(search.getTag());
+            }
+        } finally {
+            index.finishAppend(); // also after a damaged record, to sort what was read
+            in.close();
+        }
+        return rebuilt;
+    }
+
+    private void writeSearches(List<SavedSearch> searches) {
+        FileOutputStream stream = null;
+        try {
+            stream = searchesFile.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+
+            SavedSearchCodec.writeHeader(out);
+            for (SavedSearch search : searches)
+                SavedSearchCodec.writeSearch(out, search);
+            SavedSearchCodec.writeEnd(out);
+            out.flush();
+
+            searchesFile.finishWrite(stream);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write saved searches", e);
+            if (stream != null)
+                searchesFile.failWrite(stream);
+        }
+    }
+
+    // copies the searches stored by earlier versions into the data file
+    private void migrateLegacySearches() {
+        SharedPreferences legacySearches =
+                context.getSharedPreferences(LEGACY_SEARCHES, Context.MODE_PRIVATE);
+
+        Map<String, ?> entries = legacySearches.getAll();
+        if (entries.isEmpty())
+            return;
+
+        for (Map.Entry<String, ?> entry : entries.entrySet()) {
+            if (entry.getValue() instanceof String) {
+                SavedSearch search = new SavedSearch(entry.getKey(), (String) entry.getValue());
+                buildUrl(search);
+                index.append(search);
+            }
+        }
+        index.finishAppend();
+
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, "Migrating " + index.size() + " saved searches");
+
+        // only drop the old file once the new one is safely written
+        writeSearches(index.snapshot());
+        if (searchesFile.getBaseFile().exists())
+            legacySearches.edit().clear().commit();
+    }
+
+    /**
+     * Receives tags from {@link #load(LoadListener)}. Called on the loading
+     * thread, with each chunk in sorted order following the previous one.
+     */
+    public interface LoadListener {
+        void onTagsLoaded(List<String> tags);
+    }
+
+    // collects tags into chunks of growing size for a LoadListener
+    private static class ChunkBuffer {
+        private final LoadListener listener;
+        private ArrayList<String> chunk = new ArrayList<String>(FIRST_CHUNK_SIZE);
+        private int chunkSize = FIRST_CHUNK_SIZE;
+
+        ChunkBuffer(LoadListener listener) {
+            this.listener = listener;
+        }
+
+        void add(String tag) {
+            chunk.add(tag);
+            if (chunk.size() >= chunkSize) {
+                flush();
+                chunkSize = Math.min(chunkSize * 2, MAX_CHUNK_SIZE);
+            }
+        }
+
+        void flush() {
+            if (!chunk.isEmpty()) {
+                listener.onTagsLoaded(chunk);
+                chunk = new ArrayList<String>(chunkSize);
+            }
+        }
+    }
+}
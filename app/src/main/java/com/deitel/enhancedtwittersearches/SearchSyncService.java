@@ -0,0 +1,135 @@
+package com.deitel.enhancedtwittersearches;
+
+import android.app.AlarmManager;
+import android.app.IntentService;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.SystemClock;
+import android.support.v4.content.WakefulBroadcastReceiver;
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Polls every saved search in the background, so new results are already
+ * counted and indexed when the app is opened instead of being fetched
+ * while the user waits.
+ * <p/>
+ * The sync runs on an inexact repeating alarm, which lets the system
+ * deliver it together with other apps' alarms, and each run fetches all
+ * searches in one {@link SyncRunner} burst within a time and byte budget,
+ * so the radio is woken once per run. Most used searches are fetched first
+ * in case a budget runs out. Results are stored through
+ * {@link SavedSearchRepository#addPolledResults}, the same way the list's
+ * own polls store them, so the list shows them as soon as it loads.
+ */
+public class SearchSyncService extends IntentService {
+
+    private static final String TAG = "SearchSyncService";
+
+    private static final long SYNC_INTERVAL = AlarmManager.INTERVAL_HOUR;
+    private static final int CONCURRENCY = 4; // searches fetched at once
+    private static final long MAX_MILLIS = 60 * 1000; // no fetch starts after this
+    private static final long MAX_BYTES = 2 * 1024 * 1024; // per run on unmetered networks
+    private static final long MAX_METERED_BYTES = 512 * 1024; // per run on metered networks
+    private static final int TIMEOUT_MILLIS = 15 * 1000;
+
+    // shared preferences with the time of the last complete sync
+    private static final String PREFERENCES = "sync";
+    private static final String LAST_SYNC = "lastSync"; // System.currentTimeMillis
+
+    private static final Tracer.Span SYNC_SPAN = Tracer.span("SearchSyncService.sync");
+    private static final MetricsRegistry.Counter SYNCED =
+            MetricsRegistry.getInstance().counter("SearchSyncService.synced");
+    private static final MetricsRegistry.Counter SKIPPED =
+            MetricsRegistry.getInstance().counter("SearchSyncService.skipped");
+    private static final MetricsRegistry.Counter BYTES =
+            MetricsRegistry.getInstance().counter("SearchSyncService.bytes");
+
+    public SearchSyncService() {
+        super(TAG);
+    }
+
+    /**
+     * Schedules the sync to run about every SYNC_INTERVAL, replacing any
+     * schedule set before.
+     */
+    public static void schedule(Context context) {
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        PendingIntent alarm = PendingIntent.getBroadcast(context, 0,
+                new Intent(context, SyncAlarmReceiver.class), PendingIntent.FLAG_UPDATE_CURRENT);
+        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME_WAKEUP,
+                SystemClock.elapsedRealtime() + SYNC_INTERVAL, SYNC_INTERVAL, alarm);
+    }
+
+    // ms since the last sync that fetched every search, or Long.MAX_VALUE if there was none
+    public static long getMillisSinceSync(Context context) {
+        long lastSync = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE)
+                .getLong(LAST_SYNC, 0);
+        long since = System.currentTimeMillis() - lastSync;
+        return lastSync > 0 && since >= 0 ? since : Long.MAX_VALUE;
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        try {
+            sync();
+        } finally {
+            // SyncAlarmReceiver holds a wake lock until the sync is done
+            WakefulBroadcastReceiver.completeWakefulIntent(intent);
+        }
+    }
+
+    private void sync() {
+        ConnectivityManager connectivity =
+                (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo network = connectivity.getActiveNetworkInfo();
+        if (network == null || !network.isConnected())
+            return; // the next alarm tries again
+
+        final SavedSearchRepository savedSearches = SavedSearchRepository.getInstance(this);
+        Map<String, String> urlsByTag = new LinkedHashMap<String, String>();
+        for (String tag : savedSearches.getTagsByUse()) {
+            String url = savedSearches.getPollUrl(tag);
+            if (url != null)
+                urlsByTag.put(tag, url);
+        }
+
+        long maxBytes = connectivity.isActiveNetworkMetered() ? MAX_METERED_BYTES : MAX_BYTES;
+        SyncRunner runner = new SyncRunner(CONCURRENCY, MAX_MILLIS, maxBytes, TIMEOUT_MILLIS,
+                SyncRunner.SYSTEM_CLOCK);
+
+        long span = SYNC_SPAN.begin();
+        SyncRunner.Report report;
+        try {
+            report = runner.run(urlsByTag, new SyncRunner.ResultSink() {
+                @Override
+                public void onSynced(String tag, List<SearchResult> results) {
+                    savedSearches.addPolledResults(tag, results);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            savedSearches.flush();
+        }
+        SYNC_SPAN.end(span);
+
+        SYNCED.add(report.synced);
+        SKIPPED.add(report.skipped);
+        BYTES.add(report.bytes);
+        if (report.skipped == 0 && report.failed == 0) {
+            getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE).edit()
+                    .putLong(LAST_SYNC, System.currentTimeMillis()).apply();
+        }
+
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, "Synced " + urlsByTag.size() + " searches: " + report);
+    }
+}
@@ -0,0 +1,21 @@
+package com.deitel.enhancedtwittersearches;
+
+import android.content.Context;
+import android.content.Intent;
+import android.support.v4.content.WakefulBroadcastReceiver;
+
+/**
+ * Starts {@link SearchSyncService} when its alarm goes off, keeping the
+ * device awake until the sync is done, and schedules the alarm again after
+ * a reboot, which clears all alarms.
+ */
+public class SyncAlarmReceiver extends WakefulBroadcastReceiver {
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction()))
+            SearchSyncService.schedule(context);
+        else
+            startWakefulService(context, new Intent(context, SearchSyncService.class));
+    }
+}
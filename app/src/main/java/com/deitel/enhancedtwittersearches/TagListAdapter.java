@@ -0,0 +1,220 @@
+package com.deitel.enhancedtwittersearches;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Binds a list of tags to list_item rows, changing the shown rows as little
+ * as possible when the tags change.
+ * <p/>
+ * {@link #setTags} takes a snapshot of the new tags and compares it with the
+ * previous one on a background thread. The resulting {@link TagDiff} is
+ * applied on the UI thread: an unchanged list is not redrawn at all, and
+ * otherwise the adapter swaps in the snapshot and notifies the ListView
+ * once. Snapshots submitted while a diff is running are coalesced, so a
+ * burst of changes costs one diff and one layout.
+ * <p/>
+ * Every tag keeps its id for as long as it is listed, and every row
+ * remembers what it shows, so a recycled row that already shows the same
+ * tag with the same label is not bound again. {@link #refreshRow} rebinds a
+ * single row whose label changed without notifying the ListView.
+ */
+public class TagListAdapter extends BaseAdapter {
+
+    // supplies row labels and hears about applied changes, on the UI thread
+    public interface Listener {
+        CharSequence getLabel(String tag);
+        void onTagsApplied(TagListAdapter adapter, TagDiff diff);
+    }
+
+    private static final Tracer.Span DIFF_SPAN = Tracer.span("TagListAdapter.diff");
+    private static final MetricsRegistry.Counter ROWS_BOUND =
+            MetricsRegistry.getInstance().counter("TagListAdapter.rowsBound");
+    private static final MetricsRegistry.Counter ROWS_SKIPPED =
+            MetricsRegistry.getInstance().counter("TagListAdapter.rowsSkipped");
+
+    // diffs the snapshots of every adapter, one at a time at background priority
+    private static final ExecutorService differ = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "TagListAdapter");
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+
+    private final LayoutInflater inflater;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // state below is only touched on the UI thread
+    private List<String> tags = Collections.emptyList(); // shown snapshot
+    private final HashMap<String, Long> ids = new HashMap<String, Long>();
+    private long nextId;
+    private final ArrayList<Row> rows = new ArrayList<Row>(); // every row view created
+
+    // guarded by this; the differ compares pending with base
+    private List<String> base = Collections.emptyList(); // last snapshot diffed
+    private List<String> pending; // newest snapshot not diffed yet, or null
+
+    // what a row view shows
+    private static class Row {
+        final TextView view;
+        String tag;
+        CharSequence label;
+
+        Row(TextView view) {
+            this.view = view;
+        }
+    }
+
+    public TagListAdapter(Context context, Listener listener) {
+        this.inflater = LayoutInflater.from(context);
+        this.listener = listener;
+    }
+
+    /**
+     * Shows newTags, which is copied, once the differences to the tags
+     * submitted before have been computed. Must be called on the UI thread.
+     */
+    public void setTags(List<String> newTags) {
+        List<String> snapshot = Collections.unmodifiableList(new ArrayList<String>(newTags));
+        boolean idle;
+        synchronized (this) {
+            idle = pending == null;
+            pending = snapshot;
+        }
+        if (idle)
+            differ.execute(diffRunnable);
+    }
+
+    // the tags currently shown, which may lag behind the last setTags
+    public List<String> getTags() {
+        return tags;
+    }
+
+    private final Runnable diffRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final List<String> oldTags;
+            final List<String> newTags;
+            synchronized (TagListAdapter.this) {
+                oldTags = base;
+                newTags = pending;
+                base = newTags;
+                pending = null;
+            }
+
+            long span = DIFF_SPAN.begin();
+            final TagDiff diff = TagDiff.compute(oldTags, newTags);
+            DIFF_SPAN.end(span);
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    apply(newTags, diff);
+                }
+            });
+        }
+    };
+
+    // called on the UI thread with the diff from the shown snapshot to newTags
+    private void apply(List<String> newTags, TagDiff diff) {
+        tags = newTags;
+        if (diff.isEmpty())
+            return;
+
+        for (String tag : diff.getRemovedTags())
+            ids.remove(tag);
+        notifyDataSetChanged();
+        listener.onTagsApplied(this, diff);
+    }
+
+    /**
+     * Binds the row showing tag again if its label changed, e.g. after new
+     * results were found for it.
+     */
+    public void refreshRow(String tag) {
+        for (Row row : rows) {
+            if (tag.equals(row.tag))
+                bind(row, tag);
+        }
+    }
+
+    // binds every row whose label changed
+    public void refreshRows() {
+        for (Row row : rows) {
+            if (row.tag != null)
+                bind(row, row.tag);
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return tags.size();
+    }
+
+    @Override
+    public String getItem(int position) {
+        return tags.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        String tag = tags.get(position);
+        Long id = ids.get(tag);
+        if (id == null) {
+            id = nextId++;
+            ids.put(tag, id);
+        }
+        return id;
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        Row row;
+        if (convertView == null) {
+            convertView = inflater.inflate(R.layout.list_item, parent, false);
+            row = new Row((TextView) convertView);
+            convertView.setTag(row);
+            rows.add(row);
+        } else {
+            row = (Row) convertView.getTag();
+        }
+
+        bind(row, tags.get(position));
+        return convertView;
+    }
+
+    private void bind(Row row, String tag) {
+        CharSequence label = listener.getLabel(tag);
+        if (tag.equals(row.tag) && label.equals(row.label)) {
+            ROWS_SKIPPED.increment();
+            return; // already shows it; setText would lay the row out again
+        }
+        ROWS_BOUND.increment();
+
+        row.tag = tag;
+        row.label = label;
+        row.view.setText(label);
+    }
+}
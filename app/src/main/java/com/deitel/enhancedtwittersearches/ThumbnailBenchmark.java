@@ -0,0 +1,113 @@
+package com.deitel.enhancedtwittersearches;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures thumbnail decoding on the device: decode throughput and the peak
+ * heap growth while the images of a result list are held, the way a list
+ * shows them. Three ways of decoding are compared:
+ * <ul>
+ * <li>full size, as the WebView decodes the page's images</li>
+ * <li>downsampled to the thumbnail size</li>
+ * <li>downsampled into pooled bitmaps, as {@link ThumbnailLoader} does</li>
+ * </ul>
+ * The pooled pass uses a {@link BitmapPool} of its own, so the loader's pool
+ * and its hit and miss counts are left alone. A pass that runs out of memory,
+ * as the full size one can on small heaps, stops and is reported as such.
+ * The encoded images are read before timing starts, so the network and the
+ * disk cache are not measured. Bitmap pixels live on the Java heap on the
+ * API levels this app supports, so the heap growth includes them. Must be
+ * run off the UI thread.
+ */
+public class ThumbnailBenchmark {
+
+    // the outcome of one way of decoding
+    public static class Result {
+        public final String name;
+        public final int decodes;
+        public final long millis;
+        public final long peakHeapBytes; // heap growth over the run's baseline
+        public final boolean outOfMemory; // the pass stopped after running out of memory
+
+        Result(String name, int decodes, long millis, long peakHeapBytes, boolean outOfMemory) {
+            this.name = name;
+            this.decodes = decodes;
+            this.millis = millis;
+            this.peakHeapBytes = peakHeapBytes;
+            this.outOfMemory = outOfMemory;
+        }
+
+        public double getDecodesPerSecond() {
+            return millis > 0 ? decodes * 1000.0 / millis : 0;
+        }
+    }
+
+    private final ThumbnailLoader loader;
+
+    public ThumbnailBenchmark(ThumbnailLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Decodes every image at urls rounds times in each way.
+     *
+     * @return one result per way of decoding, full size first
+     */
+    public List<Result> run(List<String> urls, int rounds) throws IOException {
+        ArrayList<byte[]> images = new ArrayList<byte[]>(urls.size());
+        for (String url : urls)
+            images.add(loader.loadBytes(url));
+
+        ArrayList<Result> results = new ArrayList<Result>(3);
+        results.add(measure("full size", images, rounds, false, null));
+        results.add(measure("thumbnail", images, rounds, true, null));
+        // sized like the loader's pool
+        BitmapPool pool = new BitmapPool(Runtime.getRuntime().maxMemory() / 16);
+        results.add(measure("thumbnail, pooled", images, rounds, true, pool));
+        pool.clear();
+        return results;
+    }
+
+    private Result measure(String name, List<byte[]> images, int rounds,
+                           boolean downsample, BitmapPool pool) {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long baseline = runtime.totalMemory() - runtime.freeMemory();
+        long peak = baseline;
+
+        int decodes = 0;
+        boolean outOfMemory = false;
+        long start = SystemClock.elapsedRealtime();
+        try {
+            for (int round = 0; round < rounds; ++round) {
+                // hold a round's bitmaps like a list showing every result
+                ArrayList<Bitmap> shown = new ArrayList<Bitmap>(images.size());
+                for (byte[] image : images) {
+                    Bitmap bitmap = loader.decode(image, downsample, pool);
+                    if (bitmap != null) {
+                        shown.add(bitmap);
+                        ++decodes;
+                    }
+                    peak = Math.max(peak, runtime.totalMemory() - runtime.freeMemory());
+                }
+
+                // scrolled away: pooled bitmaps are reused by the next round
+                if (pool != null) {
+                    for (Bitmap bitmap : shown)
+                        pool.put(bitmap);
+                }
+            }
+        } catch (OutOfMemoryError e) {
+            // the round's bitmaps are unreachable now, so the app can go on
+            outOfMemory = true;
+        }
+        long millis = SystemClock.elapsedRealtime() - start;
+
+        return new Result(name, decodes, millis, peak - baseline, outOfMemory);
+    }
+}
@@ -0,0 +1,315 @@
+package com.deitel.enhancedtwittersearches;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.IdentityHashMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads the images attached to search results as small thumbnails, so the
+ * lite results list never holds a full-size photo in memory.
+ * <p/>
+ * Images are fetched and decoded on a small background pool. Only the
+ * bounds are decoded first, then the image is decoded at the largest power
+ * of two reduction (inSampleSize) that still covers the thumbnail, in
+ * RGB_565, into a bitmap taken from a {@link BitmapPool} when one fits.
+ * <p/>
+ * Decoded thumbnails stay in an LRU memory cache bounded by their bytes.
+ * A thumbnail evicted from it goes back to the pool once no ImageView shows
+ * it any more. The encoded images are kept in a {@link PageCache} on disk,
+ * so scrolling back or reopening results does not hit the network.
+ * <p/>
+ * {@link #load} and {@link #cancel} must be called on the UI thread.
+ */
+public class ThumbnailLoader {
+
+    private static final String TAG = "ThumbnailLoader";
+
+    private static final String CACHE_DIRECTORY = "thumbnails";
+    private static final long MAX_DISK_BYTES = 16 * 1024 * 1024;
+    private static final long DISK_TIME_TO_LIVE = 7 * 24 * 60 * 60 * 1000L; // images do not change
+    private static final int TIMEOUT_MILLIS = 15 * 1000;
+    private static final int MAX_IMAGE_BYTES = 4 * 1024 * 1024;
+    private static final int THREADS = 2;
+
+    private static final Tracer.Span DECODE_SPAN = Tracer.span("ThumbnailLoader.decode");
+
+    static final Bitmap.Config CONFIG = Bitmap.Config.RGB_565; // half the bytes of ARGB_8888
+
+    private static ThumbnailLoader instance;
+
+    private final int size; // thumbnail width and height in pixels
+    private final PageCache diskCache;
+    private final PageFetcher fetcher = new PageFetcher(TIMEOUT_MILLIS, MAX_IMAGE_BYTES);
+    private final BitmapPool pool;
+    private final LruCache<String, Bitmap> memoryCache;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // fetches and decodes thumbnails at background priority
+    private final ExecutorService decoder = new ThreadPoolExecutor(THREADS, THREADS,
+            0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ThumbnailLoader");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+    // state below is only touched on the UI thread
+    private final WeakHashMap<ImageView, Request> requests = new WeakHashMap<ImageView, Request>();
+    private final WeakHashMap<ImageView, Bitmap> shown = new WeakHashMap<ImageView, Bitmap>();
+    private final IdentityHashMap<Bitmap, Integer> showCounts = new IdentityHashMap<Bitmap, Integer>();
+    private final IdentityHashMap<Bitmap, Boolean> evicted = new IdentityHashMap<Bitmap, Boolean>();
+
+    // decode statistics, for ThumbnailBenchmark and the log
+    private final AtomicLong decodeCount = new AtomicLong();
+    private final AtomicLong decodeNanos = new AtomicLong();
+    private final AtomicLong networkCount = new AtomicLong();
+
+    // a thumbnail being loaded for an ImageView
+    private class Request implements Runnable {
+        final String url;
+        final WeakReference<ImageView> view; // requests holds the view weakly as well
+        Future<?> future;
+
+        Request(String url, ImageView view) {
+            this.url = url;
+            this.view = new WeakReference<ImageView>(view);
+        }
+
+        // runs on the decoder pool
+        @Override
+        public void run() {
+            final Bitmap bitmap;
+            try {
+                bitmap = decode(loadBytes(url), true, pool);
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to load " + url, e);
+                return;
+            }
+            if (bitmap == null)
+                return;
+
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    memoryCache.put(url, bitmap);
+                    ImageView target = view.get();
+                    if (target != null && requests.get(target) == Request.this) {
+                        requests.remove(target);
+                        show(target, bitmap);
+                    }
+                }
+            });
+        }
+    }
+
+    public static synchronized ThumbnailLoader getInstance(Context context) {
+        if (instance == null) {
+            Context application = context.getApplicationContext();
+            int size = application.getResources().getDimensionPixelSize(R.dimen.thumbnail_size);
+            instance = new ThumbnailLoader(new File(application.getCacheDir(), CACHE_DIRECTORY), size);
+        }
+        return instance;
+    }
+
+    private ThumbnailLoader(File directory, int size) {
+        this.size = size;
+        diskCache = new PageCache(directory, MAX_DISK_BYTES, DISK_TIME_TO_LIVE);
+
+        // an eighth of the heap for shown thumbnails, a sixteenth for reusable ones
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        pool = new BitmapPool(maxMemory / 16);
+        memoryCache = new LruCache<String, Bitmap>((int) (maxMemory / 8)) {
+            @Override
+            protected int sizeOf(String url, Bitmap bitmap) {
+                return BitmapPool.byteCount(bitmap);
+            }
+
+            @Override
+            protected void entryRemoved(boolean wasEvicted, String url, Bitmap oldBitmap,
+                                        Bitmap newBitmap) {
+                if (oldBitmap == newBitmap)
+                    return;
+                if (showCounts.containsKey(oldBitmap))
+                    evicted.put(oldBitmap, Boolean.TRUE); // pooled once it is no longer shown
+                else
+                    pool.put(oldBitmap);
+            }
+        };
+    }
+
+    /**
+     * Shows the thumbnail of the image at url in view, replacing whatever
+     * view showed or was loading before. The view is cleared until the
+     * thumbnail is ready.
+     */
+    public void load(String url, ImageView view) {
+        Request pending = requests.get(view);
+        if (pending != null && pending.url.equals(url))
+            return; // already loading
+
+        Bitmap cached = memoryCache.get(url);
+        if (cached != null && shown.get(view) == cached)
+            return; // already shown, e.g. when the list is rebound
+
+        cancel(view);
+        if (cached != null) {
+            show(view, cached);
+            return;
+        }
+
+        Request request = new Request(url, view);
+        requests.put(view, request);
+        request.future = decoder.submit(request);
+    }
+
+    /**
+     * Stops loading into view and clears it, e.g. when its row is recycled
+     * for a result without an image.
+     */
+    public void cancel(ImageView view) {
+        Request pending = requests.remove(view);
+        if (pending != null)
+            pending.future.cancel(false);
+
+        Bitmap previous = shown.remove(view);
+        if (previous != null) {
+            view.setImageDrawable(null);
+            hidden(previous);
+        }
+    }
+
+    // drops every cached and pooled thumbnail, e.g. when memory is low
+    public void trimMemory() {
+        memoryCache.evictAll();
+        pool.clear();
+    }
+
+    public BitmapPool getPool() {
+        return pool;
+    }
+
+    public long getDecodeCount() {
+        return decodeCount.get();
+    }
+
+    // mean ms per decode so far, or 0
+    public double getMeanDecodeMillis() {
+        long count = decodeCount.get();
+        return count > 0 ? decodeNanos.get() / 1e6 / count : 0;
+    }
+
+    // images fetched from the network instead of the disk cache
+    public long getNetworkCount() {
+        return networkCount.get();
+    }
+
+    private void show(ImageView view, Bitmap bitmap) {
+        view.setImageBitmap(bitmap);
+        shown.put(view, bitmap);
+        Integer count = showCounts.get(bitmap);
+        showCounts.put(bitmap, count != null ? count + 1 : 1);
+    }
+
+    // called when a view stops showing bitmap
+    private void hidden(Bitmap bitmap) {
+        Integer count = showCounts.remove(bitmap);
+        if (count != null && count > 1)
+            showCounts.put(bitmap, count - 1);
+        else if (evicted.remove(bitmap) != null)
+            pool.put(bitmap);
+    }
+
+    // the encoded image at url, from the disk cache or the network
+    byte[] loadBytes(String url) throws IOException {
+        PageCache.Page page = diskCache.get(url);
+        if (page != null)
+            return page.body;
+
+        PageFetcher.Response response = fetcher.fetch(url, null, null);
+        networkCount.incrementAndGet();
+        diskCache.put(new PageCache.Page(url,
+                response.mimeType != null ? response.mimeType : "",
+                response.encoding != null ? response.encoding : "",
+                System.currentTimeMillis(), response.body));
+        return response.body;
+    }
+
+    /**
+     * Decodes an encoded image.
+     *
+     * @param downsample decode at the thumbnail size rather than full size
+     * @param reuseFrom pool to take a bitmap to decode into, or null
+     * @return the bitmap, or null if data is not an image
+     */
+    Bitmap decode(byte[] data, boolean downsample, BitmapPool reuseFrom) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        long span = DECODE_SPAN.begin();
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            return null;
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = downsample ?
+                sampleSize(options.outWidth, options.outHeight, size, size) : 1;
+        options.inPreferredConfig = CONFIG;
+        options.inMutable = true;
+        // before KitKat only bitmaps decoded without sampling can be reused
+        if (reuseFrom != null && (options.inSampleSize == 1 ||
+                Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)) {
+            int width = (options.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+            int height = (options.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+            options.inBitmap = reuseFrom.get(width, height, CONFIG);
+        }
+
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException e) {
+            // the pooled bitmap did not fit after all
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+
+        DECODE_SPAN.end(span);
+        decodeNanos.addAndGet(SystemClock.elapsedRealtimeNanos() - start);
+        decodeCount.incrementAndGet();
+        return bitmap;
+    }
+
+    /**
+     * The largest power of two by which an image can be reduced while still
+     * covering width x height, e.g. 4 for a 1024x768 photo and a 150 pixel
+     * thumbnail.
+     */
+    static int sampleSize(int imageWidth, int imageHeight, int width, int height) {
+        int sampleSize = 1;
+        while (imageWidth / (sampleSize * 2) >= width && imageHeight / (sampleSize * 2) >= height)
+            sampleSize *= 2;
+        return sampleSize;
+    }
+}
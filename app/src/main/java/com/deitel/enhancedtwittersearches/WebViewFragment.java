@@ -5,11 +5,14 @@ import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Bundle;
 import android.app.Fragment;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
+import android.widget.FrameLayout;
 import android.webkit.WebViewClient;
 
 
@@ -24,12 +27,30 @@ import android.webkit.WebViewClient;
 public class WebViewFragment extends Fragment {
 
     private static final String TAG = "WebViewFragment";
+
+    // from onPageStarted to onPageFinished, timed while tracing is on
+    private static final Tracer.Span PAGE_LOAD_SPAN = Tracer.span("WebViewFragment.pageLoad");
     private static final String ARG_PARAM1 = "param1";
+    private static final String ARG_TAG = "tag";
+    private static final String ARG_CLICK_TIME = "clickTime";
 
     private String mParam1;
+    private String tag; // saved search being shown, for page-load metrics
+    private long clickTime; // elapsedRealtime of the list click that opened the search
+    private int redirects; // URLs loaded through shouldOverrideUrlLoading
+    private boolean loadRecorded; // page-load metrics were recorded for this search
 
     private OnWebViewFragmentListener mListener;
 
+    private WebView webView; // borrowed from the activity's WebViewPool
+    private boolean prefetched; // webView was already loading mParam1
+    private boolean reused; // webView was not constructed for this fragment
+    private long pageStartTime; // elapsedRealtime of the last onPageStarted
+    private long pageLoadSpan; // PAGE_LOAD_SPAN start of the last onPageStarted
+
+    private volatile CachedPageLoader pageLoader; // serves the search page from the offline cache
+    private volatile String userAgent; // webView's User-Agent, read on the network thread
+
     /**
      * Use this factory method to create a new instance of
      * this fragment using the provided parameters.
@@ -38,9 +59,23 @@ public class WebViewFragment extends Fragment {
      * @return A new instance of fragment WebViewFragment.
      */
     public static WebViewFragment newInstance(String param1) {
+        return newInstance(param1, null, 0);
+    }
+
+    /**
+     * Factory method for a fragment showing a saved search.
+     *
+     * @param param1 URL of the search.
+     * @param tag Tag of the saved search, for page-load metrics.
+     * @param clickTime SystemClock.elapsedRealtime() of the click that opened it.
+     * @return A new instance of fragment WebViewFragment.
+     */
+    public static WebViewFragment newInstance(String param1, String tag, long clickTime) {
         WebViewFragment fragment = new WebViewFragment();
         Bundle args = new Bundle();
         args.putString(ARG_PARAM1, param1);
+        args.putString(ARG_TAG, tag);
+        args.putLong(ARG_CLICK_TIME, clickTime);
         fragment.setArguments(args);
         return fragment;
     }
@@ -54,31 +89,58 @@ public class WebViewFragment extends Fragment {
         super.onCreate(savedInstanceState);
         if (getArguments() != null) {
             mParam1 = getArguments().getString(ARG_PARAM1);
+            tag = getArguments().getString(ARG_TAG);
+            clickTime = getArguments().getLong(ARG_CLICK_TIME);
         }
     }
 
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-        return inflater.inflate(R.layout.fragment_web_view, container, false);
+        ViewGroup view = (ViewGroup) inflater.inflate(R.layout.fragment_web_view, container, false);
+
+        // take a ready WebView from the pool instead of inflating a new one
+        WebViewPool webViewPool = mListener.getWebViewPool();
+        int constructions = webViewPool.getConstructionCount();
+        prefetched = webViewPool.isPrefetched(mParam1);
+        webView = webViewPool.obtain(mParam1);
+        reused = webViewPool.getConstructionCount() == constructions;
+        view.addView(webView, new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+
+        return view;
     }
 
     @Override
     public void onViewCreated(View view, Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
 
-        Log.d(TAG, "Viewing tag:" + mParam1);
-
-        WebView webView = (WebView) getActivity().findViewById(R.id.webView);
-        webView.getSettings().setJavaScriptEnabled(true);
-        webView.getSettings().setLoadWithOverviewMode(false);
-        webView.getSettings().setUseWideViewPort(false);
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, "Viewing tag:" + mParam1);
 
+        userAgent = webView.getSettings().getUserAgentString();
         webView.setWebViewClient(new MyWebViewClient());
 
-        Log.d(TAG, "Loading URL: " + Uri.parse(mParam1).toString());
+        // a prefetched page is already loading or loaded
+        if (prefetched) {
+            if (BuildConfig.DEBUG)
+                Log.d(TAG, "Using prefetched URL: " + mParam1);
+            return;
+        }
+
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, "Loading URL: " + Uri.parse(mParam1).toString());
         webView.loadUrl(Uri.parse(mParam1).toString());
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+
+        // hand the WebView back for the next search
+        mListener.getWebViewPool().recycle(webView, mParam1);
+        webView = null;
+    }
+
     public void showHourGlass() {
         mListener.showHourGlass(true);
     }
@@ -90,8 +152,17 @@ public class WebViewFragment extends Fragment {
     //customize your web view client to open links from your own site in the
     //same web view otherwise just open the default browser activity with the URL
     private class MyWebViewClient extends WebViewClient {
+        // serve the search page itself through the offline cache
+        @Override
+        public WebResourceResponse shouldInterceptRequest(WebView view, String url) {
+            if (pageLoader != null && url.equals(mParam1))
+                return pageLoader.intercept(url, userAgent);
+            return super.shouldInterceptRequest(view, url);
+        }
+
         @Override
         public boolean shouldOverrideUrlLoading(WebView view, String url) {
+            ++redirects;
             view.loadUrl(url);
             return true;
         }
@@ -99,6 +170,8 @@ public class WebViewFragment extends Fragment {
         @Override
         public void onPageStarted(WebView view, String url, Bitmap favicon) {
             super.onPageStarted(view, url, favicon);
+            pageStartTime = SystemClock.elapsedRealtime();
+            pageLoadSpan = PAGE_LOAD_SPAN.begin();
             showHourGlass();
         }
 
@@ -106,6 +179,20 @@ public class WebViewFragment extends Fragment {
         public void onPageFinished(WebView view, String url) {
             super.onPageFinished(view, url);
             hideHourGlass();
+
+            if (pageStartTime > 0) {
+                PAGE_LOAD_SPAN.end(pageLoadSpan);
+                long now = SystemClock.elapsedRealtime();
+                mListener.getWebViewPool().recordPageLoad(now - pageStartTime, reused);
+
+                // the first page load after the click is the saved search itself
+                if (tag != null && !loadRecorded) {
+                    PageLoadMetrics.getInstance().record(new PageLoadMetrics.Sample(
+                            tag, pageStartTime - clickTime, now - pageStartTime, redirects));
+                    loadRecorded = true;
+                }
+                pageStartTime = 0;
+            }
         }
     }
 
@@ -114,6 +201,7 @@ public class WebViewFragment extends Fragment {
         super.onAttach(activity);
         try {
             mListener = (OnWebViewFragmentListener) activity;
+            pageLoader = CachedPageLoader.getInstance(activity);
         } catch (ClassCastException e) {
             throw new ClassCastException(activity.toString()
                     + " must implement OnItemListSelectedListener");
@@ -138,6 +226,7 @@ public class WebViewFragment extends Fragment {
      */
     public interface OnWebViewFragmentListener {
         void showHourGlass(boolean show);
+        WebViewPool getWebViewPool();
     }
 
 }
@@ -0,0 +1,241 @@
+package com.deitel.enhancedtwittersearches;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.ViewGroup;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import java.util.ArrayList;
+
+/**
+ * Pool of configured WebViews owned by {@link MainActivity}. Each
+ * {@link WebViewFragment} borrows a WebView in onCreateView and returns it in
+ * onDestroyView, so navigating back and forth does not construct and set up
+ * a new WebView every time. Returned WebViews are reset to a blank page with
+ * no history before they are handed out again.
+ * <p/>
+ * With prefetching enabled one extra WebView also loads the search the user
+ * is most likely to open next. Opening that search then shows the already
+ * loaded page, and every other search benefits from the DNS lookup and
+ * connection to the search host the prefetch has already made.
+ * <p/>
+ * The pool counts WebView constructions and reuses and the page-load times
+ * reported by the fragments, split by whether the WebView was new.
+ * <p/>
+ * Must only be used on the UI thread.
+ */
+public class WebViewPool {
+
+    private static final String TAG = "WebViewPool";
+
+    private static final String BLANK_URL = "about:blank";
+
+    // idle WebViews kept; two cover a view that is still animating out
+    private static final int MAX_IDLE = 2;
+
+    private final Context context;
+
+    private final ArrayList<WebView> idle = new ArrayList<WebView>(MAX_IDLE); // reset, paused
+    private WebView prefetched; // WebView loading prefetchedUrl
+    private String prefetchedUrl; // URL loaded into prefetched
+    private boolean prefetchEnabled;
+
+    // statistics
+    private int constructions; // WebViews created
+    private int reuses; // obtains served from the idle list
+    private int prefetchHits; // obtains served by the prefetched WebView
+    private long constructionMillis; // total time spent constructing WebViews
+    private int freshLoads; // page loads in newly constructed WebViews
+    private long freshLoadMillis;
+    private int reusedLoads; // page loads in reused WebViews
+    private long reusedLoadMillis;
+
+    // loads pages and their redirects while a WebView is not shown, and
+    // drops the history entry of the blank page used to reset a WebView
+    private final WebViewClient poolClient = new WebViewClient() {
+        @Override
+        public boolean shouldOverrideUrlLoading(WebView view, String url) {
+            view.loadUrl(url);
+            return true;
+        }
+
+        @Override
+        public void onPageFinished(WebView view, String url) {
+            if (BLANK_URL.equals(url))
+                view.clearHistory();
+        }
+    };
+
+    public WebViewPool(Context context) {
+        this.context = context;
+    }
+
+    public boolean isPrefetchEnabled() {
+        return prefetchEnabled;
+    }
+
+    public void setPrefetchEnabled(boolean enabled) {
+        prefetchEnabled = enabled;
+        if (!enabled)
+            dropPrefetched(); // stop using the network for a prefetch nobody wants
+    }
+
+    // true if obtain(url) will return a WebView that already loads url
+    public boolean isPrefetched(String url) {
+        return prefetched != null && url.equals(prefetchedUrl);
+    }
+
+    /**
+     * Returns a configured WebView for url, detached from any parent: the
+     * prefetched WebView if it loads url, otherwise an idle one, otherwise a
+     * new one. The caller loads url unless {@link #isPrefetched(String)} was
+     * true, and must return the WebView through {@link #recycle}.
+     */
+    public WebView obtain(String url) {
+        WebView webView;
+
+        if (isPrefetched(url)) {
+            webView = prefetched;
+            prefetched = null;
+            prefetchedUrl = null;
+            ++prefetchHits;
+        } else if (!idle.isEmpty()) {
+            webView = idle.remove(idle.size() - 1);
+            ++reuses;
+        } else {
+            long start = SystemClock.elapsedRealtime();
+            webView = create();
+            constructionMillis += SystemClock.elapsedRealtime() - start;
+            ++constructions;
+        }
+
+        // the previous fragment's view may still be animating out
+        detach(webView);
+        webView.onResume();
+        return webView;
+    }
+
+    /**
+     * Takes back a WebView that showed url. If prefetching is enabled and
+     * nothing else is prefetched, the page is kept as it is, since the same
+     * search is a likely next pick. Otherwise the WebView is reset and kept
+     * idle, or destroyed if the pool is full.
+     */
+    public void recycle(WebView webView, String url) {
+        webView.setWebViewClient(poolClient);
+
+        if (prefetchEnabled && prefetched == null) {
+            prefetched = webView;
+            prefetchedUrl = url;
+            return;
+        }
+
+        if (idle.size() >= MAX_IDLE) {
+            destroy(webView);
+            return;
+        }
+
+        reset(webView);
+        idle.add(webView);
+    }
+
+    // starts loading url so that it is ready when the user opens it
+    public void prefetch(String url) {
+        if (!prefetchEnabled || url == null || url.equals(prefetchedUrl))
+            return;
+
+        if (prefetched == null)
+            prefetched = !idle.isEmpty() ? idle.remove(idle.size() - 1) : create();
+
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, "Prefetching " + url);
+        prefetchedUrl = url;
+        prefetched.onResume();
+        prefetched.loadUrl(url);
+    }
+
+    /**
+     * Records how long a page took to load, from onPageStarted to
+     * onPageFinished, in a WebView this pool handed out.
+     *
+     * @param reused false if the WebView was constructed for this page
+     */
+    public void recordPageLoad(long millis, boolean reused) {
+        if (reused) {
+            ++reusedLoads;
+            reusedLoadMillis += millis;
+        } else {
+            ++freshLoads;
+            freshLoadMillis += millis;
+        }
+        if (BuildConfig.DEBUG)
+            Log.d(TAG, getStatistics());
+    }
+
+    // number of WebViews constructed so far
+    public int getConstructionCount() {
+        return constructions;
+    }
+
+    // summary of the pool's counters for logging
+    public String getStatistics() {
+        return "constructions=" + constructions +
+                " (avg " + average(constructionMillis, constructions) + "ms)" +
+                " reuses=" + reuses + " prefetchHits=" + prefetchHits +
+                " freshLoads=" + freshLoads + " (avg " + average(freshLoadMillis, freshLoads) + "ms)" +
+                " reusedLoads=" + reusedLoads + " (avg " + average(reusedLoadMillis, reusedLoads) + "ms)";
+    }
+
+    // destroys the idle WebViews to free memory; the prefetch survives
+    public void trim() {
+        for (WebView webView : idle)
+            destroy(webView);
+        idle.clear();
+    }
+
+    // destroys every WebView held, e.g. when the activity is destroyed
+    public void clear() {
+        trim();
+        dropPrefetched();
+    }
+
+    private void dropPrefetched() {
+        if (prefetched != null) {
+            destroy(prefetched);
+            prefetched = null;
+            prefetchedUrl = null;
+        }
+    }
+
+    private WebView create() {
+        WebView webView = new WebView(context);
+        webView.getSettings().setJavaScriptEnabled(true);
+        webView.getSettings().setLoadWithOverviewMode(false);
+        webView.getSettings().setUseWideViewPort(false);
+        webView.setWebViewClient(poolClient);
+        return webView;
+    }
+
+    // stops the page and clears what the previous user of webView left behind
+    private static void reset(WebView webView) {
+        webView.stopLoading();
+        webView.loadUrl(BLANK_URL); // history is cleared once this finishes
+        webView.onPause();
+    }
+
+    private static void destroy(WebView webView) {
+        detach(webView);
+        webView.destroy();
+    }
+
+    private static void detach(WebView webView) {
+        if (webView.getParent() instanceof ViewGroup)
+            ((ViewGroup) webView.getParent()).removeView(webView);
+    }
+
+    private static long average(long total, int count) {
+        return count > 0 ? total / count : 0;
+    }
+}
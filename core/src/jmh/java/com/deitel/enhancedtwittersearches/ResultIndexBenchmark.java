@@ -0,0 +1,104 @@
+package com.deitel.enhancedtwittersearches;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searching the local result index once it holds size postings, for the
+ * kinds of queries the "Search results" dialog gets: a common word, a rare
+ * word, two words, a phrase and an OR. Also adding one more result.
+ * <p/>
+ * Result texts are 12 words drawn from a skewed vocabulary, so a few words
+ * occur in most results and most words in few of them, as in real text.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResultIndexBenchmark {
+
+    private static final int WORDS_PER_RESULT = 12;
+    private static final int VOCABULARY_SIZE = 20000;
+
+    @Param({"10000", "100000", "1000000"})
+    public int size; // postings in the index
+
+    private ResultIndex index;
+    private Random random;
+    private long nextId;
+
+    @Setup
+    public void setUp() {
+        random = new Random(size);
+        index = new ResultIndex();
+        while (index.getPostingCount() < size)
+            index.add("tag " + (nextId % 100), newResult());
+    }
+
+    @Benchmark
+    public int[] commonWord() {
+        return index.search(word(0));
+    }
+
+    @Benchmark
+    public int[] rareWord() {
+        return index.search(word(VOCABULARY_SIZE / 2));
+    }
+
+    @Benchmark
+    public int[] twoWords() {
+        return index.search(word(1) + " " + word(2));
+    }
+
+    @Benchmark
+    public int[] phrase() {
+        return index.search("\"android play store\"");
+    }
+
+    @Benchmark
+    public int[] or() {
+        return index.search(word(3) + " OR " + word(40));
+    }
+
+    // grows the index by one result per call, which barely changes it at these sizes
+    @Benchmark
+    public int addResult() {
+        return index.add("tag", newResult());
+    }
+
+    private SearchResult newResult() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < WORDS_PER_RESULT; ++i) {
+            if (i > 0)
+                text.append(' ');
+            if (random.nextInt(50) == 0) {
+                text.append("android play store");
+                i += 2;
+            } else {
+                // cubing skews the draw towards the first words
+                double r = random.nextDouble();
+                text.append(word((int) (r * r * r * VOCABULARY_SIZE)));
+            }
+        }
+        ++nextId;
+        return new SearchResult(nextId, "user" + nextId % 1000, text.toString(), "1h", null);
+    }
+
+    private static String word(int i) {
+        return "w" + Integer.toString(i, 36);
+    }
+}
@@ -0,0 +1,75 @@
+package com.deitel.enhancedtwittersearches;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing and reading the searches file in memory, without the disk, so the
+ * encoding cost of the persistence path is measured on its own.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SavedSearchCodecBenchmark {
+
+    @Param({"100", "1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private List<SavedSearch> searches;
+    private byte[] file; // the searches encoded, for reading
+
+    @Setup
+    public void setUp() throws IOException {
+        searches = Searches.generate(size);
+        file = write().toByteArray();
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream writeAll() throws IOException {
+        return write();
+    }
+
+    @Benchmark
+    public int readAll() throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new ByteArrayInputStream(file)));
+        int version = SavedSearchCodec.readHeader(in);
+        int count = 0;
+        while (SavedSearchCodec.readSearch(in, version) != null)
+            ++count;
+        return count;
+    }
+
+    private ByteArrayOutputStream write() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(size * 32);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(bytes));
+        SavedSearchCodec.writeHeader(out);
+        for (SavedSearch search : searches)
+            SavedSearchCodec.writeSearch(out, search);
+        SavedSearchCodec.writeEnd(out);
+        out.flush();
+        return bytes;
+    }
+}
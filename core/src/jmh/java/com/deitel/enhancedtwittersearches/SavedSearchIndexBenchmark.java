@@ -0,0 +1,74 @@
+package com.deitel.enhancedtwittersearches;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorting and updating the saved tags: the bulk load done when the searches
+ * file is read, a single insert and delete as done by the UI, and the sorted
+ * copy of all tags the list is built from.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SavedSearchIndexBenchmark {
+
+    @Param({"100", "1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private List<SavedSearch> searches;
+    private SavedSearchIndex index;
+    private final Random random = new Random(0);
+    private int inserted;
+
+    @Setup
+    public void setUp() {
+        searches = Searches.generate(size);
+        index = load();
+    }
+
+    // appends every search unsorted, then sorts once
+    @Benchmark
+    public SavedSearchIndex bulkLoad() {
+        return load();
+    }
+
+    // inserts a new tag at its sorted position and removes it again
+    @Benchmark
+    public int putAndRemove() {
+        String tag = Searches.newTag(random, inserted++);
+        int position = index.put(tag, "query");
+        index.remove(tag);
+        return position;
+    }
+
+    @Benchmark
+    public ArrayList<String> getTags() {
+        return index.getTags();
+    }
+
+    private SavedSearchIndex load() {
+        SavedSearchIndex loaded = new SavedSearchIndex();
+        for (SavedSearch search : searches)
+            loaded.append(search);
+        loaded.finishAppend();
+        return loaded;
+    }
+}
@@ -0,0 +1,109 @@
+package com.deitel.enhancedtwittersearches;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing search pages, reported in results per second. A page holds
+ * RESULTS tweets in the markup mobile.twitter.com serves, each with an
+ * avatar, a timestamp, linked text with entities and every third one with
+ * an image, framed by the page's head, scripts and navigation.
+ * <p/>
+ * parseChars parses decoded text; parseBytes also decodes the UTF-8 body,
+ * as LiteResultsFragment and the sync do.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchResultParserBenchmark {
+
+    private static final int RESULTS = 100; // tweets per page
+
+    private final SearchResultParser parser = new SearchResultParser();
+    private final SearchResultParser.ResultListener listener =
+            new SearchResultParser.ResultListener() {
+                @Override
+                public void onResult(SearchResult result) {
+                    ids += result.getId();
+                }
+            };
+    private long ids; // keeps the results alive
+
+    private String page;
+    private byte[] pageBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder html = new StringBuilder();
+        html.append("<!DOCTYPE html><html><head><title>android - Twitter Search</title>")
+                .append("<style type=\"text/css\">.tweet { border: 0 }</style>")
+                .append("<script type=\"text/javascript\">var config = {\"a\": \"<b>\"};</script>")
+                .append("</head><body><div id=\"container\"><div class=\"timeline\">");
+        for (int i = 0; i < RESULTS; ++i) {
+            long id = 618876954553810944L - i;
+            String user = "user" + i;
+            html.append("<table class=\"tweet\" href=\"/").append(user).append("/status/")
+                    .append(id).append("?p=v\">")
+                    .append("<tr class=\"tweet-header\"><td class=\"avatar\"><a href=\"/")
+                    .append(user).append("\"><img src=\"https://pbs.twimg.com/profile_images/")
+                    .append(i).append("/a_normal.png\"></a></td>")
+                    .append("<td class=\"user-info\"><strong class=\"fullname\">User ").append(i)
+                    .append("</strong></td><td class=\"timestamp\"><a href=\"/").append(user)
+                    .append("/status/").append(id).append("?p=p\">").append(i % 24 + 1)
+                    .append("h</a></td></tr>")
+                    .append("<tr class=\"tweet-container\"><td class=\"tweet-content\">")
+                    .append("<div class=\"tweet-text\" data-id=\"").append(id).append("\">")
+                    .append("<div class=\"dir-ltr\" dir=\"ltr\">Tweet number ").append(i)
+                    .append(" about <a href=\"/hashtag/android?src=hash\" ")
+                    .append("class=\"twitter-hashtag\">#android</a> &amp; caf&#233; news ")
+                    .append("<a href=\"https://t.co/x\" class=\"twitter_external_link\">t.co/x</a>")
+                    .append("</div></div>");
+            if (i % 3 == 0) {
+                html.append("<div class=\"media\"><a href=\"/").append(user)
+                        .append("/status/").append(id).append("/photo/1\"><img src=\"")
+                        .append("https://pbs.twimg.com/media/").append(id)
+                        .append(".jpg:small\"></a></div>");
+            }
+            html.append("</td></tr></table>\n");
+        }
+        html.append("</div><div class=\"w-button-more\"><a href=\"/search?q=android\">")
+                .append("Load older Tweets</a></div></div></body></html>");
+
+        page = html.toString();
+        pageBytes = page.getBytes("UTF-8");
+        if (parser.parse(new StringReader(page), listener) != RESULTS)
+            throw new IllegalStateException("Page does not parse to " + RESULTS + " results");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RESULTS)
+    public long parseChars() throws IOException {
+        parser.parse(new StringReader(page), listener);
+        return ids;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RESULTS)
+    public long parseBytes() throws IOException {
+        parser.parse(new InputStreamReader(new ByteArrayInputStream(pageBytes), "UTF-8"), listener);
+        return ids;
+    }
+}
@@ -0,0 +1,154 @@
+package com.deitel.enhancedtwittersearches;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the search URL of every saved search, as polling all of them
+ * does, with and without the filter parameters. The baseline builds them
+ * the way MainActivity.buildSearchString did before SearchUrlBuilder:
+ * Uri.encode, then concatenating the URL, the filter parameters and the
+ * topic for every search.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchUrlBuilderBenchmark {
+
+    @Param({"100", "1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private List<SavedSearch> searches;
+    private static final String SEARCH_URL = "http://mobile.twitter.com/search/";
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final String ALLOWED = "_-!.~'()*";
+
+    private final SearchUrlBuilder builder = new SearchUrlBuilder(SEARCH_URL);
+
+    @Setup
+    public void setUp() {
+        searches = Searches.generate(size);
+    }
+
+    @Benchmark
+    public void buildAll(Blackhole blackhole) {
+        for (SavedSearch search : searches)
+            blackhole.consume(builder.build(SearchUrlBuilder.ALL_FILTERS, search.getQuery()));
+    }
+
+    @Benchmark
+    public void buildAllBaseline(Blackhole blackhole) throws UnsupportedEncodingException {
+        for (SavedSearch search : searches) {
+            blackhole.consume(legacySearchString(true, true, true, true,
+                    legacyEncode(search.getQuery())));
+        }
+    }
+
+    @Benchmark
+    public void buildAllFilteredBaseline(Blackhole blackhole)
+            throws UnsupportedEncodingException {
+        for (SavedSearch search : searches) {
+            blackhole.consume(legacySearchString(false, true, true, false,
+                    legacyEncode(search.getQuery())));
+        }
+    }
+
+    @Benchmark
+    public void buildAllFiltered(Blackhole blackhole) {
+        for (SavedSearch search : searches)
+            blackhole.consume(builder.build(SearchUrlBuilder.NEWS | SearchUrlBuilder.PHOTOS,
+                    search.getQuery()));
+    }
+
+    // percent-encoding alone, into a reused buffer
+    @Benchmark
+    public int encodeAll() {
+        StringBuilder out = new StringBuilder(128);
+        int length = 0;
+        for (SavedSearch search : searches) {
+            out.setLength(0);
+            SearchUrlBuilder.encode(search.getQuery(), out);
+            length += out.length();
+        }
+        return length;
+    }
+
+    // MainActivity.buildSearchString with the checked filter boxes passed in
+    private static String legacySearchString(boolean live, boolean news, boolean photos,
+                                             boolean videos, String topic) {
+        boolean isDefaultFilter = live && news && photos && videos;
+        if (isDefaultFilter)
+            return SEARCH_URL + "?q=" + topic;
+
+        StringBuilder filterString = new StringBuilder("?");
+        if (live)
+            filterString.append("f=tweets&");
+        if (news)
+            filterString.append("f=news&");
+        if (photos)
+            filterString.append("f=images&");
+        if (videos)
+            filterString.append("f=videos&");
+        return SEARCH_URL + filterString.toString() + "q=" + topic;
+    }
+
+    // android.net.Uri.encode: copies allowed runs, encodes the others through String.getBytes
+    private static String legacyEncode(String s) throws UnsupportedEncodingException {
+        StringBuilder encoded = null;
+        int length = s.length();
+        int current = 0;
+        while (current < length) {
+            int nextToEncode = current;
+            while (nextToEncode < length && isAllowed(s.charAt(nextToEncode)))
+                ++nextToEncode;
+            if (nextToEncode == length) {
+                if (current == 0)
+                    return s; // nothing needed encoding
+                encoded.append(s, current, length);
+                return encoded.toString();
+            }
+
+            if (encoded == null)
+                encoded = new StringBuilder();
+            if (nextToEncode > current)
+                encoded.append(s, current, nextToEncode);
+
+            current = nextToEncode;
+            int nextAllowed = current + 1;
+            while (nextAllowed < length && !isAllowed(s.charAt(nextAllowed)))
+                ++nextAllowed;
+
+            byte[] bytes = s.substring(current, nextAllowed).getBytes("UTF-8");
+            for (byte b : bytes) {
+                encoded.append('%');
+                encoded.append(HEX_DIGITS[(b & 0xf0) >> 4]);
+                encoded.append(HEX_DIGITS[b & 0xf]);
+            }
+            current = nextAllowed;
+        }
+        return encoded == null ? s : encoded.toString();
+    }
+
+    private static boolean isAllowed(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') ||
+                ALLOWED.indexOf(c) != -1;
+    }
+}
@@ -0,0 +1,47 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// deterministic saved searches for the benchmarks, so runs are comparable
+final class Searches {
+
+    private static final String[] WORDS = {
+            "android", "java", "Deitel", "news", "mars", "NASA", "weather", "music",
+            "über", "café", "#hashtag", "@user", "\"exact phrase\"", "OR", "-exclude", "2015"
+    };
+
+    private Searches() {
+    }
+
+    // size searches with unique tags in random order, the same ones every run
+    static List<SavedSearch> generate(int size) {
+        Random random = new Random(size);
+        ArrayList<SavedSearch> searches = new ArrayList<SavedSearch>(size);
+        for (int i = 0; i < size; ++i)
+            searches.add(new SavedSearch(tag(random, i), query(random)));
+        return searches;
+    }
+
+    // a tag not in generate(size)
+    static String newTag(Random random, int i) {
+        return "new " + tag(random, i);
+    }
+
+    private static String tag(Random random, int i) {
+        // mixed case so the case-insensitive order is exercised
+        return WORDS[random.nextInt(WORDS.length)] + ' ' + Integer.toString(i, 36);
+    }
+
+    private static String query(Random random) {
+        StringBuilder query = new StringBuilder();
+        int words = 1 + random.nextInt(4);
+        for (int i = 0; i < words; ++i) {
+            if (i > 0)
+                query.append(' ');
+            query.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return query.toString();
+    }
+}
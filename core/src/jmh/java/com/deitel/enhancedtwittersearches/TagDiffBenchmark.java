@@ -0,0 +1,86 @@
+package com.deitel.enhancedtwittersearches;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Diffing the tag list after the changes the list sees: saving or deleting
+ * one search, a streamed chunk arriving, and reordering by use.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TagDiffBenchmark {
+
+    private static final int CHUNK_SIZE = 1024; // largest chunk the repository streams
+
+    @Param({"100", "1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private List<String> tags; // in name order
+    private List<String> inserted; // one new tag in the middle
+    private List<String> removed; // the middle tag deleted
+    private List<String> appended; // a chunk more
+    private List<String> reordered; // a few tags moved up, as after using them
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(size);
+        tags = new ArrayList<String>(size);
+        for (SavedSearch search : Searches.generate(size))
+            tags.add(search.getTag());
+        Collections.sort(tags, String.CASE_INSENSITIVE_ORDER);
+
+        inserted = new ArrayList<String>(tags);
+        inserted.add(size / 2, Searches.newTag(random, 0));
+
+        removed = new ArrayList<String>(tags);
+        removed.remove(size / 2);
+
+        appended = new ArrayList<String>(tags);
+        for (int i = 0; i < CHUNK_SIZE; ++i)
+            appended.add(Searches.newTag(random, i));
+
+        reordered = new ArrayList<String>(tags);
+        for (int i = 0; i < 10; ++i)
+            reordered.add(0, reordered.remove(random.nextInt(size)));
+    }
+
+    @Benchmark
+    public TagDiff insertOne() {
+        return TagDiff.compute(tags, inserted);
+    }
+
+    @Benchmark
+    public TagDiff removeOne() {
+        return TagDiff.compute(tags, removed);
+    }
+
+    @Benchmark
+    public TagDiff appendChunk() {
+        return TagDiff.compute(tags, appended);
+    }
+
+    @Benchmark
+    public TagDiff moveUsed() {
+        return TagDiff.compute(tags, reordered);
+    }
+}
@@ -0,0 +1,64 @@
+package com.deitel.enhancedtwittersearches;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the type-ahead filter over all searches, and typing a word into
+ * it one keystroke at a time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TagFilterBenchmark {
+
+    private static final String TYPED = "android";
+
+    @Param({"100", "1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private List<SavedSearch> searches;
+    private TagFilter filter;
+
+    @Setup
+    public void setUp() {
+        searches = Searches.generate(size);
+        filter = build();
+    }
+
+    @Benchmark
+    public TagFilter buildFilter() {
+        return build();
+    }
+
+    // each prefix of TYPED in turn, then clearing the box
+    @Benchmark
+    public int typeWord() {
+        int matches = 0;
+        for (int length = 1; length <= TYPED.length(); ++length)
+            matches += filter.filter(TYPED.substring(0, length)).size();
+        filter.filter("");
+        return matches;
+    }
+
+    private TagFilter build() {
+        TagFilter built = new TagFilter();
+        built.addAll(searches);
+        return built;
+    }
+}
@@ -0,0 +1,81 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The rows of the tag list that were on screen when it was last shown, and
+ * where the list was scrolled to, so a cold start can show them before the
+ * saved searches have been loaded.
+ * <p/>
+ * A snapshot encodes to one short string, e.g. "12,-30,4:mars3:nasa" for the
+ * tags "mars" and "nasa" shown from position 12, 30 pixels scrolled past the
+ * top. Each tag is prefixed with its length, so tags may hold any character.
+ */
+public final class ListSnapshot {
+
+    private final int position; // list position of the first tag
+    private final int offset; // top of the first row relative to the top of the list
+    private final List<String> tags;
+
+    public ListSnapshot(int position, int offset, List<String> tags) {
+        this.position = position;
+        this.offset = offset;
+        this.tags = Collections.unmodifiableList(new ArrayList<String>(tags));
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public String encode() {
+        StringBuilder out = new StringBuilder(16 + tags.size() * 12);
+        out.append(position).append(',').append(offset).append(',');
+        for (String tag : tags)
+            out.append(tag.length()).append(':').append(tag);
+        return out.toString();
+    }
+
+    /**
+     * @return the snapshot encoded in s, or null if s is null or malformed
+     */
+    public static ListSnapshot decode(String s) {
+        if (s == null)
+            return null;
+
+        int positionEnd = s.indexOf(',');
+        int offsetEnd = s.indexOf(',', positionEnd + 1);
+        if (positionEnd < 0 || offsetEnd < 0)
+            return null;
+
+        try {
+            int position = Integer.parseInt(s.substring(0, positionEnd));
+            int offset = Integer.parseInt(s.substring(positionEnd + 1, offsetEnd));
+
+            ArrayList<String> tags = new ArrayList<String>();
+            int i = offsetEnd + 1;
+            while (i < s.length()) {
+                int colon = s.indexOf(':', i);
+                if (colon < 0)
+                    return null;
+                int end = colon + 1 + Integer.parseInt(s.substring(i, colon));
+                if (end > s.length() || end <= colon)
+                    return null;
+                tags.add(s.substring(colon + 1, end));
+                i = end;
+            }
+            return position >= 0 ? new ListSnapshot(position, offset, tags) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Named counters and histograms that the app updates on its hot paths and
+ * that can be dumped to a file on a field device. Updates are lock free and
+ * allocate nothing; callers look a metric up once and keep it in a
+ * constant.
+ * <p/>
+ * Histograms count values in power of two buckets, so they take constant
+ * memory however many values are recorded, and their percentiles are the
+ * upper bound of the bucket holding the percentile: never lower than the
+ * exact value and at most twice it.
+ */
+public class MetricsRegistry {
+
+    private static final double[] PERCENTILES = {0.50, 0.95, 0.99};
+
+    private static final MetricsRegistry instance = new MetricsRegistry();
+
+    // a count that only goes up
+    public static class Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    // the distribution of non-negative values, e.g. durations
+    public static class Histogram {
+        // bucket 0 counts 0, bucket i counts values from 2^(i-1) to 2^i - 1
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        public void record(long value) {
+            if (value < 0)
+                value = 0;
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+
+            long current = max.get();
+            while (value > current && !max.compareAndSet(current, value))
+                current = max.get();
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        // mean of the recorded values, or 0
+        public long getMean() {
+            long n = count.get();
+            return n > 0 ? sum.get() / n : 0;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given percentile, capped at
+         * the largest value recorded, or 0 if nothing was recorded.
+         *
+         * @param fraction percentile as a fraction between 0 and 1
+         */
+        public long percentile(double fraction) {
+            long[] counts = new long[buckets.length()];
+            long total = 0;
+            for (int i = 0; i < counts.length; ++i) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            if (total == 0)
+                return 0;
+
+            long rank = Math.max(1, (long) Math.ceil(fraction * total));
+            for (int i = 0; i < counts.length; ++i) {
+                rank -= counts[i];
+                if (rank <= 0)
+                    return Math.min(upperBound(i), max.get());
+            }
+            return max.get();
+        }
+
+        // largest value counted in bucket
+        static long upperBound(int bucket) {
+            return bucket == 0 ? 0 : bucket == 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+        }
+    }
+
+    private final ConcurrentMap<String, Counter> counters =
+            new ConcurrentHashMap<String, Counter>();
+    private final ConcurrentMap<String, Histogram> histograms =
+            new ConcurrentHashMap<String, Histogram>();
+
+    public static MetricsRegistry getInstance() {
+        return instance;
+    }
+
+    // the counter with name, created on first use
+    public Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter created = new Counter();
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null)
+                counter = created;
+        }
+        return counter;
+    }
+
+    // the histogram with name, created on first use
+    public Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null)
+                histogram = created;
+        }
+        return histogram;
+    }
+
+    /**
+     * Writes every counter and every histogram that recorded a value as
+     * CSV, sorted by name, followed by the histogram buckets.
+     */
+    public void dump(Writer out) throws IOException {
+        TreeMap<String, Counter> sortedCounters = new TreeMap<String, Counter>(counters);
+        TreeMap<String, Histogram> sortedHistograms = new TreeMap<String, Histogram>();
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            if (entry.getValue().getCount() > 0)
+                sortedHistograms.put(entry.getKey(), entry.getValue());
+        }
+
+        out.write("# " + sortedCounters.size() + " counters, " +
+                sortedHistograms.size() + " histograms\n");
+        out.write("type,name,count,mean,p50,p95,p99,max\n");
+        for (Map.Entry<String, Counter> entry : sortedCounters.entrySet())
+            out.write("counter," + entry.getKey() + "," + entry.getValue().get() + ",,,,,\n");
+        for (Map.Entry<String, Histogram> entry : sortedHistograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            StringBuilder line = new StringBuilder();
+            line.append("histogram,").append(entry.getKey()).append(',')
+                    .append(histogram.getCount()).append(',').append(histogram.getMean());
+            for (double fraction : PERCENTILES)
+                line.append(',').append(histogram.percentile(fraction));
+            line.append(',').append(histogram.getMax()).append('\n');
+            out.write(line.toString());
+        }
+
+        out.write("\nname,upperBound,count\n");
+        for (Map.Entry<String, Histogram> entry : sortedHistograms.entrySet()) {
+            AtomicLongArray buckets = entry.getValue().buckets;
+            for (int i = 0; i < buckets.length(); ++i) {
+                long count = buckets.get(i);
+                if (count > 0)
+                    out.write(entry.getKey() + "," + Histogram.upperBound(i) + "," + count + "\n");
+            }
+        }
+        out.flush();
+    }
+}
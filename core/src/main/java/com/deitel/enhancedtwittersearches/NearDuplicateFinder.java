@@ -0,0 +1,169 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups saved searches whose queries are nearly the same, such as
+ * "android app" and "android apps", without comparing every pair.
+ * <p/>
+ * Each normalized query (see {@link QueryNormalizer}) is cut into character
+ * 3-grams and summarized by a MinHash signature, whose agreement between
+ * two queries estimates the Jaccard similarity of their 3-gram sets. The
+ * signatures are split into bands, and only queries that agree on all rows
+ * of at least one band become candidates (locality-sensitive hashing).
+ * Candidates whose estimated similarity reaches the threshold are joined
+ * with a union-find, so the result is the connected groups.
+ */
+public class NearDuplicateFinder {
+
+    private static final int SHINGLE_LENGTH = 3;
+    private static final int BANDS = 16;
+    private static final int ROWS = 4; // signature values per band
+    private static final int HASHES = BANDS * ROWS;
+
+    private final double threshold; // estimated Jaccard similarity to count as near-duplicate
+    private final long[] seeds = new long[HASHES];
+
+    /**
+     * @param threshold similarity between 0 and 1 at which queries are grouped;
+     * 16 bands of 4 rows find most pairs above 0.6
+     */
+    public NearDuplicateFinder(double threshold) {
+        this.threshold = threshold;
+        long seed = 0x2545F4914F6CDD1DL;
+        for (int i = 0; i < HASHES; ++i)
+            seeds[i] = seed = mix(seed + i);
+    }
+
+    /**
+     * Groups searches with near-duplicate queries. Searches run with
+     * different filters are never grouped.
+     *
+     * @return tags of every group of two or more searches, in the order of searches
+     */
+    public List<List<String>> findGroups(List<SavedSearch> searches) {
+        int count = searches.size();
+        long[][] signatures = new long[count][];
+        for (int i = 0; i < count; ++i) {
+            SavedSearch search = searches.get(i);
+            signatures[i] = signature(QueryNormalizer.normalize(search.getQuery(), search.getFilters()));
+        }
+
+        int[] parents = new int[count];
+        for (int i = 0; i < count; ++i)
+            parents[i] = i;
+
+        // searches agreeing on every row of a band share a bucket; each bucket
+        // keeps one representative per group, so identical queries cost O(1) each
+        for (int band = 0; band < BANDS; ++band) {
+            HashMap<Long, List<Integer>> buckets = new HashMap<Long, List<Integer>>();
+            for (int i = 0; i < count; ++i) {
+                long bandHash = band;
+                for (int row = 0; row < ROWS; ++row)
+                    bandHash = mix(bandHash ^ signatures[i][band * ROWS + row]);
+
+                List<Integer> representatives = buckets.get(bandHash);
+                if (representatives == null) {
+                    representatives = new ArrayList<Integer>(2);
+                    buckets.put(bandHash, representatives);
+                }
+
+                boolean joined = false;
+                for (int other : representatives) {
+                    if (similarity(signatures[other], signatures[i]) >= threshold) {
+                        union(parents, other, i);
+                        joined = true;
+                    }
+                }
+                if (!joined)
+                    representatives.add(i);
+            }
+        }
+
+        // collect the groups in the order of their first search
+        Map<Integer, List<String>> groups = new HashMap<Integer, List<String>>();
+        List<List<String>> result = new ArrayList<List<String>>();
+        for (int i = 0; i < count; ++i) {
+            int root = find(parents, i);
+            List<String> group = groups.get(root);
+            if (group == null) {
+                group = new ArrayList<String>();
+                groups.put(root, group);
+                result.add(group);
+            }
+            group.add(searches.get(i).getTag());
+        }
+
+        List<List<String>> duplicates = new ArrayList<List<String>>();
+        for (List<String> group : result) {
+            if (group.size() > 1)
+                duplicates.add(group);
+        }
+        return duplicates;
+    }
+
+    // MinHash signature of the 3-grams of text
+    long[] signature(String text) {
+        long[] signature = new long[HASHES];
+        Arrays.fill(signature, Long.MAX_VALUE);
+
+        // skip the filter prefix so it does not dominate short queries
+        int start = text.indexOf('|') + 1;
+        String body = text.substring(start);
+        if (body.length() < SHINGLE_LENGTH)
+            body = body + "  ".substring(0, SHINGLE_LENGTH - body.length());
+
+        for (int i = 0; i + SHINGLE_LENGTH <= body.length(); ++i) {
+            long shingle = 0;
+            for (int j = 0; j < SHINGLE_LENGTH; ++j)
+                shingle = (shingle << 16) | body.charAt(i + j);
+            shingle ^= (long) text.substring(0, start).hashCode() << 48; // filters must match
+
+            for (int h = 0; h < HASHES; ++h) {
+                long value = mix(shingle ^ seeds[h]);
+                if (value < signature[h])
+                    signature[h] = value;
+            }
+        }
+        return signature;
+    }
+
+    // fraction of signature values that agree, estimating Jaccard similarity
+    static double similarity(long[] a, long[] b) {
+        int same = 0;
+        for (int i = 0; i < a.length; ++i) {
+            if (a[i] == b[i])
+                ++same;
+        }
+        return (double) same / a.length;
+    }
+
+    private static int find(int[] parents, int i) {
+        while (parents[i] != i) {
+            parents[i] = parents[parents[i]]; // path halving
+            i = parents[i];
+        }
+        return i;
+    }
+
+    // joins the groups, keeping the lower index as root so groups stay in order
+    private static void union(int[] parents, int a, int b) {
+        int rootA = find(parents, a);
+        int rootB = find(parents, b);
+        if (rootA < rootB)
+            parents[rootB] = rootA;
+        else if (rootB < rootA)
+            parents[rootA] = rootB;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,231 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Disk-backed LRU cache of fetched pages, keyed by URL. Each page is one file
+ * in the cache directory, named after a hash of its URL. The total size of
+ * the files is kept under a limit by deleting the least recently used pages;
+ * recency survives restarts through the files' modification times.
+ * <p/>
+ * Entries older than the time to live are still returned, marked as stale,
+ * so callers can show them while fetching a fresh copy.
+ */
+public class PageCache {
+
+    private static final int MAGIC = 0x54575043; // "TWPC"
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * A cached page.
+     */
+    public static class Page {
+        public final String url;
+        public final String mimeType;
+        public final String encoding;
+        public final long fetchedAt; // System.currentTimeMillis when fetched
+        public final byte[] body;
+
+        public Page(String url, String mimeType, String encoding, long fetchedAt, byte[] body) {
+            this.url = url;
+            this.mimeType = mimeType;
+            this.encoding = encoding;
+            this.fetchedAt = fetchedAt;
+            this.body = body;
+        }
+    }
+
+    private final File directory;
+    private final long maxBytes;
+    private final long timeToLive; // ms a page is fresh
+
+    // file name -> file size, least recently used first
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long size; // total bytes of all files
+    private boolean opened;
+
+    public PageCache(File directory, long maxBytes, long timeToLive) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.timeToLive = timeToLive;
+    }
+
+    // true if page was fetched less than the time to live ago
+    public boolean isFresh(Page page) {
+        long age = System.currentTimeMillis() - page.fetchedAt;
+        return age >= 0 && age < timeToLive;
+    }
+
+    // the cached page for url, fresh or stale, or null
+    public synchronized Page get(String url) {
+        open();
+
+        String name = fileName(url);
+        if (files.get(name) == null) // also marks the page as recently used
+            return null;
+
+        File file = new File(directory, name);
+        try {
+            Page page = read(file);
+            if (!url.equals(page.url))
+                return null; // hash collision
+
+            file.setLastModified(System.currentTimeMillis()); // keep LRU order on disk
+            return page;
+        } catch (IOException e) {
+            remove(name);
+            return null;
+        }
+    }
+
+    // stores page, evicting the least recently used pages to stay under the limit
+    public synchronized void put(Page page) throws IOException {
+        open();
+
+        String name = fileName(page.url);
+        File file = new File(directory, name);
+        File temp = new File(directory, name + TEMP_SUFFIX);
+
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeUTF(page.url);
+            out.writeUTF(page.mimeType);
+            out.writeUTF(page.encoding);
+            out.writeLong(page.fetchedAt);
+            out.writeInt(page.body.length);
+            out.write(page.body);
+        } finally {
+            out.close();
+        }
+
+        remove(name);
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Unable to store " + file);
+        }
+
+        files.put(name, file.length());
+        size += file.length();
+        trimToSize();
+    }
+
+    // total bytes currently cached
+    public synchronized long size() {
+        open();
+        return size;
+    }
+
+    // deletes every cached page
+    public synchronized void clear() {
+        open();
+        for (String name : files.keySet())
+            new File(directory, name).delete();
+        files.clear();
+        size = 0;
+    }
+
+    // scans the directory the first time the cache is used
+    private void open() {
+        if (opened)
+            return;
+        opened = true;
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+            return;
+
+        File[] existing = directory.listFiles();
+        if (existing == null)
+            return;
+
+        // oldest first, so the most recently used end up last in the LRU order
+        Arrays.sort(existing, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified(), r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+
+        for (File file : existing) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                file.delete(); // left over from an interrupted put
+            } else {
+                files.put(file.getName(), file.length());
+                size += file.length();
+            }
+        }
+        trimToSize();
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = files.entrySet().iterator();
+        while (size > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            new File(directory, eldest.getKey()).delete();
+            size -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    private void remove(String name) {
+        Long length = files.remove(name);
+        if (length != null) {
+            size -= length;
+            new File(directory, name).delete();
+        }
+    }
+
+    private static Page read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Not a cached page: " + file);
+
+            String url = in.readUTF();
+            String mimeType = in.readUTF();
+            String encoding = in.readUTF();
+            long fetchedAt = in.readLong();
+            int length = in.readInt();
+            if (length < 0 || length > file.length())
+                throw new IOException("Corrupt cached page: " + file);
+            byte[] body = new byte[length];
+            in.readFully(body);
+            return new Page(url, mimeType, encoding, fetchedAt, body);
+        } finally {
+            in.close();
+        }
+    }
+
+    // hex SHA-1 of url, safe as a file name
+    private static String fileName(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
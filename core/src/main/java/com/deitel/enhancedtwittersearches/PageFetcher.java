@@ -0,0 +1,246 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fetches a page over HTTP with HttpURLConnection, following redirects.
+ * Redirects are followed here rather than by HttpURLConnection, which
+ * won't follow one from http to https; the Cookie header is only sent to
+ * the host of the original URL, and never over plain http when the
+ * original URL was https.
+ * <p/>
+ * Works against any URL, so it can be pointed at a local stub server.
+ */
+public class PageFetcher {
+
+    private static final String DEFAULT_ENCODING = "UTF-8";
+    private static final String DEFAULT_MIME_TYPE = "text/html";
+    private static final int MAX_REDIRECTS = 5; // hops followed before giving up
+
+    private final int timeoutMillis; // connect and read timeout
+    private final int maxBytes; // larger bodies are rejected
+
+    /**
+     * A fetched page.
+     */
+    public static class Response {
+        public final int status;
+        public final String url; // where the page was found, after redirects
+        public final String mimeType;
+        public final String encoding;
+        public final byte[] body;
+        public final List<String> cookies; // Set-Cookie header values
+
+        Response(int status, String url, String mimeType, String encoding, byte[] body,
+                 List<String> cookies) {
+            this.status = status;
+            this.url = url;
+            this.mimeType = mimeType;
+            this.encoding = encoding;
+            this.body = body;
+            this.cookies = cookies;
+        }
+    }
+
+    /**
+     * Consumes the body of a successful response while it is received.
+     */
+    public interface BodyReader<T> {
+        T read(InputStream body, String encoding) throws IOException;
+    }
+
+    /**
+     * A handle on a fetch that another thread can abort. Aborting
+     * disconnects the connection in use, which makes a read blocked on it
+     * fail at once instead of waiting for the timeout.
+     */
+    public static class Call {
+        private HttpURLConnection connection; // guarded by this
+        private boolean aborted; // guarded by this
+
+        public synchronized void abort() {
+            aborted = true;
+            if (connection != null)
+                connection.disconnect();
+        }
+
+        // makes connection the one abort() disconnects
+        private synchronized void attach(HttpURLConnection connection) throws IOException {
+            if (aborted) {
+                connection.disconnect();
+                throw new IOException("Aborted");
+            }
+            this.connection = connection;
+        }
+
+        // abort() before the connection was open had nothing to disconnect
+        private synchronized void checkAborted() throws IOException {
+            if (aborted)
+                throw new IOException("Aborted");
+        }
+    }
+
+    public PageFetcher(int timeoutMillis, int maxBytes) {
+        this.timeoutMillis = timeoutMillis;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Fetches url with a GET request.
+     *
+     * @param userAgent User-Agent header to send, or null
+     * @param cookie Cookie header to send, or null
+     * @throws IOException on network errors, non-200 responses or bodies
+     * larger than the limit
+     */
+    public Response fetch(String url, String userAgent, String cookie) throws IOException {
+        HttpURLConnection connection = connect(url, userAgent, cookie, null);
+        try {
+            String contentType = connection.getContentType();
+
+            List<String> cookies = connection.getHeaderFields().get("Set-Cookie");
+            if (cookies == null)
+                cookies = Collections.emptyList();
+
+            InputStream in = connection.getInputStream();
+            try {
+                return new Response(connection.getResponseCode(), connection.getURL().toString(),
+                        mimeType(contentType), encoding(contentType), readBody(in), cookies);
+            } finally {
+                in.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Fetches url with a GET request and streams the body to reader instead
+     * of buffering it; the size limit does not apply.
+     *
+     * @return what reader returned
+     */
+    public <T> T fetch(String url, String userAgent, String cookie, BodyReader<T> reader)
+            throws IOException {
+        return fetch(url, userAgent, cookie, reader, null);
+    }
+
+    /**
+     * Like {@link #fetch(String, String, String, BodyReader)}, but can be
+     * aborted through call, in which case it throws an IOException.
+     *
+     * @param call handle to abort the fetch with, or null
+     */
+    public <T> T fetch(String url, String userAgent, String cookie, BodyReader<T> reader,
+                       Call call) throws IOException {
+        HttpURLConnection connection = connect(url, userAgent, cookie, call);
+        try {
+            InputStream in = connection.getInputStream();
+            try {
+                return reader.read(in, encoding(connection.getContentType()));
+            } finally {
+                in.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    // opens a connection, following redirects, and checks that the response is a 200
+    private HttpURLConnection connect(String url, String userAgent, String cookie, Call call)
+            throws IOException {
+        URL origin = new URL(url);
+        URL target = origin;
+        for (int redirects = 0; ; ++redirects) {
+            HttpURLConnection connection = (HttpURLConnection) target.openConnection();
+            if (call != null)
+                call.attach(connection);
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            connection.setInstanceFollowRedirects(false);
+            if (userAgent != null)
+                connection.setRequestProperty("User-Agent", userAgent);
+            if (cookie != null && sendsCookie(origin, target))
+                connection.setRequestProperty("Cookie", cookie);
+
+            int status;
+            try {
+                connection.connect();
+                if (call != null)
+                    call.checkAborted();
+                status = connection.getResponseCode();
+            } catch (IOException e) {
+                connection.disconnect();
+                throw e;
+            }
+
+            if (status == HttpURLConnection.HTTP_OK)
+                return connection;
+
+            String location = isRedirect(status) ? connection.getHeaderField("Location") : null;
+            connection.disconnect();
+            if (location == null)
+                throw new IOException("HTTP " + status + " for " + url);
+            if (redirects == MAX_REDIRECTS)
+                throw new IOException("Too many redirects for " + url);
+
+            target = new URL(target, location);
+            if (!"http".equals(target.getProtocol()) && !"https".equals(target.getProtocol()))
+                throw new IOException("Redirect to " + target + " for " + url);
+        }
+    }
+
+    // true if the cookies of origin may go to target: same host, and not
+    // downgraded from https to http
+    static boolean sendsCookie(URL origin, URL target) {
+        return target.getHost().equalsIgnoreCase(origin.getHost()) &&
+                (target.getProtocol().equals(origin.getProtocol()) ||
+                        "https".equals(target.getProtocol()));
+    }
+
+    private static boolean isRedirect(int status) {
+        return status == HttpURLConnection.HTTP_MOVED_PERM ||
+                status == HttpURLConnection.HTTP_MOVED_TEMP ||
+                status == HttpURLConnection.HTTP_SEE_OTHER ||
+                status == 307 || status == 308; // temporary and permanent redirect
+    }
+
+    // "text/html" from "text/html; charset=utf-8"
+    private static String mimeType(String contentType) {
+        if (contentType == null)
+            return DEFAULT_MIME_TYPE;
+        int separator = contentType.indexOf(';');
+        return (separator >= 0 ? contentType.substring(0, separator) : contentType).trim();
+    }
+
+    // "utf-8" from "text/html; charset=utf-8"
+    private static String encoding(String contentType) {
+        if (contentType != null) {
+            String[] parts = contentType.split(";");
+            for (int i = 1; i < parts.length; ++i) {
+                String part = parts[i].trim();
+                if (part.regionMatches(true, 0, "charset=", 0, 8))
+                    return part.substring(8).replace("\"", "");
+            }
+        }
+        return DEFAULT_ENCODING;
+    }
+
+    private byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            if (body.size() + count > maxBytes)
+                throw new IOException("Response larger than " + maxBytes + " bytes");
+            body.write(buffer, 0, count);
+        }
+        return body.toByteArray();
+    }
+}
@@ -0,0 +1,176 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records how long saved searches take to load. Samples go into a fixed
+ * size ring buffer that is written without locks: each writer claims a slot
+ * with an atomic counter and publishes an immutable sample into it, so the
+ * WebView callbacks never wait on a reader. Once the buffer is full the
+ * oldest samples are overwritten.
+ * <p/>
+ * {@link #dump} writes p50/p95/p99 summaries, overall and per tag, followed
+ * by the raw samples as CSV for offline analysis.
+ */
+public class PageLoadMetrics {
+
+    private static final int CAPACITY = 1024; // samples kept
+
+    private static final double[] PERCENTILES = {0.50, 0.95, 0.99};
+
+    private static final PageLoadMetrics instance = new PageLoadMetrics(CAPACITY);
+
+    /**
+     * Timings of one page load.
+     */
+    public static class Sample {
+        public final long timestamp; // System.currentTimeMillis when recorded
+        public final String tag; // saved search that was opened
+        public final long clickToStart; // ms from the list click to onPageStarted
+        public final long startToFinish; // ms from onPageStarted to onPageFinished
+        public final int redirects; // URLs loaded through shouldOverrideUrlLoading
+
+        public Sample(String tag, long clickToStart, long startToFinish, int redirects) {
+            this.timestamp = System.currentTimeMillis();
+            this.tag = tag;
+            this.clickToStart = clickToStart;
+            this.startToFinish = startToFinish;
+            this.redirects = redirects;
+        }
+    }
+
+    private final AtomicReferenceArray<Sample> samples;
+    private final AtomicLong nextSlot = new AtomicLong();
+
+    public static PageLoadMetrics getInstance() {
+        return instance;
+    }
+
+    public PageLoadMetrics(int capacity) {
+        samples = new AtomicReferenceArray<Sample>(capacity);
+    }
+
+    // stores sample, overwriting the oldest once the buffer is full
+    public void record(Sample sample) {
+        int slot = (int) (nextSlot.getAndIncrement() % samples.length());
+        samples.set(slot, sample);
+    }
+
+    // number of samples recorded since creation, including overwritten ones
+    public long getRecordedCount() {
+        return nextSlot.get();
+    }
+
+    // the samples currently held, oldest first
+    public List<Sample> snapshot() {
+        long end = nextSlot.get();
+        long start = Math.max(0, end - samples.length());
+
+        ArrayList<Sample> snapshot = new ArrayList<Sample>((int) (end - start));
+        for (long i = start; i < end; ++i) {
+            Sample sample = samples.get((int) (i % samples.length()));
+            if (sample != null) // slot claimed but not published yet
+                snapshot.add(sample);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Writes percentile summaries and the raw samples as CSV.
+     */
+    public void dump(Writer out) throws IOException {
+        List<Sample> snapshot = snapshot();
+
+        // group samples by tag, sorted like the saved search list
+        TreeMap<String, List<Sample>> byTag =
+                new TreeMap<String, List<Sample>>(SavedSearchIndex.TAG_ORDER);
+        for (Sample sample : snapshot) {
+            List<Sample> tagSamples = byTag.get(sample.tag);
+            if (tagSamples == null) {
+                tagSamples = new ArrayList<Sample>();
+                byTag.put(sample.tag, tagSamples);
+            }
+            tagSamples.add(sample);
+        }
+
+        out.write("# " + snapshot.size() + " page loads (" + getRecordedCount() + " recorded)\n");
+        out.write("tag,metric,count,p50,p95,p99,max\n");
+        writeSummary(out, "*", snapshot);
+        for (Map.Entry<String, List<Sample>> entry : byTag.entrySet())
+            writeSummary(out, csv(entry.getKey()), entry.getValue());
+
+        out.write("\ntimestamp,tag,clickToStart,startToFinish,redirects\n");
+        for (Sample sample : snapshot) {
+            out.write(sample.timestamp + "," + csv(sample.tag) + "," + sample.clickToStart +
+                    "," + sample.startToFinish + "," + sample.redirects + "\n");
+        }
+        out.flush();
+    }
+
+    private static void writeSummary(Writer out, String tag, List<Sample> samples)
+            throws IOException {
+        long[] clickToStart = new long[samples.size()];
+        long[] startToFinish = new long[samples.size()];
+        long[] redirects = new long[samples.size()];
+        for (int i = 0; i < samples.size(); ++i) {
+            Sample sample = samples.get(i);
+            clickToStart[i] = sample.clickToStart;
+            startToFinish[i] = sample.startToFinish;
+            redirects[i] = sample.redirects;
+        }
+
+        writeSummaryLine(out, tag, "clickToStart", clickToStart);
+        writeSummaryLine(out, tag, "startToFinish", startToFinish);
+        writeSummaryLine(out, tag, "redirects", redirects);
+    }
+
+    private static void writeSummaryLine(Writer out, String tag, String metric, long[] values)
+            throws IOException {
+        StringBuilder line = new StringBuilder();
+        line.append(tag).append(',').append(metric).append(',').append(values.length);
+        for (long value : percentiles(values, PERCENTILES))
+            line.append(',').append(value);
+        line.append(',').append(values.length > 0 ? max(values) : 0).append('\n');
+        out.write(line.toString());
+    }
+
+    /**
+     * Nearest-rank percentiles of values, which is sorted in place.
+     *
+     * @param fractions percentiles as fractions between 0 and 1
+     */
+    public static long[] percentiles(long[] values, double... fractions) {
+        long[] result = new long[fractions.length];
+        if (values.length == 0)
+            return result;
+
+        Arrays.sort(values);
+        for (int i = 0; i < fractions.length; ++i) {
+            int rank = (int) Math.ceil(fractions[i] * values.length);
+            result[i] = values[Math.min(Math.max(rank, 1), values.length) - 1];
+        }
+        return result;
+    }
+
+    private static long max(long[] values) {
+        long max = Long.MIN_VALUE;
+        for (long value : values)
+            max = Math.max(max, value);
+        return max;
+    }
+
+    // quotes a CSV field if needed
+    private static String csv(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0)
+            return field;
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,137 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides when each saved search is polled for new results. A search that
+ * keeps turning up nothing new, or keeps failing, is polled less and less
+ * often: its interval doubles after every such poll up to a maximum, and
+ * drops back to the minimum as soon as a poll finds new results.
+ * <p/>
+ * Time is passed in by the caller (e.g. SystemClock.elapsedRealtime()), so
+ * the scheduler does no waiting of its own. Not thread safe.
+ */
+public class PollScheduler {
+
+    private final long minInterval; // ms between polls of an active search
+    private final long maxInterval; // longest ms between polls of any search
+
+    private final Map<String, Schedule> schedules = new HashMap<String, Schedule>();
+
+    // polling state of one tag
+    private static class Schedule {
+        long interval; // current ms between polls
+        long due; // time of the next poll
+        boolean polling; // a poll was started and has not completed
+    }
+
+    public PollScheduler(long minInterval, long maxInterval) {
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+    }
+
+    // polls tag as soon as possible, starting with the minimum interval
+    public void add(String tag, long now) {
+        add(tag, now, minInterval);
+    }
+
+    /**
+     * Polls tag at due, continuing with interval, e.g. a schedule saved
+     * before a restart. The interval is kept within the limits.
+     */
+    public void add(String tag, long due, long interval) {
+        Schedule schedule = new Schedule();
+        schedule.interval = Math.max(minInterval, Math.min(interval, maxInterval));
+        schedule.due = due;
+        schedules.put(tag, schedule);
+    }
+
+    // true if tag is scheduled
+    public boolean contains(String tag) {
+        return schedules.containsKey(tag);
+    }
+
+    public void remove(String tag) {
+        schedules.remove(tag);
+    }
+
+    public void clear() {
+        schedules.clear();
+    }
+
+    public int size() {
+        return schedules.size();
+    }
+
+    /**
+     * Returns the tags that are due at now and marks them as being polled;
+     * they are not returned again until {@link #polled} is called for them.
+     */
+    public List<String> startDuePolls(long now) {
+        ArrayList<String> due = new ArrayList<String>();
+        for (Map.Entry<String, Schedule> entry : schedules.entrySet()) {
+            Schedule schedule = entry.getValue();
+            if (!schedule.polling && schedule.due <= now) {
+                schedule.polling = true;
+                due.add(entry.getKey());
+            }
+        }
+        return due;
+    }
+
+    // makes every search that is not being polled due at now, keeping its interval
+    public void pollAllAt(long now) {
+        for (Schedule schedule : schedules.values()) {
+            if (!schedule.polling)
+                schedule.due = Math.min(schedule.due, now);
+        }
+    }
+
+    // forgets polls that were started but will not complete, e.g. after they were cancelled
+    public void cancelPolls() {
+        for (Schedule schedule : schedules.values())
+            schedule.polling = false;
+    }
+
+    /**
+     * Schedules the next poll of tag after one completed.
+     *
+     * @param foundNew true if the poll found new results, false if it found
+     * none or failed
+     */
+    public void polled(String tag, long now, boolean foundNew) {
+        Schedule schedule = schedules.get(tag);
+        if (schedule == null)
+            return; // removed while polling
+
+        schedule.interval = foundNew ? minInterval :
+                Math.min(schedule.interval * 2, maxInterval);
+        schedule.due = now + schedule.interval;
+        schedule.polling = false;
+    }
+
+    // time of the next poll of tag, or -1 if it is not scheduled
+    public long getDue(String tag) {
+        Schedule schedule = schedules.get(tag);
+        return schedule != null ? schedule.due : -1;
+    }
+
+    // current interval of tag in ms, or -1 if it is not scheduled
+    public long getInterval(String tag) {
+        Schedule schedule = schedules.get(tag);
+        return schedule != null ? schedule.interval : -1;
+    }
+
+    // time of the earliest pending poll, or Long.MAX_VALUE if there is none
+    public long nextDue() {
+        long next = Long.MAX_VALUE;
+        for (Schedule schedule : schedules.values()) {
+            if (!schedule.polling)
+                next = Math.min(next, schedule.due);
+        }
+        return next;
+    }
+}
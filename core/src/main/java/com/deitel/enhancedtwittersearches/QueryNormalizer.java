@@ -0,0 +1,96 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reduces a search query to a canonical key, so queries that Twitter treats
+ * the same get the same key: case is folded, runs of whitespace collapse,
+ * repeated terms are dropped and, because terms are ANDed, they are sorted.
+ * Quoted phrases are kept as single terms. A query using OR is not
+ * reordered, since there the order of the terms matters; it is only folded
+ * and collapsed. The search filters are part of the key.
+ * <pre>
+ * normalize("NASA  mars -rover", 0) -> "0|-rover mars nasa"
+ * normalize("Mars nasa",        0) -> "0|mars nasa"
+ * normalize("\"Red  Planet\" mars", 0) -> "0|\"red planet\" mars"
+ * </pre>
+ */
+public final class QueryNormalizer {
+
+    private static final String OR = "OR";
+
+    private QueryNormalizer() {
+    }
+
+    /**
+     * @param filters SearchUrlBuilder filter flags the query is searched with
+     */
+    public static String normalize(String query, int filters) {
+        List<String> terms = terms(query);
+
+        boolean or = false;
+        for (String term : terms)
+            or |= OR.equals(term);
+
+        StringBuilder key = new StringBuilder(query.length() + 4);
+        key.append(filters).append('|');
+
+        if (!or) {
+            for (int i = 0; i < terms.size(); ++i)
+                terms.set(i, terms.get(i).toLowerCase(Locale.US));
+            Collections.sort(terms);
+        }
+
+        String previous = null;
+        for (String term : terms) {
+            if (!or) {
+                if (term.equals(previous))
+                    continue; // "mars mars" is "mars"
+                previous = term;
+            } else if (!OR.equals(term)) {
+                term = term.toLowerCase(Locale.US);
+            }
+            if (key.charAt(key.length() - 1) != '|')
+                key.append(' ');
+            key.append(term);
+        }
+        return key.toString();
+    }
+
+    // whitespace-separated terms of query; a quoted phrase is one term with
+    // its inner whitespace collapsed
+    static List<String> terms(String query) {
+        ArrayList<String> terms = new ArrayList<String>();
+        StringBuilder term = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < query.length(); ++i) {
+            char c = query.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+                term.append(c);
+            } else if (Character.isWhitespace(c)) {
+                if (quoted) {
+                    if (term.length() > 0 && term.charAt(term.length() - 1) != ' ' &&
+                            term.charAt(term.length() - 1) != '"')
+                        term.append(' ');
+                } else if (term.length() > 0) {
+                    terms.add(term.toString());
+                    term.setLength(0);
+                }
+            } else {
+                term.append(c);
+            }
+        }
+        if (term.length() > 0)
+            terms.add(term.toString());
+
+        // no space before a closing quote
+        for (int i = 0; i < terms.size(); ++i)
+            terms.set(i, terms.get(i).replace(" \"", "\""));
+        return terms;
+    }
+}
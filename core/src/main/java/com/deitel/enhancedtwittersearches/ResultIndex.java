@@ -0,0 +1,333 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * In-memory full-text index over the results fetched for saved searches,
+ * so they can be searched again without going to the network.
+ * <p/>
+ * Every result added becomes a document numbered in insertion order. Each
+ * term maps to a postings list held in a growable int array of (document,
+ * position) pairs; because documents are only ever appended, every list is
+ * sorted and a new document never needs more than an append per term.
+ * <p/>
+ * Queries are whitespace-separated terms that must all match. Terms joined
+ * by an upper-case {@code OR} match if either does, and words in double
+ * quotes must appear next to each other, in order:
+ * <pre>
+ * android "play store" OR appstore
+ * </pre>
+ * Terms are the lower-cased runs of letters and digits of the text, so
+ * {@code #Android} and {@code android!} are both the term {@code android}.
+ * Not thread safe.
+ */
+public class ResultIndex {
+
+    private static final int[] NO_DOCUMENTS = new int[0];
+
+    // postings list of one term
+    private static class Postings {
+        int[] pairs = new int[4]; // document, position, document, position, ...
+        int size; // ints used in pairs
+        int lastDocument = -1; // last document appended, for counting documents
+        int documents; // documents containing the term
+
+        void add(int document, int position) {
+            if (size + 2 > pairs.length)
+                pairs = Arrays.copyOf(pairs, pairs.length * 2);
+            pairs[size++] = document;
+            pairs[size++] = position;
+
+            if (document != lastDocument) {
+                lastDocument = document;
+                ++documents;
+            }
+        }
+
+        // sorted ids of the documents containing the term
+        int[] documents() {
+            int[] result = new int[documents];
+            int count = 0;
+            for (int i = 0; i < size; i += 2) {
+                if (count == 0 || result[count - 1] != pairs[i])
+                    result[count++] = pairs[i];
+            }
+            return result;
+        }
+
+        // true if the term occurs at position in document
+        boolean contains(int document, int position) {
+            int low = 0;
+            int high = size / 2 - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int d = pairs[middle * 2];
+                int p = pairs[middle * 2 + 1];
+                if (d < document || (d == document && p < position))
+                    low = middle + 1;
+                else if (d > document || p > position)
+                    high = middle - 1;
+                else
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    private final HashMap<String, Postings> terms = new HashMap<String, Postings>();
+    private final ArrayList<SearchResult> results = new ArrayList<SearchResult>(); // by document
+    private final ArrayList<String> tags = new ArrayList<String>(); // saved search of each document
+
+    // result ids already indexed, in an open-addressing table; 0 marks a free slot
+    private long[] resultIds = new long[64];
+    private int postingCount; // (document, position) pairs in all postings lists
+
+    /**
+     * Adds result, found by the saved search tag, unless a result with the
+     * same id was added before.
+     *
+     * @return the new document's id, or -1 if the result was already indexed
+     */
+    public int add(String tag, SearchResult result) {
+        if (!addResultId(result.getId()))
+            return -1;
+
+        int document = results.size();
+        results.add(result);
+        tags.add(tag);
+
+        List<String> words = tokenize(result.getText());
+        for (int position = 0; position < words.size(); ++position) {
+            String word = words.get(position);
+            Postings postings = terms.get(word);
+            if (postings == null) {
+                postings = new Postings();
+                terms.put(word, postings);
+            }
+            postings.add(document, position);
+            ++postingCount;
+        }
+        return document;
+    }
+
+    // number of documents indexed
+    public int size() {
+        return results.size();
+    }
+
+    public int getTermCount() {
+        return terms.size();
+    }
+
+    public int getPostingCount() {
+        return postingCount;
+    }
+
+    public SearchResult getResult(int document) {
+        return results.get(document);
+    }
+
+    // tag of the saved search that found document
+    public String getTag(int document) {
+        return tags.get(document);
+    }
+
+    public void clear() {
+        terms.clear();
+        results.clear();
+        tags.clear();
+        resultIds = new long[64];
+        postingCount = 0;
+    }
+
+    /**
+     * Evaluates query (see the class comment).
+     *
+     * @return the ids of the matching documents in ascending order
+     */
+    public int[] search(String query) {
+        int[] matches = null; // null until the first group; AND of all groups
+        int[] group = null; // OR of the items of the current group
+        boolean or = false; // the previous token was OR
+
+        int i = 0;
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                ++i;
+                continue;
+            }
+
+            // next item: a quoted phrase or a single word
+            int[] item;
+            if (c == '"') {
+                int end = query.indexOf('"', i + 1);
+                if (end < 0)
+                    end = query.length();
+                item = searchPhrase(tokenize(query.substring(i + 1, end)));
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < query.length() && !Character.isWhitespace(query.charAt(end)) &&
+                        query.charAt(end) != '"')
+                    ++end;
+                String word = query.substring(i, end);
+                i = end;
+
+                if ("OR".equals(word)) {
+                    or = group != null;
+                    continue;
+                }
+                item = searchPhrase(tokenize(word)); // "e-mail" is the phrase "e mail"
+            }
+
+            if (or) {
+                group = union(group, item);
+            } else {
+                if (group != null)
+                    matches = matches != null ? intersect(matches, group) : group;
+                group = item;
+            }
+            or = false;
+        }
+
+        if (group != null)
+            matches = matches != null ? intersect(matches, group) : group;
+        return matches != null ? matches : NO_DOCUMENTS;
+    }
+
+    /**
+     * Evaluates query and returns the matching results, newest first.
+     */
+    public List<SearchResult> searchResults(String query) {
+        int[] documents = search(query);
+        ArrayList<SearchResult> matches = new ArrayList<SearchResult>(documents.length);
+        for (int i = documents.length - 1; i >= 0; --i)
+            matches.add(results.get(documents[i]));
+        return matches;
+    }
+
+    // documents containing words at consecutive positions
+    private int[] searchPhrase(List<String> words) {
+        if (words.isEmpty())
+            return NO_DOCUMENTS;
+
+        Postings[] postings = new Postings[words.size()];
+        for (int i = 0; i < postings.length; ++i) {
+            postings[i] = terms.get(words.get(i));
+            if (postings[i] == null)
+                return NO_DOCUMENTS;
+        }
+        if (postings.length == 1)
+            return postings[0].documents();
+
+        // check every occurrence of the first word for the rest of the phrase
+        Postings first = postings[0];
+        int[] result = new int[first.documents];
+        int count = 0;
+        for (int i = 0; i < first.size; i += 2) {
+            int document = first.pairs[i];
+            if (count > 0 && result[count - 1] == document)
+                continue; // already matched
+
+            int position = first.pairs[i + 1];
+            boolean match = true;
+            for (int w = 1; w < postings.length && match; ++w)
+                match = postings[w].contains(document, position + w);
+            if (match)
+                result[count++] = document;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    // sorted documents in both a and b
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0, j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                ++i;
+            } else if (a[i] > b[j]) {
+                ++j;
+            } else {
+                result[count++] = a[i];
+                ++i;
+                ++j;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    // sorted documents in a or b; a may be null
+    private static int[] union(int[] a, int[] b) {
+        if (a == null)
+            return b;
+
+        int[] result = new int[a.length + b.length];
+        int count = 0;
+        int i = 0, j = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j]))
+                result[count++] = a[i++];
+            else if (i == a.length || b[j] < a[i])
+                result[count++] = b[j++];
+            else {
+                result[count++] = a[i++];
+                ++j;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    // lower-cased runs of letters and digits in text
+    static List<String> tokenize(String text) {
+        ArrayList<String> words = new ArrayList<String>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); ++i) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.US));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    // records id; false if it was recorded before
+    private boolean addResultId(long id) {
+        if (id == 0)
+            return true; // results without an id are never duplicates
+
+        // keep the table at most half full
+        if (results.size() * 2 >= resultIds.length) {
+            long[] old = resultIds;
+            resultIds = new long[old.length * 2];
+            for (long oldId : old) {
+                if (oldId != 0)
+                    resultIds[slot(resultIds, oldId)] = oldId;
+            }
+        }
+
+        int slot = slot(resultIds, id);
+        if (resultIds[slot] == id)
+            return false;
+        resultIds[slot] = id;
+        return true;
+    }
+
+    // slot holding id, or the free slot where it belongs
+    private static int slot(long[] table, long id) {
+        int mask = table.length - 1;
+        int slot = (int) (id ^ (id >>> 32)) * 0x9E3779B9 & mask;
+        while (table[slot] != 0 && table[slot] != id)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+}
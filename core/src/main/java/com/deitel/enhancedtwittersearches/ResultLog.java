@@ -0,0 +1,597 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the search results fetched for saved searches, keyed
+ * by tag. The log is a series of fixed-size segment files that are memory
+ * mapped, so appends are plain memory writes and reads hand out slices of
+ * the mapped segments without copying.
+ * <p/>
+ * Each segment starts with a magic number and version, followed by entries:
+ * <pre>
+ * int length  bytes after the checksum
+ * int crc     CRC32 of those bytes
+ * byte type   RESULT or EVICT
+ * short       length of the tag in UTF-8
+ * tag         UTF-8
+ * payload     the rest; an encoded {@link SearchResult} for RESULT entries
+ * </pre>
+ * A zero length marks the end of the entries, which is what a new segment
+ * is filled with. On open every segment is scanned to rebuild the in-memory
+ * index of entry positions per tag; a torn or corrupt entry at the tail of
+ * the last segment, left by a crash during an append, ends the scan and is
+ * wiped so appends continue in front of it.
+ * <p/>
+ * {@link #evict} drops a tag by appending an EVICT entry. Space is
+ * reclaimed by compaction in the background, which copies the live entries
+ * of the oldest segment to the head of the log and deletes the segment.
+ * Compaction can change the order of a tag's entries; results carry their
+ * own ids, which give their real order. Once the log holds more than its
+ * maximum number of segments, the oldest segment is dropped with all of its
+ * entries, as befits a cache.
+ */
+public class ResultLog {
+
+    private static final int MAGIC = 0x54575252; // "TWRR"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8; // magic and version
+    private static final int ENTRY_HEADER_SIZE = 8; // length and crc
+
+    private static final byte RESULT = 1;
+    private static final byte EVICT = 2;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    // compact the oldest segment once this fraction of it is dead
+    private static final double COMPACTION_THRESHOLD = 0.5;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // receives entries read from the log
+    public interface ResultVisitor {
+        void visit(String tag, SearchResult result);
+    }
+
+    // one mapped segment file
+    private static class Segment {
+        final int number; // increases with every new segment
+        final File file;
+        final MappedByteBuffer buffer;
+        int end; // offset of the end marker
+        int liveBytes; // bytes of entries still referenced by the index
+
+        Segment(int number, File file, MappedByteBuffer buffer) {
+            this.number = number;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    // positions of a tag's entries, (segment number << 32 | offset), in log order
+    private static class Positions {
+        long[] positions = new long[4];
+        int size;
+
+        void add(long position) {
+            if (size == positions.length)
+                positions = Arrays.copyOf(positions, size * 2);
+            positions[size++] = position;
+        }
+
+        int indexOf(long position) {
+            return Arrays.binarySearch(positions, 0, size, position);
+        }
+
+        void remove(int index) {
+            System.arraycopy(positions, index + 1, positions, index, size - index - 1);
+            --size;
+        }
+    }
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    private final ArrayList<Segment> segments = new ArrayList<Segment>(); // oldest first
+    private final HashMap<String, Positions> index = new HashMap<String, Positions>();
+    private final CRC32 crc = new CRC32();
+    private boolean opened;
+    private int truncatedCount; // corrupt entries found on open
+
+    // compacts segments in the background, one at a time
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ResultLog compactor");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+    private boolean compactionScheduled;
+
+    /**
+     * @param directory directory holding the segment files
+     * @param segmentSize size of each segment file; larger entries are rejected
+     * @param maxSegments segments kept before the oldest entries are dropped
+     */
+    public ResultLog(File directory, int segmentSize, int maxSegments) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = Math.max(maxSegments, 2);
+    }
+
+    /**
+     * Maps the existing segments and rebuilds the index, if that has not
+     * happened yet. Does disk I/O.
+     */
+    public synchronized void open() throws IOException {
+        if (opened)
+            return;
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create " + directory);
+
+        File[] files = directory.listFiles();
+        ArrayList<Integer> numbers = new ArrayList<Integer>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        numbers.add(Integer.parseInt(
+                                name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        // not a segment
+                    }
+                }
+            }
+        }
+        Collections.sort(numbers);
+
+        for (int i = 0; i < numbers.size(); ++i) {
+            Segment segment = mapSegment(numbers.get(i));
+            if (segment == null)
+                continue; // not a segment of this log; removed by mapSegment
+            segments.add(segment);
+            scan(segment, i == numbers.size() - 1);
+        }
+
+        opened = true;
+    }
+
+    /**
+     * Appends result under tag.
+     */
+    public synchronized void append(String tag, SearchResult result) throws IOException {
+        open();
+        appendEntry(RESULT, tag, encode(result));
+    }
+
+    /**
+     * Drops every entry of tag. The space is reclaimed by compaction.
+     */
+    public synchronized void evict(String tag) throws IOException {
+        open();
+        Positions positions = index.remove(tag);
+        if (positions == null)
+            return;
+
+        for (int i = 0; i < positions.size; ++i) {
+            Segment segment = getSegment((int) (positions.positions[i] >>> 32));
+            if (segment != null)
+                segment.liveBytes -= entrySize(segment, (int) positions.positions[i]);
+        }
+        appendEntry(EVICT, tag, new byte[0]);
+        scheduleCompaction();
+    }
+
+    // number of entries held for tag
+    public synchronized int count(String tag) throws IOException {
+        open();
+        Positions positions = index.get(tag);
+        return positions != null ? positions.size : 0;
+    }
+
+    public synchronized Set<String> getTags() throws IOException {
+        open();
+        return new HashSet<String>(index.keySet());
+    }
+
+    /**
+     * Passes every result of tag to visitor, in log order.
+     *
+     * @return the number of results read
+     */
+    public synchronized int read(String tag, ResultVisitor visitor) throws IOException {
+        open();
+        Positions positions = index.get(tag);
+        if (positions == null)
+            return 0;
+
+        for (int i = 0; i < positions.size; ++i) {
+            long position = positions.positions[i];
+            visitor.visit(tag, decode(payload(getSegment((int) (position >>> 32)), (int) position)));
+        }
+        return positions.size;
+    }
+
+    /**
+     * Passes every live result to visitor, in log order.
+     *
+     * @return the number of results read
+     */
+    public synchronized int readAll(ResultVisitor visitor) throws IOException {
+        open();
+        int count = 0;
+        for (Segment segment : segments) {
+            int offset = HEADER_SIZE;
+            while (offset < segment.end) {
+                int size = entrySize(segment, offset);
+                if (segment.buffer.get(offset + ENTRY_HEADER_SIZE) == RESULT) {
+                    String tag = tag(segment, offset);
+                    Positions positions = index.get(tag);
+                    if (positions != null && positions.indexOf(position(segment, offset)) >= 0) {
+                        visitor.visit(tag, decode(payload(segment, offset)));
+                        ++count;
+                    }
+                }
+                offset += size;
+            }
+        }
+        return count;
+    }
+
+    // writes the mapped segments to disk
+    public synchronized void flush() {
+        for (Segment segment : segments)
+            segment.buffer.force();
+    }
+
+    // writes the log to disk and stops compaction; the log cannot be used afterwards
+    public synchronized void close() {
+        compactor.shutdownNow();
+        flush();
+        segments.clear();
+        index.clear();
+        opened = false;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    // number of corrupt entries found and dropped when the log was opened
+    public synchronized int getTruncatedCount() {
+        return truncatedCount;
+    }
+
+    /**
+     * Drops the oldest segment if there are too many, or copies its live
+     * entries to the head of the log and deletes it if enough of it is dead.
+     *
+     * @return true if a segment was removed
+     */
+    public synchronized boolean compact() throws IOException {
+        open();
+        if (segments.size() < 2)
+            return false; // never compact the segment being appended to
+
+        Segment oldest = segments.get(0);
+        if (segments.size() > maxSegments) {
+            drop(oldest);
+            return true;
+        }
+
+        int usedBytes = oldest.end - HEADER_SIZE;
+        if (usedBytes > 0 && oldest.liveBytes > usedBytes * (1 - COMPACTION_THRESHOLD))
+            return false;
+
+        // EVICT entries can be dropped: no older entry is left for them to cancel.
+        // A crash before the segment is deleted leaves the moved results twice.
+        int offset = HEADER_SIZE;
+        while (offset < oldest.end) {
+            int size = entrySize(oldest, offset);
+            if (oldest.buffer.get(offset + ENTRY_HEADER_SIZE) == RESULT) {
+                String tag = tag(oldest, offset);
+                Positions positions = index.get(tag);
+                int i = positions != null ? positions.indexOf(position(oldest, offset)) : -1;
+                if (i >= 0) {
+                    // moving the entry; its bytes are copied out of the mapped segment
+                    ByteBuffer payload = payload(oldest, offset);
+                    byte[] bytes = new byte[payload.remaining()];
+                    payload.get(bytes);
+
+                    positions.remove(i);
+                    appendEntry(RESULT, tag, bytes);
+                }
+            }
+            offset += size;
+        }
+
+        segments.remove(0);
+        if (!oldest.file.delete())
+            throw new IOException("Unable to delete " + oldest.file);
+        return true;
+    }
+
+    // removes the oldest segment and every entry in it
+    private void drop(Segment oldest) throws IOException {
+        int offset = HEADER_SIZE;
+        while (offset < oldest.end) {
+            if (oldest.buffer.get(offset + ENTRY_HEADER_SIZE) == RESULT) {
+                String tag = tag(oldest, offset);
+                Positions positions = index.get(tag);
+                int i = positions != null ? positions.indexOf(position(oldest, offset)) : -1;
+                if (i >= 0) {
+                    positions.remove(i);
+                    if (positions.size == 0)
+                        index.remove(tag);
+                }
+            }
+            offset += entrySize(oldest, offset);
+        }
+
+        segments.remove(0);
+        if (!oldest.file.delete())
+            throw new IOException("Unable to delete " + oldest.file);
+    }
+
+    // runs compact in the background until there is nothing left to compact
+    private void scheduleCompaction() {
+        if (compactionScheduled)
+            return;
+        compactionScheduled = true;
+
+        compactor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        synchronized (ResultLog.this) {
+                            if (!compact()) {
+                                compactionScheduled = false;
+                                return;
+                            }
+                        }
+                        Thread.yield(); // let appends and reads in between segments
+                    }
+                } catch (IOException e) {
+                    synchronized (ResultLog.this) {
+                        compactionScheduled = false;
+                    }
+                }
+            }
+        });
+    }
+
+    private void appendEntry(byte type, String tag, byte[] payload) throws IOException {
+        byte[] tagBytes = tag.getBytes(UTF_8);
+        if (tagBytes.length > Short.MAX_VALUE)
+            throw new IOException("Tag too long");
+
+        int length = 1 + 2 + tagBytes.length + payload.length;
+        int size = ENTRY_HEADER_SIZE + length;
+        if (HEADER_SIZE + size + ENTRY_HEADER_SIZE > segmentSize)
+            throw new IOException("Entry of " + size + " bytes does not fit a segment");
+
+        // leave room for the end marker after the entry
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.end + size + ENTRY_HEADER_SIZE > segmentSize) {
+            segment = newSegment();
+            if (segments.size() > maxSegments)
+                scheduleCompaction();
+        }
+
+        ByteBuffer buffer = segment.buffer;
+        int offset = segment.end;
+
+        // write the body first and the length last, so a crash before the
+        // length is written leaves the previous end marker in place
+        buffer.put(offset + ENTRY_HEADER_SIZE, type);
+        buffer.putShort(offset + ENTRY_HEADER_SIZE + 1, (short) tagBytes.length);
+        for (int i = 0; i < tagBytes.length; ++i)
+            buffer.put(offset + ENTRY_HEADER_SIZE + 3 + i, tagBytes[i]);
+        int payloadOffset = offset + ENTRY_HEADER_SIZE + 3 + tagBytes.length;
+        for (int i = 0; i < payload.length; ++i)
+            buffer.put(payloadOffset + i, payload[i]);
+
+        crc.reset();
+        crc.update(type);
+        crc.update((tagBytes.length >>> 8) & 0xff);
+        crc.update(tagBytes.length & 0xff);
+        crc.update(tagBytes, 0, tagBytes.length);
+        crc.update(payload, 0, payload.length);
+        buffer.putInt(offset + 4, (int) crc.getValue());
+        buffer.putInt(offset + size, 0); // end marker
+        buffer.putInt(offset, length);
+
+        segment.end = offset + size;
+        if (type == RESULT) {
+            addPosition(tag, position(segment, offset));
+            segment.liveBytes += size;
+        }
+    }
+
+    private Segment newSegment() throws IOException {
+        int number = segments.isEmpty() ? 1 : segments.get(segments.size() - 1).number + 1;
+        Segment segment = mapSegment(number);
+        segments.add(segment);
+        return segment;
+    }
+
+    // maps segment number, writing the header if it is new; null if it is not a segment
+    private Segment mapSegment(int number) throws IOException {
+        File file = new File(directory, String.format("%08d", number) + SEGMENT_SUFFIX);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        MappedByteBuffer buffer;
+        try {
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } finally {
+            raf.close(); // the mapping stays valid
+        }
+
+        int magic = buffer.getInt(0);
+        if (magic == 0) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+        } else if (magic != MAGIC || buffer.getInt(4) != VERSION) {
+            file.delete();
+            return null;
+        }
+
+        Segment segment = new Segment(number, file, buffer);
+        segment.end = HEADER_SIZE;
+        return segment;
+    }
+
+    // reads the entries of segment into the index
+    private void scan(Segment segment, boolean last) {
+        ByteBuffer buffer = segment.buffer;
+        int offset = HEADER_SIZE;
+        while (offset + ENTRY_HEADER_SIZE <= segmentSize) {
+            int length = buffer.getInt(offset);
+            if (length == 0)
+                break; // end marker
+
+            // compared without adding to length, which a corrupt entry can make overflow
+            if (length < 3 || length > segmentSize - offset - 2 * ENTRY_HEADER_SIZE ||
+                    !checksumMatches(segment, offset, length)) {
+                ++truncatedCount;
+                if (last) {
+                    // torn append: wipe it so the next append starts clean
+                    for (int i = offset; i < segmentSize; ++i)
+                        buffer.put(i, (byte) 0);
+                }
+                break;
+            }
+
+            String tag = tag(segment, offset);
+            if (buffer.get(offset + ENTRY_HEADER_SIZE) == RESULT) {
+                addPosition(tag, position(segment, offset));
+                segment.liveBytes += ENTRY_HEADER_SIZE + length;
+            } else {
+                Positions positions = index.remove(tag);
+                if (positions != null) {
+                    for (int i = 0; i < positions.size; ++i) {
+                        Segment owner = getSegment((int) (positions.positions[i] >>> 32));
+                        owner.liveBytes -= entrySize(owner, (int) positions.positions[i]);
+                    }
+                }
+            }
+            offset += ENTRY_HEADER_SIZE + length;
+        }
+        segment.end = offset;
+    }
+
+    private boolean checksumMatches(Segment segment, int offset, int length) {
+        ByteBuffer entry = segment.buffer.duplicate();
+        entry.position(offset + ENTRY_HEADER_SIZE);
+        entry.limit(offset + ENTRY_HEADER_SIZE + length);
+
+        crc.reset();
+        byte[] chunk = new byte[Math.min(length, 4096)];
+        while (entry.hasRemaining()) {
+            int count = Math.min(chunk.length, entry.remaining());
+            entry.get(chunk, 0, count);
+            crc.update(chunk, 0, count);
+        }
+        return (int) crc.getValue() == segment.buffer.getInt(offset + 4);
+    }
+
+    private void addPosition(String tag, long position) {
+        Positions positions = index.get(tag);
+        if (positions == null) {
+            positions = new Positions();
+            index.put(tag, positions);
+        }
+        positions.add(position);
+    }
+
+    private Segment getSegment(int number) {
+        for (Segment segment : segments) {
+            if (segment.number == number)
+                return segment;
+        }
+        return null;
+    }
+
+    private static long position(Segment segment, int offset) {
+        return ((long) segment.number << 32) | offset;
+    }
+
+    private static int entrySize(Segment segment, int offset) {
+        return ENTRY_HEADER_SIZE + segment.buffer.getInt(offset);
+    }
+
+    private static String tag(Segment segment, int offset) {
+        int length = segment.buffer.getShort(offset + ENTRY_HEADER_SIZE + 1);
+        byte[] bytes = new byte[length];
+        ByteBuffer tag = segment.buffer.duplicate();
+        tag.position(offset + ENTRY_HEADER_SIZE + 3);
+        tag.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    // read-only view of the payload of an entry, sharing the mapped memory
+    private static ByteBuffer payload(Segment segment, int offset) {
+        ByteBuffer buffer = segment.buffer;
+        int tagLength = buffer.getShort(offset + ENTRY_HEADER_SIZE + 1);
+        ByteBuffer payload = buffer.asReadOnlyBuffer();
+        payload.position(offset + ENTRY_HEADER_SIZE + 3 + tagLength);
+        payload.limit(offset + ENTRY_HEADER_SIZE + buffer.getInt(offset));
+        return payload.slice();
+    }
+
+    // payload of a RESULT entry: id, then user, text and time as length-prefixed UTF-8,
+    // followed by the image URL if the result has one
+    static byte[] encode(SearchResult result) {
+        byte[] user = result.getUser().getBytes(UTF_8);
+        byte[] text = result.getText().getBytes(UTF_8);
+        byte[] time = result.getTime().getBytes(UTF_8);
+        byte[] image = result.getImageUrl() != null ?
+                result.getImageUrl().getBytes(UTF_8) : null;
+
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 12 + user.length + text.length + time.length +
+                (image != null ? 4 + image.length : 0));
+        buffer.putLong(result.getId());
+        buffer.putInt(user.length).put(user);
+        buffer.putInt(text.length).put(text);
+        buffer.putInt(time.length).put(time);
+        if (image != null)
+            buffer.putInt(image.length).put(image);
+        return buffer.array();
+    }
+
+    static SearchResult decode(ByteBuffer payload) {
+        long id = payload.getLong();
+        String user = readString(payload);
+        String text = readString(payload);
+        String time = readString(payload);
+        String imageUrl = payload.hasRemaining() ? readString(payload) : null;
+        return new SearchResult(id, user, text, time, imageUrl);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
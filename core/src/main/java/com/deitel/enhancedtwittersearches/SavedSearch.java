@@ -0,0 +1,168 @@
+package com.deitel.enhancedtwittersearches;
+
+/**
+ * A single tagged search as stored by {@link SavedSearchRepository}.
+ * <p/>
+ * A search keeps the filters it is run with (a {@link SearchUrlBuilder}
+ * bitmask) and the search URL built from the query and filters, so opening
+ * or sharing it does not build the URL again. The URL is cleared whenever
+ * the query or the filters change.
+ * <p/>
+ * Besides the query, a search remembers how far its results have been
+ * seen: the id of the newest result the user has looked at, and the id of
+ * the newest result found by polling. Result ids increase with time, so
+ * polling only needs results newer than the newest one already found.
+ * It also keeps its poll schedule, the wall clock time of its next poll
+ * and the interval it is polled at, so backoff survives a restart.
+ */
+public class SavedSearch {
+
+    private final String tag; // user supplied tag, unique within the store
+    private String query; // Twitter search query for the tag
+    private int filters; // SearchUrlBuilder filter flags the search is run with
+    private String url; // search URL for query and filters, or null if not built yet
+
+    private long lastSeenId; // newest result id the user has seen, 0 if none
+    private long newestId; // newest result id found by polling, 0 if none
+    private int unreadCount; // results found by polling that are newer than lastSeenId
+
+    private int useCount; // decayed number of times the search was opened, see TagRanking
+
+    private long nextPollTime; // System.currentTimeMillis of the next poll, 0 if not scheduled
+    private long pollInterval; // ms between polls, see PollScheduler; 0 if not scheduled
+
+    public SavedSearch(String tag, String query) {
+        this.tag = tag;
+        this.query = query;
+    }
+
+    // copy constructor used when handing snapshots to the writer thread
+    public SavedSearch(SavedSearch other) {
+        this(other.tag, other.query);
+        filters = other.filters;
+        url = other.url;
+        lastSeenId = other.lastSeenId;
+        newestId = other.newestId;
+        unreadCount = other.unreadCount;
+        useCount = other.useCount;
+        nextPollTime = other.nextPollTime;
+        pollInterval = other.pollInterval;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    // replaces the query; the high-water marks and schedule belong to the old query and are reset
+    public void setQuery(String query) {
+        if (!query.equals(this.query)) {
+            setMarks(0, 0, 0);
+            setPollSchedule(0, 0);
+            url = null;
+        }
+        this.query = query;
+    }
+
+    public int getFilters() {
+        return filters;
+    }
+
+    // replaces the filters; like the query, they decide which results are found
+    public void setFilters(int filters) {
+        if (filters != this.filters) {
+            setMarks(0, 0, 0);
+            setPollSchedule(0, 0);
+            url = null;
+        }
+        this.filters = filters;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public long getLastSeenId() {
+        return lastSeenId;
+    }
+
+    public long getNewestId() {
+        return newestId;
+    }
+
+    public int getUnreadCount() {
+        return unreadCount;
+    }
+
+    public void setMarks(long lastSeenId, long newestId, int unreadCount) {
+        this.lastSeenId = lastSeenId;
+        this.newestId = newestId;
+        this.unreadCount = unreadCount;
+    }
+
+    public int getUseCount() {
+        return useCount;
+    }
+
+    public void setUseCount(int useCount) {
+        this.useCount = useCount;
+    }
+
+    public long getNextPollTime() {
+        return nextPollTime;
+    }
+
+    public long getPollInterval() {
+        return pollInterval;
+    }
+
+    public void setPollSchedule(long nextPollTime, long pollInterval) {
+        this.nextPollTime = nextPollTime;
+        this.pollInterval = pollInterval;
+    }
+
+    // query that only matches results newer than the newest one found so far
+    public String getPollQuery() {
+        return newestId > 0 ? query + " since_id:" + newestId : query;
+    }
+
+    /**
+     * Records the results of a poll for results newer than {@link #getNewestId()}.
+     * The first poll of a search only sets the mark, so existing results
+     * are not reported as unread.
+     *
+     * @return the number of results that were new to this search
+     */
+    public int addPolledResults(long[] resultIds) {
+        boolean first = newestId == 0 && lastSeenId == 0;
+
+        int added = 0;
+        long newest = newestId;
+        for (long id : resultIds) {
+            if (id > newestId) {
+                ++added;
+                newest = Math.max(newest, id);
+            }
+        }
+        newestId = newest;
+
+        if (first)
+            return 0;
+        unreadCount += added;
+        return added;
+    }
+
+    // marks every result found so far as seen
+    public void markSeen() {
+        lastSeenId = Math.max(lastSeenId, newestId);
+        newestId = lastSeenId;
+        unreadCount = 0;
+    }
+}
@@ -0,0 +1,200 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Binary format of the saved searches file. The file starts with a magic
+ * number and a format version, followed by one record per search and a
+ * terminating zero byte, so it can be written and read as a stream without
+ * knowing the number of searches up front.
+ * <p/>
+ * Version 2 adds the polling state of each search (last seen id, newest
+ * id and unread count) after the query. Version 3 adds the decayed use
+ * count that ranks the searches. Older versions are still read.
+ * <p/>
+ * From version 4 a record is a list of tagged fields, each a field id byte
+ * and an unsigned short length followed by that many bytes, ending with a
+ * zero field id. Fields holding their default value are left out, and
+ * readers skip fields they do not know, so later versions can add fields
+ * without breaking older readers of the same format. The poll schedule
+ * (next poll time and interval) was added to version 4 records that way.
+ */
+public final class SavedSearchCodec {
+
+    public static final int MAGIC = 0x54575353; // "TWSS"
+    public static final int VERSION = 4;
+
+    private static final int RECORD = 1; // marks a following search record
+    private static final int END = 0; // marks the end of the stream
+
+    // field ids of version 4 records
+    private static final int FIELD_END = 0; // marks the end of the record
+    private static final int FIELD_TAG = 1; // UTF-8
+    private static final int FIELD_QUERY = 2; // UTF-8
+    private static final int FIELD_FILTERS = 3; // int
+    private static final int FIELD_URL = 4; // UTF-8
+    private static final int FIELD_LAST_SEEN_ID = 5; // long
+    private static final int FIELD_NEWEST_ID = 6; // long
+    private static final int FIELD_UNREAD_COUNT = 7; // int
+    private static final int FIELD_USE_COUNT = 8; // int
+    private static final int FIELD_NEXT_POLL_TIME = 9; // long
+    private static final int FIELD_POLL_INTERVAL = 10; // long
+
+    private static final int MAX_FIELD_LENGTH = 0xFFFF;
+
+    private SavedSearchCodec() {
+    }
+
+    public static void writeHeader(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    public static void writeSearch(DataOutput out, SavedSearch search) throws IOException {
+        out.writeByte(RECORD);
+        writeString(out, FIELD_TAG, search.getTag());
+        writeString(out, FIELD_QUERY, search.getQuery());
+        writeInt(out, FIELD_FILTERS, search.getFilters());
+        if (search.getUrl() != null)
+            writeString(out, FIELD_URL, search.getUrl());
+        writeLong(out, FIELD_LAST_SEEN_ID, search.getLastSeenId());
+        writeLong(out, FIELD_NEWEST_ID, search.getNewestId());
+        writeInt(out, FIELD_UNREAD_COUNT, search.getUnreadCount());
+        writeInt(out, FIELD_USE_COUNT, search.getUseCount());
+        writeLong(out, FIELD_NEXT_POLL_TIME, search.getNextPollTime());
+        writeLong(out, FIELD_POLL_INTERVAL, search.getPollInterval());
+        out.writeByte(FIELD_END);
+    }
+
+    public static void writeEnd(DataOutput out) throws IOException {
+        out.writeByte(END);
+    }
+
+    /**
+     * Reads and validates the header.
+     *
+     * @return the format version of the stream
+     */
+    public static int readHeader(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a saved searches file");
+
+        // records of versions after 4 are read like 4, skipping the new fields
+        int version = in.readInt();
+        if (version < 1)
+            throw new IOException("Unsupported saved searches version " + version);
+        return version;
+    }
+
+    // reads the next search, or returns null at the end of the stream
+    public static SavedSearch readSearch(DataInput in, int version) throws IOException {
+        if (in.readByte() == END)
+            return null;
+        if (version >= 4)
+            return readFields(in);
+
+        String tag = in.readUTF();
+        String query = in.readUTF();
+        SavedSearch search = new SavedSearch(tag, query);
+        if (version >= 2)
+            search.setMarks(in.readLong(), in.readLong(), in.readInt());
+        if (version >= 3)
+            search.setUseCount(in.readInt());
+        return search;
+    }
+
+    private static SavedSearch readFields(DataInput in) throws IOException {
+        String tag = null;
+        String query = null;
+        int filters = 0;
+        String url = null;
+        long lastSeenId = 0;
+        long newestId = 0;
+        int unreadCount = 0;
+        int useCount = 0;
+        long nextPollTime = 0;
+        long pollInterval = 0;
+
+        int field;
+        while ((field = in.readUnsignedByte()) != FIELD_END) {
+            int length = in.readUnsignedShort();
+            switch (field) {
+                case FIELD_TAG:
+                    tag = readString(in, length);
+                    break;
+                case FIELD_QUERY:
+                    query = readString(in, length);
+                    break;
+                case FIELD_FILTERS:
+                    filters = in.readInt();
+                    break;
+                case FIELD_URL:
+                    url = readString(in, length);
+                    break;
+                case FIELD_LAST_SEEN_ID:
+                    lastSeenId = in.readLong();
+                    break;
+                case FIELD_NEWEST_ID:
+                    newestId = in.readLong();
+                    break;
+                case FIELD_UNREAD_COUNT:
+                    unreadCount = in.readInt();
+                    break;
+                case FIELD_USE_COUNT:
+                    useCount = in.readInt();
+                    break;
+                case FIELD_NEXT_POLL_TIME:
+                    nextPollTime = in.readLong();
+                    break;
+                case FIELD_POLL_INTERVAL:
+                    pollInterval = in.readLong();
+                    break;
+                default:
+                    in.readFully(new byte[length]); // written by a later version
+            }
+        }
+        if (tag == null || query == null)
+            throw new IOException("Saved search without tag or query");
+
+        SavedSearch search = new SavedSearch(tag, query);
+        search.setFilters(filters);
+        search.setUrl(url);
+        search.setMarks(lastSeenId, newestId, unreadCount);
+        search.setUseCount(useCount);
+        search.setPollSchedule(nextPollTime, pollInterval);
+        return search;
+    }
+
+    private static void writeString(DataOutput out, int field, String value) throws IOException {
+        byte[] bytes = value.getBytes("UTF-8");
+        if (bytes.length > MAX_FIELD_LENGTH)
+            throw new IOException("Saved search field too long: " + bytes.length + " bytes");
+        out.writeByte(field);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeInt(DataOutput out, int field, int value) throws IOException {
+        if (value != 0) {
+            out.writeByte(field);
+            out.writeShort(4);
+            out.writeInt(value);
+        }
+    }
+
+    private static void writeLong(DataOutput out, int field, long value) throws IOException {
+        if (value != 0) {
+            out.writeByte(field);
+            out.writeShort(8);
+            out.writeLong(value);
+        }
+    }
+
+    private static String readString(DataInput in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
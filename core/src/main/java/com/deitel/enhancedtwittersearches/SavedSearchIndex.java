@@ -0,0 +1,157 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * In-memory index of saved searches: a hash map for lookups by tag plus a
+ * tag list kept in {@link #TAG_ORDER} so that inserts and deletes only need
+ * a binary search instead of a full sort.
+ * <p/>
+ * Not thread safe; {@link SavedSearchRepository} guards all access.
+ */
+public class SavedSearchIndex {
+
+    /**
+     * Case-insensitive tag order. Tags that differ only in case are ordered
+     * case-sensitively so that the order is total and binary search stays exact.
+     */
+    public static final Comparator<String> TAG_ORDER = new Comparator<String>() {
+        @Override
+        public int compare(String lhs, String rhs) {
+            int result = String.CASE_INSENSITIVE_ORDER.compare(lhs, rhs);
+            return result != 0 ? result : lhs.compareTo(rhs);
+        }
+    };
+
+    private final HashMap<String, SavedSearch> searches = new HashMap<String, SavedSearch>();
+    private final ArrayList<String> tags = new ArrayList<String>(); // sorted by TAG_ORDER
+
+    private boolean sorted = true; // false while a bulk append is out of order
+    private int modCount; // incremented on every structural or value change
+
+    public int size() {
+        return tags.size();
+    }
+
+    public int getModCount() {
+        return modCount;
+    }
+
+    // true unless an append broke tag order and finishAppend has not run yet
+    public boolean isSorted() {
+        return sorted;
+    }
+
+    public SavedSearch get(String tag) {
+        return searches.get(tag);
+    }
+
+    public String tagAt(int position) {
+        return tags.get(position);
+    }
+
+    // position of tag in the sorted list, or a negative insertion point
+    public int indexOf(String tag) {
+        return Collections.binarySearch(tags, tag, TAG_ORDER);
+    }
+
+    /**
+     * Stores query under tag.
+     *
+     * @return the position of a newly inserted tag, or -1 if the tag already
+     * existed and only its query was replaced
+     */
+    public int put(String tag, String query) {
+        return put(tag, query, 0);
+    }
+
+    /**
+     * Stores query under tag, to be run with the given {@link SearchUrlBuilder}
+     * filter flags.
+     *
+     * @return the position of a newly inserted tag, or -1 if the tag already
+     * existed and only its query and filters were replaced
+     */
+    public int put(String tag, String query, int filters) {
+        ++modCount;
+
+        SavedSearch search = searches.get(tag);
+        if (search != null) {
+            search.setQuery(query);
+            search.setFilters(filters);
+            return -1;
+        }
+
+        search = new SavedSearch(tag, query);
+        search.setFilters(filters);
+        searches.put(tag, search);
+        int position = -(indexOf(tag) + 1);
+        tags.add(position, tag);
+        return position;
+    }
+
+    /**
+     * Removes tag from the index.
+     *
+     * @return the position the tag occupied, or -1 if it was not present
+     */
+    public int remove(String tag) {
+        if (searches.remove(tag) == null)
+            return -1;
+
+        ++modCount;
+        int position = indexOf(tag);
+        tags.remove(position);
+        return position;
+    }
+
+    /**
+     * Appends a search without keeping the tag list sorted. Used when loading
+     * the backing file, which is already written in tag order, so the final
+     * {@link #finishAppend()} normally has nothing left to sort.
+     */
+    public void append(SavedSearch search) {
+        ++modCount;
+
+        if (searches.put(search.getTag(), search) != null)
+            return; // duplicate tag, the later query wins
+
+        if (sorted && !tags.isEmpty() &&
+                TAG_ORDER.compare(tags.get(tags.size() - 1), search.getTag()) > 0)
+            sorted = false;
+
+        tags.add(search.getTag());
+    }
+
+    // restores sorted order after a series of append calls
+    public void finishAppend() {
+        if (!sorted) {
+            Collections.sort(tags, TAG_ORDER);
+            sorted = true;
+        }
+    }
+
+    public void clear() {
+        ++modCount;
+        searches.clear();
+        tags.clear();
+        sorted = true;
+    }
+
+    // sorted copy of all tags
+    public ArrayList<String> getTags() {
+        return new ArrayList<String>(tags);
+    }
+
+    // copies of all searches in tag order, safe to hand to another thread
+    public List<SavedSearch> snapshot() {
+        ArrayList<SavedSearch> snapshot = new ArrayList<SavedSearch>(tags.size());
+        for (String tag : tags)
+            snapshot.add(new SavedSearch(searches.get(tag)));
+        return snapshot;
+    }
+}
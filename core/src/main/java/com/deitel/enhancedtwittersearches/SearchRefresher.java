@@ -0,0 +1,232 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches and parses the result pages of many saved searches at once. A
+ * fixed number of worker threads share the work, so a refresh of n searches
+ * takes about n / concurrency page loads. A per-host limit below the
+ * concurrency keeps any one server from getting more than a few requests at
+ * a time; a limit of at least the concurrency can never bind, so no
+ * per-host permits are taken at all.
+ * <p/>
+ * Results are reported to a {@link RefreshListener} on the worker threads
+ * as each search completes. A running refresh can be cancelled, after which
+ * the listener is not called again; cancelling disconnects the fetches in
+ * flight, so their worker threads are free again at once rather than after
+ * the read timeout.
+ */
+public class SearchRefresher {
+
+    private static final long KEEP_ALIVE_SECONDS = 30; // idle workers exit after this
+
+    // receives the outcome of each search; called on worker threads
+    public interface RefreshListener {
+        void onRefreshed(String tag, List<SearchResult> results);
+        void onRefreshFailed(String tag, IOException error);
+        void onRefreshFinished();
+    }
+
+    /**
+     * A refresh in progress.
+     */
+    public class Refresh {
+        private final List<Future<?>> futures = new ArrayList<Future<?>>();
+        private final Set<PageFetcher.Call> calls = new HashSet<PageFetcher.Call>(); // in flight
+        private final AtomicInteger remaining;
+        private final RefreshListener listener;
+        private volatile boolean cancelled;
+
+        private Refresh(int count, RefreshListener listener) {
+            remaining = new AtomicInteger(count);
+            this.listener = listener;
+        }
+
+        // stops fetches that have not started, interrupts waiting ones and
+        // aborts the ones in flight
+        public void cancel() {
+            cancelled = true;
+            synchronized (refreshes) {
+                refreshes.remove(this);
+            }
+            synchronized (futures) {
+                for (Future<?> future : futures)
+                    future.cancel(true);
+            }
+            synchronized (calls) {
+                for (PageFetcher.Call call : calls)
+                    call.abort();
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        // number of searches not refreshed yet
+        public int getRemaining() {
+            return remaining.get();
+        }
+
+        private void run(String tag, String url) {
+            if (cancelled)
+                return;
+
+            PageFetcher.Call call = new PageFetcher.Call();
+            synchronized (calls) {
+                calls.add(call);
+                if (cancelled)
+                    call.abort(); // cancel() ran before the call was added
+            }
+            try {
+                List<SearchResult> results = fetch(url, call);
+                if (!cancelled)
+                    listener.onRefreshed(tag, results);
+            } catch (IOException e) {
+                if (!cancelled)
+                    listener.onRefreshFailed(tag, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // cancelled while waiting for the host
+            } finally {
+                synchronized (calls) {
+                    calls.remove(call);
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    synchronized (refreshes) {
+                        refreshes.remove(this);
+                    }
+                    if (!cancelled)
+                        listener.onRefreshFinished();
+                }
+            }
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final int perHostLimit; // 0 when it cannot bind
+    private final PageFetcher fetcher;
+
+    // limits requests per host; guarded by itself
+    private final Map<String, Semaphore> hostPermits = new HashMap<String, Semaphore>();
+    // refreshes not finished or cancelled yet; guarded by itself
+    private final Set<Refresh> refreshes = new HashSet<Refresh>();
+
+    /**
+     * @param concurrency number of searches fetched at the same time
+     * @param perHostLimit number of searches fetched from one host at the same time
+     * @param timeoutMillis connect and read timeout of each fetch
+     */
+    public SearchRefresher(int concurrency, int perHostLimit, int timeoutMillis) {
+        this.perHostLimit = perHostLimit < concurrency ? perHostLimit : 0;
+        fetcher = new PageFetcher(timeoutMillis, 0);
+        executor = new ThreadPoolExecutor(concurrency, concurrency,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Starts fetching every search in urlsByTag.
+     *
+     * @param urlsByTag search URL of each tag to refresh
+     * @return the refresh, which can be cancelled
+     */
+    public Refresh refresh(Map<String, String> urlsByTag, RefreshListener listener) {
+        final Refresh refresh = new Refresh(urlsByTag.size(), listener);
+        if (urlsByTag.isEmpty()) {
+            listener.onRefreshFinished();
+            return refresh;
+        }
+
+        synchronized (refreshes) {
+            refreshes.add(refresh);
+        }
+        synchronized (refresh.futures) {
+            for (Map.Entry<String, String> entry : urlsByTag.entrySet()) {
+                final String tag = entry.getKey();
+                final String url = entry.getValue();
+                refresh.futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        refresh.run(tag, url);
+                    }
+                }));
+            }
+        }
+        return refresh;
+    }
+
+    // cancels every running refresh and stops the worker threads; the
+    // refresher cannot be used afterwards
+    public void shutdown() {
+        List<Refresh> running;
+        synchronized (refreshes) {
+            running = new ArrayList<Refresh>(refreshes);
+        }
+        for (Refresh refresh : running)
+            refresh.cancel();
+        executor.shutdownNow();
+    }
+
+    // fetches and parses url, waiting for a free slot on its host first
+    private List<SearchResult> fetch(String url, PageFetcher.Call call)
+            throws IOException, InterruptedException {
+        if (perHostLimit == 0)
+            return fetchPage(url, call);
+
+        Semaphore permits = getHostPermits(url);
+        permits.acquire();
+        try {
+            return fetchPage(url, call);
+        } finally {
+            permits.release();
+        }
+    }
+
+    // fetches and parses url; aborting call aborts the fetch
+    private List<SearchResult> fetchPage(String url, PageFetcher.Call call) throws IOException {
+        return fetcher.fetch(url, null, null, new PageFetcher.BodyReader<List<SearchResult>>() {
+            @Override
+            public List<SearchResult> read(InputStream body, String encoding)
+                    throws IOException {
+                final List<SearchResult> results = new ArrayList<SearchResult>();
+                new SearchResultParser().parse(new InputStreamReader(body, encoding),
+                        new SearchResultParser.ResultListener() {
+                            @Override
+                            public void onResult(SearchResult result) {
+                                results.add(result);
+                            }
+                        });
+                return results;
+            }
+        }, call);
+    }
+
+    private Semaphore getHostPermits(String url) throws MalformedURLException {
+        String host = new URL(url).getHost().toLowerCase(Locale.US);
+        synchronized (hostPermits) {
+            Semaphore permits = hostPermits.get(host);
+            if (permits == null) {
+                permits = new Semaphore(perHostLimit, true);
+                hostPermits.put(host, permits);
+            }
+            return permits;
+        }
+    }
+}
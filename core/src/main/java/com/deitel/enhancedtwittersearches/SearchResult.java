@@ -0,0 +1,55 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.io.Serializable;
+
+/**
+ * One tweet from a search result page, reduced to what the lite results
+ * list shows.
+ */
+public class SearchResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long id; // status id, increases with time
+    private final String user; // screen name without the '@'
+    private final String text;
+    private final String time; // time as shown by Twitter, e.g. "3h"
+    private final String imageUrl; // photo or video preview attached to the tweet, or null
+
+    public SearchResult(long id, String user, String text, String time) {
+        this(id, user, text, time, null);
+    }
+
+    public SearchResult(long id, String user, String text, String time, String imageUrl) {
+        this.id = id;
+        this.user = user;
+        this.text = text;
+        this.time = time;
+        this.imageUrl = imageUrl;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String getTime() {
+        return time;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    // path of the tweet's own page on the search host
+    public String getStatusPath() {
+        return "/" + user + "/status/" + id;
+    }
+}
@@ -0,0 +1,403 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * Extracts {@link SearchResult}s from a mobile Twitter search page while it
+ * is being read. The HTML is scanned tag by tag through a fixed buffer and
+ * no document tree is built: only the elements that carry a tweet's status
+ * link, text, time and attached image are tracked, and each tweet is handed
+ * to the listener as soon as its element closes.
+ * <p/>
+ * The markup it understands is the one mobile.twitter.com serves to simple
+ * browsers:
+ * <pre>
+ * &lt;table class="tweet" href="/user/status/123"&gt;
+ *   ... &lt;td class="timestamp"&gt;&lt;a&gt;3h&lt;/a&gt;&lt;/td&gt;
+ *   ... &lt;div class="tweet-text" data-id="123"&gt;text&lt;/div&gt;
+ *   ... &lt;div class="media"&gt;&lt;img src="https://pbs.twimg.com/..."&gt;&lt;/div&gt;
+ * &lt;/table&gt;
+ * </pre>
+ * The first image inside a "media" element, or with that class itself, is
+ * the tweet's image; avatars are not.
+ * Anything else is skipped. Not thread safe; use one parser per thread.
+ */
+public class SearchResultParser {
+
+    // receives each result as soon as it has been parsed
+    public interface ResultListener {
+        void onResult(SearchResult result);
+    }
+
+    private static final String TWEET_CLASS = "tweet";
+    private static final String TEXT_CLASS = "tweet-text";
+    private static final String TIME_CLASS = "timestamp";
+    private static final String MEDIA_CLASS = "media";
+    private static final String STATUS_PATH = "/status/";
+
+    // elements that never have an end tag
+    private static final String[] VOID_ELEMENTS = {
+            "area", "base", "br", "col", "embed", "hr", "img", "input",
+            "link", "meta", "param", "source", "track", "wbr"};
+
+    private static final int NONE = 0, TEXT = 1, TIME = 2; // fields being captured
+
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private Reader in;
+    private ResultListener listener;
+
+    private final StringBuilder tag = new StringBuilder(256); // contents of the current tag
+    private final StringBuilder field = new StringBuilder(280); // text being captured
+
+    private int depth; // open elements
+    private int tweetDepth; // depth of the current tweet element, or -1
+    private int fieldDepth; // depth of the element being captured
+    private int capturing; // NONE, TEXT or TIME
+    private int mediaDepth; // depth of the media element inside the current tweet, or -1
+
+    // parts of the current tweet
+    private long id;
+    private String user;
+    private String text;
+    private String time;
+    private String imageUrl;
+
+    /**
+     * Reads in to the end, passing every tweet found to listener.
+     *
+     * @return the number of results found
+     */
+    public int parse(Reader in, ResultListener listener) throws IOException {
+        this.in = in;
+        this.listener = listener;
+        position = limit = 0;
+        depth = 0;
+        tweetDepth = -1;
+        mediaDepth = -1;
+        capturing = NONE;
+
+        int count = 0;
+        int c;
+        while ((c = read()) != -1) {
+            if (c == '<') {
+                if (readTag())
+                    ++count;
+            } else if (capturing != NONE) {
+                if (c == '&')
+                    readEntity();
+                else
+                    appendText(c);
+            }
+        }
+
+        this.in = null;
+        this.listener = null;
+        return count;
+    }
+
+    // reads the rest of a tag and updates the parser state; true if a tweet ended
+    private boolean readTag() throws IOException {
+        tag.setLength(0);
+
+        int c;
+        char quote = 0;
+        while ((c = read()) != -1) {
+            if (quote != 0) {
+                if (c == quote)
+                    quote = 0;
+            } else if (c == '"' || c == '\'') {
+                quote = (char) c;
+            } else if (c == '>') {
+                break;
+            }
+            tag.append((char) c);
+
+            if (tag.length() == 3 && tag.charAt(0) == '!' && tag.charAt(1) == '-' && tag.charAt(2) == '-') {
+                skipPast("-->");
+                return false;
+            }
+        }
+
+        if (tag.length() == 0 || tag.charAt(0) == '!' || tag.charAt(0) == '?')
+            return false; // doctype or processing instruction
+
+        if (tag.charAt(0) == '/')
+            return endTag();
+
+        String name = tagName();
+        if ("script".equals(name) || "style".equals(name)) {
+            skipPast("</" + name);
+            skipPast(">");
+            return false;
+        }
+
+        if ("br".equals(name) && capturing != NONE)
+            appendText(' ');
+
+        if ("img".equals(name) && tweetDepth >= 0 && imageUrl == null) {
+            String classes = attribute("class");
+            if (mediaDepth >= 0 || (classes != null && hasClass(classes, MEDIA_CLASS)))
+                imageUrl = attribute("src");
+        }
+
+        boolean selfClosing = tag.charAt(tag.length() - 1) == '/' || isVoid(name);
+        if (!selfClosing)
+            startTag();
+        return false;
+    }
+
+    private void startTag() {
+        String classes = attribute("class");
+
+        if (classes != null) {
+            if (tweetDepth < 0 && hasClass(classes, TWEET_CLASS))
+                startTweet(attribute("href"));
+            else if (tweetDepth >= 0 && capturing == NONE && hasClass(classes, TEXT_CLASS))
+                startField(TEXT);
+            else if (tweetDepth >= 0 && capturing == NONE && hasClass(classes, TIME_CLASS))
+                startField(TIME);
+            else if (tweetDepth >= 0 && mediaDepth < 0 && hasClass(classes, MEDIA_CLASS))
+                mediaDepth = depth;
+
+            // tweet pages without a status link on the tweet element
+            if (capturing == TEXT && id == 0) {
+                String dataId = attribute("data-id");
+                if (dataId != null)
+                    id = parseId(dataId, 0);
+            }
+        }
+
+        ++depth;
+    }
+
+    private boolean endTag() {
+        if (depth > 0)
+            --depth;
+
+        if (capturing != NONE && depth == fieldDepth)
+            endField();
+
+        if (depth == mediaDepth)
+            mediaDepth = -1;
+
+        if (tweetDepth >= 0 && depth == tweetDepth)
+            return endTweet();
+        return false;
+    }
+
+    private void startTweet(String href) {
+        tweetDepth = depth;
+        mediaDepth = -1;
+        id = 0;
+        user = null;
+        text = null;
+        time = null;
+        imageUrl = null;
+
+        // href is "/user/status/123?p=v"
+        int status = href != null ? href.indexOf(STATUS_PATH) : -1;
+        if (status > 0) {
+            user = href.substring(href.charAt(0) == '/' ? 1 : 0, status);
+            id = parseId(href, status + STATUS_PATH.length());
+        }
+    }
+
+    private boolean endTweet() {
+        tweetDepth = -1;
+        mediaDepth = -1;
+        capturing = NONE;
+
+        if (text == null || id == 0)
+            return false;
+
+        listener.onResult(new SearchResult(id, user != null ? user : "", text,
+                time != null ? time : "", imageUrl));
+        return true;
+    }
+
+    private void startField(int which) {
+        capturing = which;
+        fieldDepth = depth;
+        field.setLength(0);
+    }
+
+    private void endField() {
+        String value = field.toString().trim();
+        if (capturing == TEXT)
+            text = value;
+        else
+            time = value;
+        capturing = NONE;
+    }
+
+    // appends a text character, collapsing runs of whitespace
+    private void appendText(int c) {
+        if (Character.isWhitespace(c)) {
+            if (field.length() > 0 && field.charAt(field.length() - 1) != ' ')
+                field.append(' ');
+        } else {
+            field.appendCodePoint(c);
+        }
+    }
+
+    // decodes and appends a character reference after '&'
+    private void readEntity() throws IOException {
+        StringBuilder entity = new StringBuilder(8);
+        int c;
+        while (entity.length() < 10 && (c = peek()) != -1 &&
+                (Character.isLetterOrDigit(c) || c == '#')) {
+            entity.append((char) read());
+        }
+
+        if (peek() == ';') {
+            read();
+            appendText(decodeEntity(entity.toString()));
+            return;
+        }
+
+        // not an entity; keep the text as it was
+        appendText('&');
+        for (int i = 0; i < entity.length(); ++i)
+            appendText(entity.charAt(i));
+    }
+
+    private static int decodeEntity(String entity) {
+        if (entity.startsWith("#")) {
+            try {
+                boolean hex = entity.length() > 1 && Character.toLowerCase(entity.charAt(1)) == 'x';
+                int c = hex ? Integer.parseInt(entity.substring(2), 16) :
+                        Integer.parseInt(entity.substring(1));
+                return Character.isValidCodePoint(c) ? c : '?';
+            } catch (NumberFormatException e) {
+                return '?';
+            }
+        }
+        if ("amp".equals(entity)) return '&';
+        if ("lt".equals(entity)) return '<';
+        if ("gt".equals(entity)) return '>';
+        if ("quot".equals(entity)) return '"';
+        if ("apos".equals(entity)) return '\'';
+        if ("nbsp".equals(entity)) return ' ';
+        return '?';
+    }
+
+    // lower-cased name of the tag in the tag buffer
+    private String tagName() {
+        int end = 0;
+        while (end < tag.length() && !Character.isWhitespace(tag.charAt(end)) && tag.charAt(end) != '/')
+            ++end;
+        return tag.substring(0, end).toLowerCase(Locale.US);
+    }
+
+    // value of an attribute of the tag in the tag buffer, or null
+    private String attribute(String name) {
+        int length = tag.length();
+        int i = 0;
+        while (i < length && !Character.isWhitespace(tag.charAt(i)))
+            ++i; // skip the tag name
+
+        while (i < length) {
+            while (i < length && (Character.isWhitespace(tag.charAt(i)) || tag.charAt(i) == '/'))
+                ++i;
+            int nameStart = i;
+            while (i < length && tag.charAt(i) != '=' && !Character.isWhitespace(tag.charAt(i)))
+                ++i;
+            int nameEnd = i;
+
+            while (i < length && Character.isWhitespace(tag.charAt(i)))
+                ++i;
+            String value = null;
+            if (i < length && tag.charAt(i) == '=') {
+                ++i;
+                while (i < length && Character.isWhitespace(tag.charAt(i)))
+                    ++i;
+                int valueStart, valueEnd;
+                if (i < length && (tag.charAt(i) == '"' || tag.charAt(i) == '\'')) {
+                    char quote = tag.charAt(i++);
+                    valueStart = i;
+                    while (i < length && tag.charAt(i) != quote)
+                        ++i;
+                    valueEnd = i++;
+                } else {
+                    valueStart = i;
+                    while (i < length && !Character.isWhitespace(tag.charAt(i)))
+                        ++i;
+                    valueEnd = i;
+                }
+                value = tag.substring(valueStart, Math.min(valueEnd, length));
+            }
+
+            if (nameEnd - nameStart == name.length() &&
+                    tag.substring(nameStart, nameEnd).equalsIgnoreCase(name))
+                return value != null ? value : "";
+            if (nameEnd == nameStart)
+                ++i; // stray character
+        }
+        return null;
+    }
+
+    private static boolean hasClass(String classes, String name) {
+        int start = 0;
+        while ((start = classes.indexOf(name, start)) >= 0) {
+            int end = start + name.length();
+            boolean wordStart = start == 0 || Character.isWhitespace(classes.charAt(start - 1));
+            boolean wordEnd = end == classes.length() || Character.isWhitespace(classes.charAt(end));
+            if (wordStart && wordEnd)
+                return true;
+            start = end;
+        }
+        return false;
+    }
+
+    private static boolean isVoid(String name) {
+        for (String element : VOID_ELEMENTS) {
+            if (element.equals(name))
+                return true;
+        }
+        return false;
+    }
+
+    // parses the digits of s starting at start, stopping at the first non-digit
+    private static long parseId(String s, int start) {
+        long id = 0;
+        for (int i = start; i < s.length() && Character.isDigit(s.charAt(i)); ++i)
+            id = id * 10 + (s.charAt(i) - '0');
+        return id;
+    }
+
+    // skips input up to and including marker
+    private void skipPast(String marker) throws IOException {
+        int matched = 0;
+        int c;
+        while (matched < marker.length() && (c = read()) != -1) {
+            if (Character.toLowerCase((char) c) == marker.charAt(matched))
+                ++matched;
+            else
+                matched = Character.toLowerCase((char) c) == marker.charAt(0) ? 1 : 0;
+        }
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c != -1)
+            ++position;
+        return c;
+    }
+
+    // next character without consuming it, or -1 at the end
+    private int peek() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position];
+    }
+}
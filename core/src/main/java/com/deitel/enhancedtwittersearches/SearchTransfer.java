@@ -0,0 +1,106 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+
+/**
+ * Streams saved searches in and out of the app. Exports use the binary
+ * {@link SavedSearchCodec} format, which is length prefixed and compact.
+ * Imports accept that format or a UTF-8 text format with one search per
+ * line, the tag and the query separated by a tab; blank lines and lines
+ * starting with '#' are skipped. Both are read one record at a time, so
+ * memory use does not depend on the size of the stream.
+ */
+public final class SearchTransfer {
+
+    private static final char TEXT_SEPARATOR = '\t';
+    private static final char TEXT_COMMENT = '#';
+
+    // receives each search read from an import stream
+    public interface SearchSink {
+        void accept(SavedSearch search);
+    }
+
+    // supplies the searches to export in order
+    public interface SearchSource {
+        int size();
+        SavedSearch get(int position);
+    }
+
+    private SearchTransfer() {
+    }
+
+    /**
+     * Reads searches from in, detecting the format from the first bytes.
+     *
+     * @return the number of searches passed to sink
+     */
+    public static int read(InputStream in, SearchSink sink) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+
+        // peek at the magic number of the binary format
+        buffered.mark(4);
+        DataInputStream data = new DataInputStream(buffered);
+        boolean binary;
+        try {
+            binary = data.readInt() == SavedSearchCodec.MAGIC;
+        } catch (IOException e) {
+            binary = false; // shorter than a binary header
+        }
+        buffered.reset();
+
+        return binary ? readBinary(data, sink) : readText(buffered, sink);
+    }
+
+    private static int readBinary(DataInputStream in, SearchSink sink) throws IOException {
+        int version = SavedSearchCodec.readHeader(in);
+
+        int count = 0;
+        SavedSearch search;
+        while ((search = SavedSearchCodec.readSearch(in, version)) != null) {
+            sink.accept(search);
+            ++count;
+        }
+        return count;
+    }
+
+    private static int readText(InputStream in, SearchSink sink) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+
+        int count = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.length() == 0 || line.charAt(0) == TEXT_COMMENT)
+                continue;
+
+            int separator = line.indexOf(TEXT_SEPARATOR);
+            if (separator <= 0 || separator == line.length() - 1)
+                continue; // a search needs both a tag and a query
+
+            String tag = line.substring(0, separator).trim();
+            String query = line.substring(separator + 1).trim();
+            if (tag.length() > 0 && query.length() > 0) {
+                sink.accept(new SavedSearch(tag, query));
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    // writes every search from source to out in the binary format
+    public static void write(SearchSource source, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+
+        SavedSearchCodec.writeHeader(data);
+        for (int i = 0; i < source.size(); ++i)
+            SavedSearchCodec.writeSearch(data, source.get(i));
+        SavedSearchCodec.writeEnd(data);
+        data.flush();
+    }
+}
@@ -0,0 +1,161 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.util.Locale;
+
+/**
+ * Builds Twitter search URLs from a topic and a combination of result
+ * filters. The filters are a bitmask, so the URL prefix for each of the 16
+ * combinations is computed once up front; building a URL only appends the
+ * encoded topic to the cached prefix, using a reused buffer.
+ */
+public class SearchUrlBuilder {
+
+    // result filters, combined as a bitmask
+    public static final int LIVE = 1;
+    public static final int NEWS = 2;
+    public static final int PHOTOS = 4;
+    public static final int VIDEOS = 8;
+
+    // all filters selected; Twitter's default search needs no filter parameter
+    public static final int ALL_FILTERS = LIVE | NEWS | PHOTOS | VIDEOS;
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    // characters Uri.encode leaves alone besides letters and digits
+    private static final String UNRESERVED = "_-!.~'()*";
+
+    private final String[] prefixes = new String[ALL_FILTERS + 1]; // indexed by filters
+    private final StringBuilder buffer = new StringBuilder(128);
+
+    /**
+     * @param searchUrl the search page URL the query parameters are appended to
+     */
+    public SearchUrlBuilder(String searchUrl) {
+        for (int filters = 0; filters <= ALL_FILTERS; ++filters)
+            prefixes[filters] = searchUrl + filterParameters(filters);
+    }
+
+    // query string up to and including "q=" for a filter combination
+    private static String filterParameters(int filters) {
+        if (filters == ALL_FILTERS)
+            return "?q=";
+
+        StringBuilder filterString = new StringBuilder("?");
+
+        if ((filters & LIVE) != 0)
+            filterString.append("f=tweets&");
+
+        if ((filters & NEWS) != 0)
+            filterString.append("f=news&");
+
+        if ((filters & PHOTOS) != 0)
+            filterString.append("f=images&");
+
+        if ((filters & VIDEOS) != 0)
+            filterString.append("f=videos&");
+
+        return filterString.append("q=").toString();
+    }
+
+    // search URL for topic with the given filters; topic is URL encoded
+    public synchronized String build(int filters, String topic) {
+        buffer.setLength(0);
+        buffer.append(prefixes[filters & ALL_FILTERS]);
+        encode(topic, buffer);
+        return buffer.toString();
+    }
+
+    /**
+     * Appends s to out, percent-encoding its UTF-8 bytes except for letters,
+     * digits and "_-!.~'()*", the same as android.net.Uri.encode. Like the
+     * UTF-8 encoder Uri.encode uses, an unpaired surrogate becomes "?".
+     */
+    public static void encode(String s, StringBuilder out) {
+        int length = s.length();
+        for (int i = 0; i < length; ) {
+            int c = s.codePointAt(i);
+            i += Character.charCount(c);
+
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') ||
+                    (c >= '0' && c <= '9') || (c < 0x80 && UNRESERVED.indexOf(c) >= 0)) {
+                out.append((char) c);
+            } else if (c < 0x80) {
+                appendByte(c, out);
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                appendByte('?', out); // unpaired; a pair is one code point above 0xFFFF
+            } else if (c < 0x800) {
+                appendByte(0xC0 | (c >> 6), out);
+                appendByte(0x80 | (c & 0x3F), out);
+            } else if (c < 0x10000) {
+                appendByte(0xE0 | (c >> 12), out);
+                appendByte(0x80 | ((c >> 6) & 0x3F), out);
+                appendByte(0x80 | (c & 0x3F), out);
+            } else {
+                appendByte(0xF0 | (c >> 18), out);
+                appendByte(0x80 | ((c >> 12) & 0x3F), out);
+                appendByte(0x80 | ((c >> 6) & 0x3F), out);
+                appendByte(0x80 | (c & 0x3F), out);
+            }
+        }
+    }
+
+    /**
+     * Reduces url to a canonical form, so the same page requested in
+     * different spellings has one key: the scheme and host are lower case,
+     * a default port and the fragment are dropped, an empty path becomes
+     * "/", a "+" in the query becomes "%20" and escapes use upper case hex
+     * digits, as {@link #encode} writes them.
+     */
+    public static String normalize(String url) {
+        int fragment = url.indexOf('#');
+        if (fragment >= 0)
+            url = url.substring(0, fragment);
+
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd < 0)
+            return url;
+        int authorityStart = schemeEnd + 3;
+        int authorityEnd = authorityStart;
+        while (authorityEnd < url.length() && url.charAt(authorityEnd) != '/' &&
+                url.charAt(authorityEnd) != '?')
+            ++authorityEnd;
+
+        String scheme = url.substring(0, schemeEnd).toLowerCase(Locale.US);
+        String authority = url.substring(authorityStart, authorityEnd).toLowerCase(Locale.US);
+        if ((scheme.equals("http") && authority.endsWith(":80")) ||
+                (scheme.equals("https") && authority.endsWith(":443")))
+            authority = authority.substring(0, authority.lastIndexOf(':'));
+
+        StringBuilder out = new StringBuilder(url.length() + 8);
+        out.append(scheme).append("://").append(authority);
+        if (authorityEnd == url.length() || url.charAt(authorityEnd) == '?')
+            out.append('/');
+
+        boolean query = false;
+        for (int i = authorityEnd; i < url.length(); ++i) {
+            char c = url.charAt(i);
+            if (c == '?') {
+                query = true;
+                out.append(c);
+            } else if (c == '+' && query) {
+                out.append("%20");
+            } else if (c == '%' && i + 2 < url.length() &&
+                    Character.digit(url.charAt(i + 1), 16) >= 0 &&
+                    Character.digit(url.charAt(i + 2), 16) >= 0) {
+                out.append('%')
+                        .append(Character.toUpperCase(url.charAt(i + 1)))
+                        .append(Character.toUpperCase(url.charAt(i + 2)));
+                i += 2;
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    private static void appendByte(int b, StringBuilder out) {
+        out.append('%');
+        out.append(HEX_DIGITS[(b >> 4) & 0xF]);
+        out.append(HEX_DIGITS[b & 0xF]);
+    }
+}
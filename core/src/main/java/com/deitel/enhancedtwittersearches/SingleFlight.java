@@ -0,0 +1,109 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Collapses concurrent loads of the same key into one. The first caller
+ * for a key runs the load; callers that ask for the key while it is still
+ * running wait for it and get the same result, or the same exception,
+ * instead of loading it again. Once a load completes the key is forgotten,
+ * so later calls load afresh; caching is left to the caller.
+ * <p/>
+ * Loads and suppressed duplicates are counted in the {@link MetricsRegistry}
+ * as name + ".loads" and name + ".suppressed". Thread safe.
+ */
+public class SingleFlight<K, V> {
+
+    // loads the value of a key
+    public interface Load<V> {
+        V load() throws IOException;
+    }
+
+    // a load in progress
+    private static class Flight<V> {
+        final CountDownLatch done = new CountDownLatch(1);
+        V value;
+        Throwable error; // thrown by the load instead of returning value
+    }
+
+    private final Map<K, Flight<V>> flights = new HashMap<K, Flight<V>>(); // guarded by itself
+    private final MetricsRegistry.Counter loads;
+    private final MetricsRegistry.Counter suppressed;
+
+    /**
+     * @param name prefix of the counters in the shared MetricsRegistry
+     */
+    public SingleFlight(String name) {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        loads = registry.counter(name + ".loads");
+        suppressed = registry.counter(name + ".suppressed");
+    }
+
+    /**
+     * Returns the value of key, running load unless a load of key is
+     * already in progress, in which case its outcome is shared.
+     *
+     * @throws InterruptedIOException if interrupted while waiting for
+     * another caller's load
+     */
+    public V execute(K key, Load<V> load) throws IOException {
+        Flight<V> flight;
+        boolean leader = false;
+        synchronized (flights) {
+            flight = flights.get(key);
+            if (flight == null) {
+                flight = new Flight<V>();
+                flights.put(key, flight);
+                leader = true;
+            }
+        }
+
+        if (leader) {
+            loads.increment();
+            try {
+                flight.value = load.load();
+            } catch (IOException e) {
+                flight.error = e;
+            } catch (RuntimeException e) {
+                flight.error = e;
+            } catch (Error e) {
+                flight.error = e;
+            } finally {
+                synchronized (flights) {
+                    flights.remove(key);
+                }
+                flight.done.countDown(); // publishes value and error to the waiters
+            }
+        } else {
+            suppressed.increment();
+            try {
+                flight.done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for " + key);
+            }
+        }
+
+        if (flight.error instanceof IOException)
+            throw (IOException) flight.error;
+        if (flight.error instanceof RuntimeException)
+            throw (RuntimeException) flight.error;
+        if (flight.error instanceof Error)
+            throw (Error) flight.error;
+        return flight.value;
+    }
+
+    // loads that were run, as opposed to shared
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    // calls that shared another caller's load instead of running their own
+    public long getSuppressedCount() {
+        return suppressed.get();
+    }
+}
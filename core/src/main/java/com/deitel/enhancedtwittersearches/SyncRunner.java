@@ -0,0 +1,207 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One run of the background sync: polls every saved search in a single
+ * burst, so the radio is woken once and can drop back to idle as soon as
+ * the burst is over, instead of staying up for polls spread over time.
+ * <p/>
+ * A run is bounded by a time budget and a byte budget. No fetch starts
+ * after the time budget is spent. Every byte of every response body counts
+ * against the byte budget; a fetch that would go over it fails, and no
+ * fetch starts once it is spent. Searches that were not fetched are
+ * reported as skipped and are polled again on the next run.
+ * <p/>
+ * Time is read from a {@link Clock}, both for the budget and for how long
+ * run waits for fetches in flight, so runs can be exercised with a fake
+ * clock against a local server.
+ */
+public class SyncRunner {
+
+    // milliseconds from an arbitrary origin that never goes backwards
+    public interface Clock {
+        long now();
+    }
+
+    // how often run checks the clock while it waits for the workers
+    private static final long WAIT_SLICE_MILLIS = 50;
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long now() {
+            return System.nanoTime() / 1000000;
+        }
+    };
+
+    // receives the results of each search; called on the sync's worker threads
+    public interface ResultSink {
+        void onSynced(String tag, List<SearchResult> results);
+    }
+
+    /**
+     * What a run did.
+     */
+    public static class Report {
+        public final int synced; // searches fetched and handed to the sink
+        public final int failed; // searches whose fetch failed
+        public final int skipped; // searches not fetched because a budget was spent
+        public final long bytes; // response body bytes read
+        public final long millis; // duration of the run
+
+        Report(int synced, int failed, int skipped, long bytes, long millis) {
+            this.synced = synced;
+            this.failed = failed;
+            this.skipped = skipped;
+            this.bytes = bytes;
+            this.millis = millis;
+        }
+
+        @Override
+        public String toString() {
+            return synced + " synced, " + failed + " failed, " + skipped + " skipped, " +
+                    bytes + " bytes in " + millis + "ms";
+        }
+    }
+
+    private final int concurrency;
+    private final long maxMillis;
+    private final long maxBytes;
+    private final int timeoutMillis;
+    private final Clock clock;
+    private final PageFetcher fetcher;
+
+    /**
+     * @param concurrency number of searches fetched at the same time
+     * @param maxMillis time after which no fetch starts
+     * @param maxBytes response body bytes a run may read
+     * @param timeoutMillis connect and read timeout of each fetch
+     */
+    public SyncRunner(int concurrency, long maxMillis, long maxBytes, int timeoutMillis,
+                      Clock clock) {
+        this.concurrency = concurrency;
+        this.maxMillis = maxMillis;
+        this.maxBytes = maxBytes;
+        this.timeoutMillis = timeoutMillis;
+        this.clock = clock;
+        fetcher = new PageFetcher(timeoutMillis, 0);
+    }
+
+    /**
+     * Fetches the searches in urlsByTag, in order, until all are fetched or
+     * a budget is spent, and waits for the fetches to finish.
+     *
+     * @param urlsByTag URL to poll for each tag
+     */
+    public Report run(Map<String, String> urlsByTag, final ResultSink sink)
+            throws InterruptedException {
+        final long start = clock.now();
+        final Queue<Map.Entry<String, String>> queue =
+                new ConcurrentLinkedQueue<Map.Entry<String, String>>(urlsByTag.entrySet());
+        final AtomicLong bytesLeft = new AtomicLong(maxBytes);
+        final AtomicInteger synced = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+
+        int workers = Math.min(concurrency, urlsByTag.size());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(workers, 1));
+        for (int i = 0; i < workers; ++i) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Map.Entry<String, String> entry;
+                    while (clock.now() - start < maxMillis && bytesLeft.get() > 0 &&
+                            !Thread.currentThread().isInterrupted() &&
+                            (entry = queue.poll()) != null) {
+                        try {
+                            sink.onSynced(entry.getKey(), fetch(entry.getValue(), bytesLeft));
+                            synced.incrementAndGet();
+                        } catch (IOException e) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+
+        // fetches that started before the deadline may take one more timeout
+        executor.shutdown();
+        long deadline = maxMillis + 2L * timeoutMillis;
+        try {
+            while (!executor.awaitTermination(WAIT_SLICE_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (clock.now() - start >= deadline) {
+                    executor.shutdownNow();
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            throw e;
+        }
+
+        return new Report(synced.get(), failed.get(), queue.size(),
+                maxBytes - bytesLeft.get(), clock.now() - start);
+    }
+
+    // fetches and parses url, counting the body against bytesLeft
+    private List<SearchResult> fetch(String url, final AtomicLong bytesLeft) throws IOException {
+        return fetcher.fetch(url, null, null, new PageFetcher.BodyReader<List<SearchResult>>() {
+            @Override
+            public List<SearchResult> read(InputStream body, String encoding) throws IOException {
+                final List<SearchResult> results = new ArrayList<SearchResult>();
+                new SearchResultParser().parse(
+                        new InputStreamReader(new BudgetInputStream(body, bytesLeft), encoding),
+                        new SearchResultParser.ResultListener() {
+                            @Override
+                            public void onResult(SearchResult result) {
+                                results.add(result);
+                            }
+                        });
+                return results;
+            }
+        });
+    }
+
+    // fails once the bytes read through it and the run's other streams exceed the budget
+    private static class BudgetInputStream extends FilterInputStream {
+        private final AtomicLong bytesLeft;
+
+        BudgetInputStream(InputStream in, AtomicLong bytesLeft) {
+            super(in);
+            this.bytesLeft = bytesLeft;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                spend(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0)
+                spend(count);
+            return count;
+        }
+
+        private void spend(int count) throws IOException {
+            if (bytesLeft.addAndGet(-count) < 0)
+                throw new IOException("Sync byte budget spent");
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The changes between two snapshots of the tag list: the tags removed, the
+ * tags inserted and the tags moved, and where each old row ends up. Tags
+ * are unique within a snapshot.
+ * <p/>
+ * The rows both snapshots start and end with are skipped first, so
+ * appending a chunk of tags or adding or deleting one tag costs a single
+ * comparison pass and no hashing. In the rows between, a tag in both
+ * snapshots stays in place if it is part of the longest run of tags that
+ * are in the same order in both; every other such tag counts as moved,
+ * which is the fewest moves that turn the old order into the new one.
+ * <p/>
+ * Computing a diff only reads the snapshots, so it can run off the UI
+ * thread as long as neither list is modified meanwhile.
+ */
+public final class TagDiff {
+
+    private final int oldSize;
+    private final int newSize;
+    private final int head; // rows both snapshots start with
+    private final int tail; // rows both snapshots end with
+    private final int[] middle; // new position of each old row between, or -1 if removed
+    private final List<String> removedTags;
+    private final int inserted;
+    private final int moved;
+
+    private TagDiff(int oldSize, int newSize, int head, int tail, int[] middle,
+                    List<String> removedTags, int inserted, int moved) {
+        this.oldSize = oldSize;
+        this.newSize = newSize;
+        this.head = head;
+        this.tail = tail;
+        this.middle = middle;
+        this.removedTags = removedTags;
+        this.inserted = inserted;
+        this.moved = moved;
+    }
+
+    /**
+     * Compares two snapshots of the tag list.
+     */
+    public static TagDiff compute(List<String> oldTags, List<String> newTags) {
+        int oldSize = oldTags.size();
+        int newSize = newTags.size();
+        int common = Math.min(oldSize, newSize);
+
+        int head = 0;
+        while (head < common && oldTags.get(head).equals(newTags.get(head)))
+            ++head;
+        int tail = 0;
+        while (tail < common - head &&
+                oldTags.get(oldSize - 1 - tail).equals(newTags.get(newSize - 1 - tail)))
+            ++tail;
+
+        int oldEnd = oldSize - tail;
+        int newEnd = newSize - tail;
+        if (head == oldEnd || head == newEnd) {
+            // only insertions or only removals, all in one place
+            List<String> removedTags = head == oldEnd ? Collections.<String>emptyList() :
+                    new ArrayList<String>(oldTags.subList(head, oldEnd));
+            int[] middle = new int[oldEnd - head];
+            Arrays.fill(middle, -1);
+            return new TagDiff(oldSize, newSize, head, tail, middle,
+                    Collections.unmodifiableList(removedTags), newEnd - head, 0);
+        }
+
+        HashMap<String, Integer> newPositions =
+                new HashMap<String, Integer>((newEnd - head) * 4 / 3 + 1);
+        for (int i = head; i < newEnd; ++i)
+            newPositions.put(newTags.get(i), i);
+
+        int[] middle = new int[oldEnd - head];
+        ArrayList<String> removedTags = new ArrayList<String>();
+        for (int i = head; i < oldEnd; ++i) {
+            Integer position = newPositions.get(oldTags.get(i));
+            if (position != null) {
+                middle[i - head] = position;
+            } else {
+                middle[i - head] = -1;
+                removedTags.add(oldTags.get(i));
+            }
+        }
+
+        int kept = middle.length - removedTags.size();
+        int moved = kept - longestIncreasingRun(middle);
+        return new TagDiff(oldSize, newSize, head, tail, middle,
+                Collections.unmodifiableList(removedTags), newEnd - head - kept, moved);
+    }
+
+    // length of the longest increasing subsequence of the non-negative positions
+    private static int longestIncreasingRun(int[] positions) {
+        int[] smallestEnd = new int[positions.length]; // of the runs of each length
+        int length = 0;
+        for (int position : positions) {
+            if (position < 0)
+                continue;
+            int i = Arrays.binarySearch(smallestEnd, 0, length, position);
+            if (i < 0)
+                i = -i - 1;
+            smallestEnd[i] = position;
+            if (i == length)
+                ++length;
+        }
+        return length;
+    }
+
+    public int getOldSize() {
+        return oldSize;
+    }
+
+    public int getNewSize() {
+        return newSize;
+    }
+
+    // true if both snapshots hold the same tags in the same order
+    public boolean isEmpty() {
+        return head == oldSize && oldSize == newSize;
+    }
+
+    // tags in the new snapshot that were not in the old one
+    public int getInsertCount() {
+        return inserted;
+    }
+
+    public int getRemoveCount() {
+        return removedTags.size();
+    }
+
+    // tags in both snapshots whose order relative to the others changed
+    public int getMoveCount() {
+        return moved;
+    }
+
+    // tags in the old snapshot that are not in the new one, in old order
+    public List<String> getRemovedTags() {
+        return removedTags;
+    }
+
+    /**
+     * @return the position in the new snapshot of the tag at oldPosition in
+     * the old one, or -1 if it was removed
+     */
+    public int newPosition(int oldPosition) {
+        if (oldPosition < 0 || oldPosition >= oldSize)
+            throw new IndexOutOfBoundsException("Position " + oldPosition + " of " + oldSize);
+        if (oldPosition < head)
+            return oldPosition;
+        if (oldPosition >= oldSize - tail)
+            return oldPosition + newSize - oldSize;
+        return middle[oldPosition - head];
+    }
+
+    // e.g. "+3 -1 ~2 of 120" for 3 inserts, 1 removal and 2 moves
+    @Override
+    public String toString() {
+        return "+" + inserted + " -" + removedTags.size() + " ~" + moved + " of " + newSize;
+    }
+}
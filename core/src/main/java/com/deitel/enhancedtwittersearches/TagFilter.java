@@ -0,0 +1,258 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Case-insensitive type-ahead filter over saved searches. A search matches
+ * when a word of its tag or of its query starts with the typed prefix.
+ * <p/>
+ * Every word start of every tag and query is kept as a lower-cased suffix in
+ * one sorted array, so the matches for a prefix form a contiguous range that
+ * is found by binary search. The range for each typed length is remembered:
+ * typing another character narrows the previous range with a binary search
+ * inside it, and deleting characters just goes back to an earlier range,
+ * so no keystroke rescans all searches.
+ * <p/>
+ * The matching tags are remembered per typed length too, as positions in
+ * the list of all tags in tag order. A new length keeps the tags of the
+ * previous length that own a key in the narrowed range, so the result
+ * comes out in order without a sort.
+ * <p/>
+ * Not thread safe; owned by the UI thread once built.
+ */
+public class TagFilter {
+
+    private final ArrayList<String> keys = new ArrayList<String>(); // sorted suffixes
+    private final ArrayList<String> owners = new ArrayList<String>(); // tag of each key
+
+    private final ArrayList<String> tagOrder = new ArrayList<String>(); // distinct owners, in tag order
+    private int[] ranks = new int[0]; // position in tagOrder of the owner of each key
+    private int[] marks = new int[0]; // per position in tagOrder, the last pass that saw it
+    private int pass;
+
+    private String prefix = ""; // lower-cased prefix the ranges were computed for
+    private int[] lows = new int[16]; // first key of the range for each prefix length
+    private int[] highs = new int[16]; // end of the range for each prefix length
+    private int[][] matches = new int[16][]; // positions in tagOrder matching each prefix length
+    private int validLength = -1; // longest prefix length whose range is current
+
+    // adds the keys for many searches with a single sort
+    public void addAll(List<SavedSearch> searches) {
+        ArrayList<String[]> entries = new ArrayList<String[]>(keys.size() + searches.size() * 4);
+        for (int i = 0; i < keys.size(); ++i)
+            entries.add(new String[] {keys.get(i), owners.get(i)});
+        for (SavedSearch search : searches) {
+            for (String key : wordSuffixes(search.getTag(), search.getQuery()))
+                entries.add(new String[] {key, search.getTag()});
+        }
+
+        Collections.sort(entries, new Comparator<String[]>() {
+            @Override
+            public int compare(String[] lhs, String[] rhs) {
+                int result = lhs[0].compareTo(rhs[0]);
+                return result != 0 ? result : lhs[1].compareTo(rhs[1]);
+            }
+        });
+
+        keys.clear();
+        owners.clear();
+        keys.ensureCapacity(entries.size());
+        owners.ensureCapacity(entries.size());
+        for (String[] entry : entries) {
+            keys.add(entry[0]);
+            owners.add(entry[1]);
+        }
+        validLength = -1;
+    }
+
+    // adds the keys for a search
+    public void add(String tag, String query) {
+        for (String key : wordSuffixes(tag, query)) {
+            int position = find(key, tag);
+            if (position < 0) {
+                position = -(position + 1);
+                keys.add(position, key);
+                owners.add(position, tag);
+            }
+        }
+        validLength = -1;
+    }
+
+    // removes the keys added for a search
+    public void remove(String tag, String query) {
+        for (String key : wordSuffixes(tag, query)) {
+            int position = find(key, tag);
+            if (position >= 0) {
+                keys.remove(position);
+                owners.remove(position);
+            }
+        }
+        validLength = -1;
+    }
+
+    /**
+     * Returns the tags of all searches with a word starting with prefix, in
+     * {@link SavedSearchIndex#TAG_ORDER}.
+     */
+    public List<String> filter(String text) {
+        String newPrefix = text.trim().toLowerCase(Locale.US);
+
+        // reuse the ranges of the prefix typed so far
+        int length = Math.min(commonPrefixLength(prefix, newPrefix), validLength);
+        if (length < 0) {
+            rank();
+            lows[0] = 0;
+            highs[0] = keys.size();
+            matches[0] = new int[tagOrder.size()];
+            for (int i = 0; i < matches[0].length; ++i)
+                matches[0][i] = i;
+            length = 0;
+        }
+
+        ensureCapacity(newPrefix.length() + 1);
+        for (int i = length + 1; i <= newPrefix.length(); ++i) {
+            narrow(newPrefix.substring(0, i), i);
+            matches[i] = collect(lows[i], highs[i], matches[i - 1]);
+        }
+
+        prefix = newPrefix;
+        validLength = newPrefix.length();
+
+        int[] positions = matches[validLength];
+        ArrayList<String> tags = new ArrayList<String>(positions.length);
+        for (int position : positions)
+            tags.add(tagOrder.get(position));
+        return tags;
+    }
+
+    // orders the distinct owners and points each key at its owner's position
+    private void rank() {
+        tagOrder.clear();
+        tagOrder.addAll(new HashSet<String>(owners));
+        Collections.sort(tagOrder, SavedSearchIndex.TAG_ORDER);
+
+        HashMap<String, Integer> positions = new HashMap<String, Integer>(tagOrder.size() * 2);
+        for (int i = 0; i < tagOrder.size(); ++i)
+            positions.put(tagOrder.get(i), i);
+        ranks = new int[owners.size()];
+        for (int i = 0; i < ranks.length; ++i)
+            ranks[i] = positions.get(owners.get(i));
+
+        marks = new int[tagOrder.size()];
+        pass = 0;
+    }
+
+    // computes the range for prefix (of the given length) inside the previous range
+    private void narrow(String prefix, int length) {
+        int low = lows[length - 1];
+        int high = highs[length - 1];
+
+        // first key not less than prefix
+        int first = low, last = high;
+        while (first < last) {
+            int middle = (first + last) >>> 1;
+            if (keys.get(middle).compareTo(prefix) < 0)
+                first = middle + 1;
+            else
+                last = middle;
+        }
+
+        // first key after the keys starting with prefix
+        int end = first;
+        last = high;
+        while (end < last) {
+            int middle = (end + last) >>> 1;
+            if (keys.get(middle).startsWith(prefix))
+                end = middle + 1;
+            else
+                last = middle;
+        }
+
+        lows[length] = first;
+        highs[length] = end;
+    }
+
+    // the positions in previous that own a key in [low, high); previous holds
+    // every owner of the range, in tag order
+    private int[] collect(int low, int high, int[] previous) {
+        if (++pass == 0) {
+            Arrays.fill(marks, 0);
+            pass = 1;
+        }
+        for (int i = low; i < high; ++i)
+            marks[ranks[i]] = pass;
+
+        int[] positions = new int[Math.min(previous.length, high - low)];
+        int count = 0;
+        for (int position : previous) {
+            if (marks[position] == pass)
+                positions[count++] = position;
+        }
+        return count == positions.length ? positions : Arrays.copyOf(positions, count);
+    }
+
+    // binary search for the (key, owner) pair
+    private int find(String key, String owner) {
+        int low = 0, high = keys.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int result = keys.get(middle).compareTo(key);
+            if (result == 0)
+                result = owners.get(middle).compareTo(owner);
+
+            if (result < 0)
+                low = middle + 1;
+            else if (result > 0)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -(low + 1);
+    }
+
+    private void ensureCapacity(int length) {
+        if (lows.length < length) {
+            int[] newLows = new int[Math.max(length, lows.length * 2)];
+            int[] newHighs = new int[newLows.length];
+            System.arraycopy(lows, 0, newLows, 0, lows.length);
+            System.arraycopy(highs, 0, newHighs, 0, highs.length);
+            lows = newLows;
+            highs = newHighs;
+            matches = Arrays.copyOf(matches, newLows.length);
+        }
+    }
+
+    private static int commonPrefixLength(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; ++i) {
+            if (a.charAt(i) != b.charAt(i))
+                return i;
+        }
+        return length;
+    }
+
+    // lower-cased suffixes starting at each word of tag and query, without duplicates
+    private static HashSet<String> wordSuffixes(String tag, String query) {
+        HashSet<String> suffixes = new HashSet<String>();
+        addWordSuffixes(tag, suffixes);
+        addWordSuffixes(query, suffixes);
+        return suffixes;
+    }
+
+    private static void addWordSuffixes(String text, HashSet<String> suffixes) {
+        String lower = text.toLowerCase(Locale.US);
+        for (int i = 0; i < lower.length(); ++i) {
+            boolean wordStart = i == 0 || (Character.isLetterOrDigit(lower.charAt(i)) &&
+                    !Character.isLetterOrDigit(lower.charAt(i - 1)));
+            if (wordStart)
+                suffixes.add(lower.substring(i));
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Ranks tags by how often they are used, most recent use breaking ties.
+ * <p/>
+ * Tags are kept in an LFU bucket list: a linked list of buckets in order of
+ * use count, each holding a linked list of the tags with that count, most
+ * recently used first. Recording a use moves a tag into the next bucket,
+ * which takes constant time, and the ranking is read by walking the buckets
+ * from the highest count down, so the top k tags cost O(k).
+ * <p/>
+ * Counts decay: after every {@code decayPeriod} uses all counts are halved,
+ * so searches that were popular long ago sink below those used recently.
+ * Halving walks every tag once, which amortizes to O(1) per use.
+ * Not thread safe.
+ */
+public class TagRanking {
+
+    // a tag in its bucket's list
+    private static class Node {
+        final String tag;
+        Bucket bucket;
+        Node previous; // more recently used
+        Node next; // less recently used
+
+        Node(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    // tags sharing a use count
+    private static class Bucket {
+        final int count;
+        Bucket lower; // bucket with the next lower count
+        Bucket higher; // bucket with the next higher count
+        Node first; // most recently used
+        Node last; // least recently used
+
+        Bucket(int count) {
+            this.count = count;
+        }
+    }
+
+    private final HashMap<String, Node> nodes = new HashMap<String, Node>();
+    private Bucket lowest; // bucket with the lowest count, or null if empty
+    private Bucket highest; // bucket with the highest count, or null if empty
+
+    private final int decayPeriod; // uses between halvings
+    private int usesSinceDecay;
+
+    public TagRanking(int decayPeriod) {
+        this.decayPeriod = decayPeriod;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public boolean contains(String tag) {
+        return nodes.containsKey(tag);
+    }
+
+    // use count of tag, or -1 if it is not ranked
+    public int getCount(String tag) {
+        Node node = nodes.get(tag);
+        return node != null ? node.bucket.count : -1;
+    }
+
+    /**
+     * Adds tag with count uses, behind the tags already holding that count.
+     * A tag that is already ranked is moved.
+     */
+    public void add(String tag, int count) {
+        remove(tag);
+
+        Node node = new Node(tag);
+        nodes.put(tag, node);
+
+        // find the bucket, searching from the end closest to count
+        Bucket bucket = lowest;
+        if (highest != null && count >= highest.count) {
+            bucket = highest;
+        } else {
+            while (bucket != null && bucket.count < count)
+                bucket = bucket.higher;
+        }
+
+        if (bucket == null || bucket.count != count) {
+            Bucket created = new Bucket(count);
+            if (bucket == null)
+                insertAbove(highest, created); // count exceeds every bucket
+            else if (bucket.count > count)
+                insertAbove(bucket.lower, created);
+            else
+                insertAbove(bucket, created);
+            bucket = created;
+        }
+        append(bucket, node);
+    }
+
+    public void remove(String tag) {
+        Node node = nodes.remove(tag);
+        if (node != null)
+            unlink(node);
+    }
+
+    public void clear() {
+        nodes.clear();
+        lowest = highest = null;
+        usesSinceDecay = 0;
+    }
+
+    /**
+     * Counts one use of tag, adding it if necessary.
+     *
+     * @return true if this use halved all counts
+     */
+    public boolean recordUse(String tag) {
+        Node node = nodes.get(tag);
+        if (node == null) {
+            add(tag, 0);
+            node = nodes.get(tag);
+        }
+
+        // move node to the front of the bucket with the next count
+        Bucket from = node.bucket;
+        Bucket to = from.higher;
+        if (to == null || to.count != from.count + 1) {
+            to = new Bucket(from.count + 1);
+            insertAbove(from, to);
+        }
+        unlink(node);
+        prepend(to, node);
+
+        if (++usesSinceDecay >= decayPeriod) {
+            decay();
+            return true;
+        }
+        return false;
+    }
+
+    // the k most used tags, most used first
+    public List<String> top(int k) {
+        ArrayList<String> top = new ArrayList<String>(Math.min(k, nodes.size()));
+        for (Bucket bucket = highest; bucket != null && top.size() < k; bucket = bucket.lower) {
+            for (Node node = bucket.first; node != null && top.size() < k; node = node.next)
+                top.add(node.tag);
+        }
+        return top;
+    }
+
+    // every tag, most used first
+    public ArrayList<String> getTags() {
+        return new ArrayList<String>(top(nodes.size()));
+    }
+
+    // halves every count, keeping the order within each resulting count
+    private void decay() {
+        usesSinceDecay = 0;
+
+        // collect the tags from the highest count down, then rebuild the buckets;
+        // buckets with counts 2n and 2n + 1 merge, the higher count first
+        ArrayList<String> tags = new ArrayList<String>(nodes.size());
+        ArrayList<Integer> counts = new ArrayList<Integer>(nodes.size());
+        for (Bucket bucket = highest; bucket != null; bucket = bucket.lower) {
+            for (Node node = bucket.first; node != null; node = node.next) {
+                tags.add(node.tag);
+                counts.add(bucket.count / 2);
+            }
+        }
+
+        nodes.clear();
+        lowest = highest = null;
+        for (int i = tags.size() - 1; i >= 0; --i) {
+            // walking upwards, so each tag goes in front of those added before
+            String tag = tags.get(i);
+            int count = counts.get(i);
+            Node node = new Node(tag);
+            nodes.put(tag, node);
+            if (highest == null || highest.count != count) {
+                Bucket bucket = new Bucket(count);
+                insertAbove(highest, bucket);
+            }
+            prepend(highest, node);
+        }
+    }
+
+    // links bucket in above below, or as the lowest bucket if below is null
+    private void insertAbove(Bucket below, Bucket bucket) {
+        Bucket above = below != null ? below.higher : lowest;
+        bucket.lower = below;
+        bucket.higher = above;
+        if (below != null)
+            below.higher = bucket;
+        else
+            lowest = bucket;
+        if (above != null)
+            above.lower = bucket;
+        else
+            highest = bucket;
+    }
+
+    private static void prepend(Bucket bucket, Node node) {
+        node.bucket = bucket;
+        node.previous = null;
+        node.next = bucket.first;
+        if (bucket.first != null)
+            bucket.first.previous = node;
+        else
+            bucket.last = node;
+        bucket.first = node;
+    }
+
+    private static void append(Bucket bucket, Node node) {
+        node.bucket = bucket;
+        node.next = null;
+        node.previous = bucket.last;
+        if (bucket.last != null)
+            bucket.last.next = node;
+        else
+            bucket.first = node;
+        bucket.last = node;
+    }
+
+    // removes node from its bucket, and the bucket from the list if it is empty
+    private void unlink(Node node) {
+        Bucket bucket = node.bucket;
+        if (node.previous != null)
+            node.previous.next = node.next;
+        else
+            bucket.first = node.next;
+        if (node.next != null)
+            node.next.previous = node.previous;
+        else
+            bucket.last = node.previous;
+        node.previous = node.next = null;
+
+        if (bucket.first == null) {
+            if (bucket.lower != null)
+                bucket.lower.higher = bucket.higher;
+            else
+                lowest = bucket.higher;
+            if (bucket.higher != null)
+                bucket.higher.lower = bucket.lower;
+            else
+                highest = bucket.lower;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.deitel.enhancedtwittersearches;
+
+/**
+ * Timed spans around the app's hot paths. The duration of every span is
+ * recorded in microseconds in a {@link MetricsRegistry} histogram named
+ * "span." followed by the span's name.
+ * <p/>
+ * Tracing is off by default and can be switched on at run time, e.g. on a
+ * field device before reproducing a slowdown. Spans are declared once as
+ * constants and pass their start time around as a primitive, so a span
+ * costs one volatile read and allocates nothing while tracing is off:
+ * <pre>
+ * private static final Tracer.Span SETUP_SPAN = Tracer.span("setupListView");
+ *
+ * long start = SETUP_SPAN.begin();
+ * ...
+ * SETUP_SPAN.end(start);
+ * </pre>
+ */
+public final class Tracer {
+
+    // start time of a span that began while tracing was off
+    private static final long NOT_TRACED = Long.MIN_VALUE;
+
+    private static volatile boolean enabled;
+
+    // a named piece of work whose durations are recorded
+    public static final class Span {
+        private final MetricsRegistry.Histogram durations;
+
+        private Span(MetricsRegistry.Histogram durations) {
+            this.durations = durations;
+        }
+
+        // the start time to pass to end
+        public long begin() {
+            return enabled ? System.nanoTime() : NOT_TRACED;
+        }
+
+        // records the time since begin returned start, unless tracing was off then
+        public void end(long start) {
+            if (start != NOT_TRACED)
+                durations.record((System.nanoTime() - start) / 1000);
+        }
+    }
+
+    private Tracer() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Tracer.enabled = enabled;
+    }
+
+    // the span with name, recording into the shared registry
+    public static Span span(String name) {
+        return new Span(MetricsRegistry.getInstance().histogram("span." + name));
+    }
+}
@@ -0,0 +1,76 @@
+package com.deitel.enhancedtwittersearches;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces mutations into delayed physical writes. Every call to
+ * {@link #mutated()} makes sure a write is scheduled within the coalescing
+ * window; mutations that arrive while a write is already pending ride along
+ * with it. The writer runs on a single background thread and should persist
+ * the state as it is when it runs, not as it was when it was scheduled.
+ */
+public class WriteBehindQueue {
+
+    private final Runnable writer; // performs one physical write
+    private final long windowMillis; // how long mutations are collected
+    private final ScheduledExecutorService executor =
+            Executors.newSingleThreadScheduledExecutor();
+
+    private final AtomicLong mutationCount = new AtomicLong();
+    private final AtomicLong writeCount = new AtomicLong();
+
+    private ScheduledFuture<?> pendingWrite; // scheduled write that has not started
+
+    private final Runnable writeTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (WriteBehindQueue.this) {
+                pendingWrite = null; // later mutations need a new write
+            }
+            writeCount.incrementAndGet();
+            writer.run();
+        }
+    };
+
+    public WriteBehindQueue(Runnable writer, long windowMillis) {
+        this.writer = writer;
+        this.windowMillis = windowMillis;
+    }
+
+    // records a mutation and schedules a write unless one is already pending
+    public void mutated() {
+        mutated(1);
+    }
+
+    // records count mutations made together, such as a bulk import
+    public synchronized void mutated(int count) {
+        mutationCount.addAndGet(count);
+        if (pendingWrite == null)
+            pendingWrite = executor.schedule(writeTask, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // starts a pending write right away instead of at the end of the window
+    public synchronized void flush() {
+        if (pendingWrite != null && pendingWrite.cancel(false))
+            pendingWrite = executor.schedule(writeTask, 0, TimeUnit.MILLISECONDS);
+    }
+
+    // true while mutations are waiting for a write
+    public synchronized boolean isPending() {
+        return pendingWrite != null;
+    }
+
+    // number of mutations recorded so far
+    public long getMutationCount() {
+        return mutationCount.get();
+    }
+
+    // number of physical writes performed so far
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+}
@@ -0,0 +1,209 @@
+package com.deitel.enhancedtwittersearches;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PageCacheTest {
+
+    private static final long TTL = 60 * 1000;
+    private static final byte[] BODY = new byte[1000];
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("pages", "");
+        assertTrue(directory.delete());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        directory.delete();
+    }
+
+    // url of the same length for every n < 10, so every page file has the same size
+    private static String url(int n) {
+        return "https://mobile.twitter.com/search?q=" + n;
+    }
+
+    private static PageCache.Page page(int n, long fetchedAt) {
+        return new PageCache.Page(url(n), "text/html", "UTF-8", fetchedAt, BODY);
+    }
+
+    private PageCache cache(long maxBytes) {
+        return new PageCache(directory, maxBytes, TTL);
+    }
+
+    // size of the file holding page(n, ...)
+    private long pageSize() throws IOException {
+        PageCache sizing = cache(Long.MAX_VALUE);
+        sizing.put(page(0, 0));
+        long size = sizing.size();
+        sizing.clear();
+        return size;
+    }
+
+    // the file storing the page for url
+    private File fileOf(String url) throws IOException {
+        for (File file : directory.listFiles()) {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                in.readInt(); // magic
+                if (url.equals(in.readUTF()))
+                    return file;
+            } finally {
+                in.close();
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void storesAndReturnsPages() throws IOException {
+        PageCache cache = cache(1 << 20);
+        byte[] body = "<html>results</html>".getBytes("UTF-8");
+        cache.put(new PageCache.Page(url(1), "text/html", "ISO-8859-1", 1234, body));
+
+        PageCache.Page page = cache.get(url(1));
+
+        assertEquals(url(1), page.url);
+        assertEquals("text/html", page.mimeType);
+        assertEquals("ISO-8859-1", page.encoding);
+        assertEquals(1234, page.fetchedAt);
+        assertArrayEquals(body, page.body);
+        assertNull(cache.get(url(2)));
+    }
+
+    @Test
+    public void returnsStalePagesMarkedStale() throws IOException {
+        PageCache cache = cache(1 << 20);
+        long now = System.currentTimeMillis();
+        cache.put(page(1, now));
+        cache.put(page(2, now - TTL - 1));
+
+        assertTrue(cache.isFresh(cache.get(url(1))));
+        PageCache.Page stale = cache.get(url(2));
+        assertNotNull(stale);
+        assertFalse(cache.isFresh(stale));
+        assertFalse(cache.isFresh(page(3, now + TTL))); // clock went backwards
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws IOException {
+        long pageSize = pageSize();
+        PageCache cache = cache(2 * pageSize + pageSize / 2);
+        cache.put(page(1, 0));
+        cache.put(page(2, 0));
+        cache.get(url(1)); // 2 is now the least recently used
+
+        cache.put(page(3, 0));
+
+        assertEquals(2 * pageSize, cache.size());
+        assertNull(cache.get(url(2)));
+        assertNotNull(cache.get(url(1)));
+        assertNotNull(cache.get(url(3)));
+    }
+
+    @Test
+    public void replacesPageOfSameUrl() throws IOException {
+        PageCache cache = cache(1 << 20);
+        cache.put(page(1, 1));
+        long size = cache.size();
+
+        cache.put(page(1, 2));
+
+        assertEquals(size, cache.size());
+        assertEquals(2, cache.get(url(1)).fetchedAt);
+    }
+
+    @Test
+    public void keepsRecencyAcrossRestarts() throws IOException {
+        long pageSize = pageSize();
+        PageCache cache = cache(1 << 20);
+        for (int i = 1; i <= 3; ++i)
+            cache.put(page(i, 0));
+        // 1 was used last, then 3, then 2
+        assertTrue(fileOf(url(2)).setLastModified(1000000000L));
+        assertTrue(fileOf(url(3)).setLastModified(2000000000L));
+        assertTrue(fileOf(url(1)).setLastModified(3000000000L));
+
+        PageCache reopened = cache(2 * pageSize);
+
+        assertEquals(2 * pageSize, reopened.size());
+        assertNull(reopened.get(url(2)));
+        assertNotNull(reopened.get(url(1)));
+        assertNotNull(reopened.get(url(3)));
+    }
+
+    @Test
+    public void dropsCorruptPages() throws IOException {
+        long pageSize = pageSize();
+        PageCache cache = cache(1 << 20);
+        cache.put(page(1, 0));
+        cache.put(page(2, 0));
+
+        File garbage = fileOf(url(1));
+        File truncated = fileOf(url(2));
+
+        // not a cached page at all
+        FileOutputStream out = new FileOutputStream(garbage);
+        out.write("garbage".getBytes("UTF-8"));
+        out.close();
+        // body cut short
+        RandomAccessFile file = new RandomAccessFile(truncated, "rw");
+        file.setLength(pageSize - 10);
+        file.close();
+
+        PageCache reopened = cache(1 << 20);
+        assertNull(reopened.get(url(1)));
+        assertNull(reopened.get(url(2)));
+        assertFalse(garbage.exists());
+        assertFalse(truncated.exists());
+        assertEquals(0, reopened.size());
+    }
+
+    @Test
+    public void deletesInterruptedWritesOnOpen() throws IOException {
+        assertTrue(directory.mkdirs());
+        File temp = new File(directory, "0123.tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        out.write(1);
+        out.close();
+
+        assertEquals(0, cache(1 << 20).size());
+        assertFalse(temp.exists());
+    }
+
+    @Test
+    public void clearDeletesEveryPage() throws IOException {
+        PageCache cache = cache(1 << 20);
+        cache.put(page(1, 0));
+        cache.put(page(2, 0));
+
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertNull(cache.get(url(1)));
+        assertEquals(0, directory.listFiles().length);
+    }
+}
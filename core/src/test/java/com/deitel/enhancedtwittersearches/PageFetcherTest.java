@@ -0,0 +1,156 @@
+package com.deitel.enhancedtwittersearches;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PageFetcherTest {
+
+    private static final byte[] PAGE = "<html>results</html>".getBytes();
+
+    private StubServer server;
+    private PageFetcher fetcher;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StubServer();
+        fetcher = new PageFetcher(5000, 1024);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void fetchesPage() throws IOException {
+        server.page("/search", "text/html; charset=ISO-8859-1", PAGE);
+
+        PageFetcher.Response response = fetcher.fetch(server.url("/search"), null, null);
+
+        assertEquals(200, response.status);
+        assertEquals("text/html", response.mimeType);
+        assertEquals("ISO-8859-1", response.encoding);
+        assertArrayEquals(PAGE, response.body);
+    }
+
+    @Test
+    public void defaultsToUtf8Html() throws IOException {
+        server.page("/search", null, PAGE);
+
+        PageFetcher.Response response = fetcher.fetch(server.url("/search"), null, null);
+
+        assertEquals("text/html", response.mimeType);
+        assertEquals("UTF-8", response.encoding);
+    }
+
+    @Test
+    public void followsRedirects() throws IOException {
+        server.redirect("/search?q=a", 301, server.url("/moved?q=a"));
+        server.redirect("/moved?q=a", 302, "/final?q=a"); // relative
+        server.page("/final?q=a", "text/html", PAGE);
+
+        PageFetcher.Response response = fetcher.fetch(server.url("/search?q=a"), null, null);
+
+        assertArrayEquals(PAGE, response.body);
+        assertEquals(3, server.getRequests().size());
+    }
+
+    @Test
+    public void streamsRedirectedBody() throws IOException {
+        server.redirect("/search", 307, "/final");
+        server.page("/final", "text/html", PAGE);
+
+        byte[] body = fetcher.fetch(server.url("/search"), null, null,
+                new PageFetcher.BodyReader<byte[]>() {
+                    @Override
+                    public byte[] read(InputStream body, String encoding) throws IOException {
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        int b;
+                        while ((b = body.read()) != -1)
+                            out.write(b);
+                        return out.toByteArray();
+                    }
+                });
+
+        assertArrayEquals(PAGE, body);
+    }
+
+    @Test
+    public void sendsCookieOnlyToOriginalHost() throws IOException {
+        server.redirect("/search", 302, "/same");
+        server.redirect("/same", 302, server.url("localhost", "/other"));
+        server.page("/other", "text/html", PAGE);
+
+        fetcher.fetch(server.url("127.0.0.1", "/search"), null, "session=1");
+
+        List<StubServer.Request> requests = server.getRequests();
+        assertEquals(3, requests.size());
+        assertEquals("session=1", requests.get(0).cookie);
+        assertEquals("session=1", requests.get(1).cookie);
+        assertNull(requests.get(2).cookie);
+    }
+
+    @Test
+    public void keepsCookieOffDowngradedRedirects() throws IOException {
+        URL secure = new URL("https://mobile.twitter.com/search?q=a");
+
+        assertTrue(PageFetcher.sendsCookie(secure, new URL("https://mobile.twitter.com/x")));
+        assertTrue(PageFetcher.sendsCookie(new URL("http://mobile.twitter.com/search"), secure));
+        assertFalse(PageFetcher.sendsCookie(secure, new URL("http://mobile.twitter.com/x")));
+        assertFalse(PageFetcher.sendsCookie(secure, new URL("https://twitter.com/x")));
+    }
+
+    @Test
+    public void reportsRedirectedUrl() throws IOException {
+        server.redirect("/search", 302, "/final");
+        server.page("/final", "text/html", PAGE);
+
+        PageFetcher.Response response = fetcher.fetch(server.url("/search"), null, null);
+
+        assertEquals(server.url("/final"), response.url);
+    }
+
+    @Test
+    public void givesUpOnRedirectLoop() {
+        server.redirect("/loop", 302, "/loop");
+
+        try {
+            fetcher.fetch(server.url("/loop"), null, null);
+            fail();
+        } catch (IOException expected) {
+            // too many redirects
+        }
+        assertEquals(6, server.getRequests().size()); // the first request and five hops
+    }
+
+    @Test(expected = IOException.class)
+    public void failsOnRedirectWithoutLocation() throws IOException {
+        server.reply("/search", new StubServer.Reply(301, "text/html", new byte[0]));
+        fetcher.fetch(server.url("/search"), null, null);
+    }
+
+    @Test(expected = IOException.class)
+    public void failsOnErrorStatus() throws IOException {
+        fetcher.fetch(server.url("/missing"), null, null);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsBodyOverLimit() throws IOException {
+        server.page("/search", "text/html", new byte[2048]);
+        fetcher.fetch(server.url("/search"), null, null);
+    }
+}
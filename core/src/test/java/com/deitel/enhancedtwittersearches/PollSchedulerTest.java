@@ -0,0 +1,50 @@
+package com.deitel.enhancedtwittersearches;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PollSchedulerTest {
+
+    private static final long MIN = 1000;
+    private static final long MAX = 8000;
+
+    @Test
+    public void backsOffAfterEmptyPolls() {
+        PollScheduler scheduler = new PollScheduler(MIN, MAX);
+        scheduler.add("tag", 0);
+
+        long now = 0;
+        for (long expected : new long[] {2000, 4000, 8000, 8000}) {
+            assertEquals(Collections.singletonList("tag"), scheduler.startDuePolls(now));
+            scheduler.polled("tag", now, false);
+            assertEquals(expected, scheduler.getInterval("tag"));
+            now = scheduler.nextDue();
+        }
+
+        scheduler.startDuePolls(now);
+        scheduler.polled("tag", now, true);
+        assertEquals(MIN, scheduler.getInterval("tag"));
+    }
+
+    @Test
+    public void restoresSavedSchedule() {
+        PollScheduler scheduler = new PollScheduler(MIN, MAX);
+        scheduler.add("slow", 5000, 4000);
+        scheduler.add("unknown", 100, 0); // no saved interval
+        scheduler.add("long", 100, 60000); // saved with a larger maximum
+
+        assertEquals(5000, scheduler.getDue("slow"));
+        assertEquals(4000, scheduler.getInterval("slow"));
+        assertEquals(MIN, scheduler.getInterval("unknown"));
+        assertEquals(MAX, scheduler.getInterval("long"));
+
+        assertTrue(scheduler.startDuePolls(4999).containsAll(Arrays.asList("unknown", "long")));
+        scheduler.polled("slow", 0, false);
+        assertEquals(8000, scheduler.getInterval("slow"));
+    }
+}
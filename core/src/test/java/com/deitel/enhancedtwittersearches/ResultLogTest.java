@@ -0,0 +1,157 @@
+package com.deitel.enhancedtwittersearches;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ResultLogTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("results", "");
+        assertTrue(directory.delete());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void readsBackAppendedResults() throws IOException {
+        ResultLog log = new ResultLog(directory, SEGMENT_SIZE, 4);
+        log.append("java", result(1));
+        log.append("java", result(2));
+        log.append("android", result(3));
+        log.close();
+
+        log = new ResultLog(directory, SEGMENT_SIZE, 4);
+        assertEquals(2, log.count("java"));
+        assertEquals(3, ids(log, "android").get(0).longValue());
+        assertEquals(0, log.getTruncatedCount());
+        log.close();
+    }
+
+    @Test
+    public void dropsEvictedTag() throws IOException {
+        ResultLog log = new ResultLog(directory, SEGMENT_SIZE, 4);
+        log.append("java", result(1));
+        log.evict("java");
+        log.close();
+
+        log = new ResultLog(directory, SEGMENT_SIZE, 4);
+        assertEquals(0, log.count("java"));
+        log.close();
+    }
+
+    @Test
+    public void truncatesTornEntry() throws IOException {
+        ResultLog log = new ResultLog(directory, SEGMENT_SIZE, 4);
+        log.append("java", result(1));
+        log.append("java", result(2));
+        log.close();
+
+        // flip a byte of the second entry's payload
+        int second = 8 + entrySize(result(1));
+        corrupt(second + 8 + 10, (byte) 0x5a);
+
+        log = new ResultLog(directory, SEGMENT_SIZE, 4);
+        assertEquals(1, log.count("java"));
+        assertEquals(1, log.getTruncatedCount());
+
+        // appends continue where the torn entry was
+        log.append("java", result(3));
+        log.close();
+        log = new ResultLog(directory, SEGMENT_SIZE, 4);
+        assertEquals(2, log.count("java"));
+        log.close();
+    }
+
+    @Test
+    public void truncatesEntryWithOverflowingLength() throws IOException {
+        ResultLog log = new ResultLog(directory, SEGMENT_SIZE, 4);
+        log.append("java", result(1));
+        log.close();
+
+        // a length that wraps around when the header sizes are added
+        int second = 8 + entrySize(result(1));
+        corruptInt(second, Integer.MAX_VALUE - 4);
+
+        log = new ResultLog(directory, SEGMENT_SIZE, 4);
+        assertEquals(1, log.count("java"));
+        assertEquals(1, log.getTruncatedCount());
+        log.close();
+    }
+
+    @Test
+    public void truncatesEntryWithNegativeLength() throws IOException {
+        ResultLog log = new ResultLog(directory, SEGMENT_SIZE, 4);
+        log.append("java", result(1));
+        log.close();
+
+        corruptInt(8, -1);
+
+        log = new ResultLog(directory, SEGMENT_SIZE, 4);
+        assertEquals(0, log.count("java"));
+        assertEquals(1, log.getTruncatedCount());
+        log.close();
+    }
+
+    private static SearchResult result(long id) {
+        return new SearchResult(id, "user" + id, "text of " + id, "1h", null);
+    }
+
+    // bytes a RESULT entry of result under "java" takes
+    private static int entrySize(SearchResult result) {
+        return 8 + 1 + 2 + "java".length() + ResultLog.encode(result).length;
+    }
+
+    private List<Long> ids(ResultLog log, String tag) throws IOException {
+        final List<Long> ids = new ArrayList<Long>();
+        log.read(tag, new ResultLog.ResultVisitor() {
+            @Override
+            public void visit(String tag, SearchResult result) {
+                ids.add(result.getId());
+            }
+        });
+        return ids;
+    }
+
+    private void corrupt(int offset, byte value) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(new File(directory, "00000001.log"), "rw");
+        try {
+            file.seek(offset);
+            file.write(value);
+        } finally {
+            file.close();
+        }
+    }
+
+    private void corruptInt(int offset, int value) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(new File(directory, "00000001.log"), "rw");
+        try {
+            file.seek(offset);
+            file.writeInt(value);
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.deitel.enhancedtwittersearches;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SavedSearchCodecTest {
+
+    @Test
+    public void roundTripsEveryField() throws IOException {
+        SavedSearch search = new SavedSearch("java", "java OR android");
+        search.setFilters(SearchUrlBuilder.LIVE | SearchUrlBuilder.PHOTOS);
+        search.setUrl("http://mobile.twitter.com/search?q=java");
+        search.setMarks(10, 20, 3);
+        search.setUseCount(7);
+        search.setPollSchedule(1400000000000L, 8 * 60 * 1000);
+
+        SavedSearch read = roundTrip(search);
+
+        assertEquals("java", read.getTag());
+        assertEquals("java OR android", read.getQuery());
+        assertEquals(search.getFilters(), read.getFilters());
+        assertEquals(search.getUrl(), read.getUrl());
+        assertEquals(10, read.getLastSeenId());
+        assertEquals(20, read.getNewestId());
+        assertEquals(3, read.getUnreadCount());
+        assertEquals(7, read.getUseCount());
+        assertEquals(1400000000000L, read.getNextPollTime());
+        assertEquals(8 * 60 * 1000, read.getPollInterval());
+    }
+
+    @Test
+    public void leavesOutDefaults() throws IOException {
+        SavedSearch read = roundTrip(new SavedSearch("tag", "query"));
+
+        assertNull(read.getUrl());
+        assertEquals(0, read.getFilters());
+        assertEquals(0, read.getNextPollTime());
+        assertEquals(0, read.getPollInterval());
+    }
+
+    @Test
+    public void skipsUnknownFields() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        SavedSearchCodec.writeHeader(out);
+        out.writeByte(1); // record
+        out.writeByte(1); // tag
+        out.writeShort(3);
+        out.writeBytes("tag");
+        out.writeByte(200); // a field of a later version
+        out.writeShort(2);
+        out.writeShort(0x1234);
+        out.writeByte(2); // query
+        out.writeShort(5);
+        out.writeBytes("query");
+        out.writeByte(0); // end of record
+        SavedSearchCodec.writeEnd(out);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        int version = SavedSearchCodec.readHeader(in);
+        SavedSearch read = SavedSearchCodec.readSearch(in, version);
+
+        assertEquals("tag", read.getTag());
+        assertEquals("query", read.getQuery());
+        assertNull(SavedSearchCodec.readSearch(in, version));
+    }
+
+    @Test
+    public void newQueryResetsPollSchedule() {
+        SavedSearch search = new SavedSearch("tag", "query");
+        search.setPollSchedule(1400000000000L, 60 * 60 * 1000);
+
+        search.setQuery("other query");
+
+        assertEquals(0, search.getNextPollTime());
+        assertEquals(0, search.getPollInterval());
+    }
+
+    private static SavedSearch roundTrip(SavedSearch search) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        SavedSearchCodec.writeHeader(out);
+        SavedSearchCodec.writeSearch(out, search);
+        SavedSearchCodec.writeEnd(out);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        int version = SavedSearchCodec.readHeader(in);
+        SavedSearch read = SavedSearchCodec.readSearch(in, version);
+        assertNull(SavedSearchCodec.readSearch(in, version));
+        return read;
+    }
+}
@@ -0,0 +1,180 @@
+package com.deitel.enhancedtwittersearches;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SearchRefresherTest {
+
+    private static final int SEARCHES = 8;
+    private static final byte[] PAGE = ("<html><body><table class=\"tweet\" href=\"/u/status/1\">" +
+            "<tr><td><div class=\"tweet-text\" data-id=\"1\">one</div></td></tr></table>" +
+            "</body></html>").getBytes();
+
+    // counts outcomes and signals when the refresh is finished
+    private static class Listener implements SearchRefresher.RefreshListener {
+        final AtomicInteger refreshed = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        @Override
+        public void onRefreshed(String tag, List<SearchResult> results) {
+            refreshed.incrementAndGet();
+        }
+
+        @Override
+        public void onRefreshFailed(String tag, IOException error) {
+            failed.incrementAndGet();
+        }
+
+        @Override
+        public void onRefreshFinished() {
+            finished.countDown();
+        }
+    }
+
+    private StubServer server;
+    private SearchRefresher refresher;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StubServer();
+    }
+
+    @After
+    public void tearDown() {
+        if (refresher != null)
+            refresher.shutdown();
+        server.stop();
+    }
+
+    // refreshes SEARCHES slow searches on the stub server, all on one host
+    private Listener refresh(int concurrency, int perHostLimit) throws InterruptedException {
+        Map<String, String> urls = new LinkedHashMap<String, String>();
+        for (int i = 0; i < SEARCHES; ++i) {
+            server.reply("/" + i, new StubServer.Reply(200, "text/html", PAGE).delay(200));
+            urls.put("tag" + i, server.url("/" + i));
+        }
+        refresher = new SearchRefresher(concurrency, perHostLimit, 5000);
+        Listener listener = new Listener();
+        refresher.refresh(urls, listener);
+        assertTrue(listener.finished.await(10, TimeUnit.SECONDS));
+        return listener;
+    }
+
+    @Test
+    public void usesEveryWorkerOnOneHost() throws InterruptedException {
+        Listener listener = refresh(4, 4);
+
+        assertEquals(SEARCHES, listener.refreshed.get());
+        assertEquals(4, server.getMaxInFlight());
+    }
+
+    @Test
+    public void perHostLimitAboveConcurrencyDoesNotBind() throws InterruptedException {
+        refresh(4, 16);
+
+        assertEquals(4, server.getMaxInFlight());
+    }
+
+    @Test
+    public void perHostLimitBelowConcurrencyBinds() throws InterruptedException {
+        Listener listener = refresh(4, 2);
+
+        assertEquals(SEARCHES, listener.refreshed.get());
+        assertEquals(2, server.getMaxInFlight());
+    }
+
+    // starts refreshing a search per worker whose reply hangs for longer than the
+    // test is willing to wait, and waits until every fetch is in flight
+    private SearchRefresher.Refresh startHungRefresh(StubServer.Reply reply, Listener listener)
+            throws InterruptedException {
+        Map<String, String> urls = new LinkedHashMap<String, String>();
+        for (int i = 0; i < 4; ++i) {
+            server.reply("/" + i, reply);
+            urls.put("tag" + i, server.url("/" + i));
+        }
+        refresher = new SearchRefresher(4, 4, 10000);
+        SearchRefresher.Refresh refresh = refresher.refresh(urls, listener);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getMaxInFlight() < 4) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        Thread.sleep(100); // let the clients block on their reads
+        return refresh;
+    }
+
+    // waits for every fetch of refresh to return
+    private static long awaitStopped(SearchRefresher.Refresh refresh) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        while (refresh.getRemaining() > 0 && System.currentTimeMillis() - start < 5000)
+            Thread.sleep(5);
+        return System.currentTimeMillis() - start;
+    }
+
+    @Test
+    public void cancelAbortsFetchesWaitingForHeaders() throws InterruptedException {
+        Listener listener = new Listener();
+        SearchRefresher.Refresh refresh = startHungRefresh(
+                new StubServer.Reply(200, "text/html", PAGE).delay(5000), listener);
+
+        refresh.cancel();
+
+        long millis = awaitStopped(refresh);
+        assertTrue("stopped after " + millis + "ms", millis < 1000);
+        assertEquals(0, listener.refreshed.get() + listener.failed.get());
+    }
+
+    @Test
+    public void cancelAbortsFetchesReadingTheBody() throws InterruptedException {
+        Listener listener = new Listener();
+        SearchRefresher.Refresh refresh = startHungRefresh(
+                new StubServer.Reply(200, "text/html", PAGE).stall(5000), listener);
+
+        refresh.cancel();
+
+        long millis = awaitStopped(refresh);
+        assertTrue("stopped after " + millis + "ms", millis < 1000);
+        assertEquals(0, listener.refreshed.get() + listener.failed.get());
+    }
+
+    @Test
+    public void shutdownAbortsFetches() throws InterruptedException {
+        Listener listener = new Listener();
+        SearchRefresher.Refresh refresh = startHungRefresh(
+                new StubServer.Reply(200, "text/html", PAGE).delay(5000), listener);
+
+        refresher.shutdown();
+
+        long millis = awaitStopped(refresh);
+        assertTrue("stopped after " + millis + "ms", millis < 1000);
+        assertTrue(refresh.isCancelled());
+        assertEquals(0, listener.refreshed.get() + listener.failed.get());
+    }
+
+    @Test
+    public void reportsFailures() throws InterruptedException {
+        Map<String, String> urls = new LinkedHashMap<String, String>();
+        urls.put("missing", server.url("/missing"));
+        refresher = new SearchRefresher(4, 4, 5000);
+        Listener listener = new Listener();
+        refresher.refresh(urls, listener);
+
+        assertTrue(listener.finished.await(10, TimeUnit.SECONDS));
+        assertEquals(0, listener.refreshed.get());
+        assertEquals(1, listener.failed.get());
+    }
+}
@@ -0,0 +1,130 @@
+package com.deitel.enhancedtwittersearches;
+
+import org.junit.Test;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SearchResultParserTest {
+
+    @Test
+    public void parsesSearchPage() throws IOException {
+        List<SearchResult> results = parse(fixture("search_page.html"));
+
+        assertEquals(4, results.size());
+
+        SearchResult first = results.get(0);
+        assertEquals(618876954553810944L, first.getId());
+        assertEquals("AndroidDev", first.getUser());
+        assertEquals("3h", first.getTime());
+        assertEquals("New in #android Studio 1.3: memory profiling & data binding. goo.gl/x",
+                first.getText());
+        assertEquals("https://pbs.twimg.com/media/CJWbG8sWsAA1xyz.jpg:small", first.getImageUrl());
+    }
+
+    @Test
+    public void decodesEntitiesAndLineBreaks() throws IOException {
+        SearchResult second = parse(fixture("search_page.html")).get(1);
+
+        assertEquals("deitel", second.getUser());
+        assertEquals("Line one line two <code> \"quoted\" café 😀 ? & alone",
+                second.getText());
+        assertNull(second.getImageUrl()); // the avatar is not the tweet's image
+    }
+
+    @Test
+    public void handlesVariantMarkup() throws IOException {
+        List<SearchResult> results = parse(fixture("search_page.html"));
+
+        SearchResult third = results.get(2);
+        assertEquals(618860000000000002L, third.getId());
+        assertEquals("Single-quoted class, no image", third.getText());
+        assertNull(third.getImageUrl());
+
+        SearchResult fourth = results.get(3);
+        assertEquals(618850000000000003L, fourth.getId());
+        assertEquals("", fourth.getUser());
+        assertEquals("https://pbs.twimg.com/media/inline.png", fourth.getImageUrl());
+    }
+
+    @Test
+    public void findsNothingOnEmptySearch() throws IOException {
+        assertEquals(0, parse(fixture("empty_search.html")).size());
+    }
+
+    @Test
+    public void sameResultsWhenReadOneCharAtATime() throws IOException {
+        List<SearchResult> whole = parse(fixture("search_page.html"));
+        List<SearchResult> trickled = parse(new OneCharReader(fixture("search_page.html")));
+
+        assertEquals(whole.size(), trickled.size());
+        for (int i = 0; i < whole.size(); ++i) {
+            assertEquals(whole.get(i).getId(), trickled.get(i).getId());
+            assertEquals(whole.get(i).getText(), trickled.get(i).getText());
+            assertEquals(whole.get(i).getImageUrl(), trickled.get(i).getImageUrl());
+        }
+    }
+
+    @Test
+    public void parserIsReusable() throws IOException {
+        SearchResultParser parser = new SearchResultParser();
+        Collector collector = new Collector();
+        assertEquals(4, parser.parse(fixture("search_page.html"), collector));
+        assertEquals(0, parser.parse(fixture("empty_search.html"), collector));
+        assertEquals(4, parser.parse(fixture("search_page.html"), collector));
+        assertEquals(8, collector.results.size());
+    }
+
+    @Test
+    public void survivesTruncatedPage() throws IOException {
+        String page = "<table class=\"tweet\" href=\"/a/status/1\"><div class=\"tweet-text\">cut o";
+        assertEquals(0, parse(new StringReader(page)).size());
+    }
+
+    private Reader fixture(String name) throws IOException {
+        InputStream in = getClass().getResourceAsStream(name);
+        if (in == null)
+            throw new IOException("Missing fixture " + name);
+        return new InputStreamReader(in, "UTF-8");
+    }
+
+    private static List<SearchResult> parse(Reader in) throws IOException {
+        Collector collector = new Collector();
+        try {
+            new SearchResultParser().parse(in, collector);
+        } finally {
+            in.close();
+        }
+        return collector.results;
+    }
+
+    private static class Collector implements SearchResultParser.ResultListener {
+        final List<SearchResult> results = new ArrayList<SearchResult>();
+
+        @Override
+        public void onResult(SearchResult result) {
+            results.add(result);
+        }
+    }
+
+    // hands out one character per read, like a slow network
+    private static class OneCharReader extends FilterReader {
+        OneCharReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return super.read(buffer, offset, Math.min(length, 1));
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.deitel.enhancedtwittersearches;
+
+import org.junit.Test;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class SearchUrlBuilderTest {
+
+    private static final String SEARCH_URL = "http://mobile.twitter.com/search";
+
+    @Test
+    public void encodesLikeUriEncode() {
+        assertEquals("android", encode("android"));
+        assertEquals("a%20b", encode("a b"));
+        assertEquals("_-!.~'()*", encode("_-!.~'()*"));
+        assertEquals("%22exact%20phrase%22", encode("\"exact phrase\""));
+        assertEquals("%23hashtag%20%40user", encode("#hashtag @user"));
+        assertEquals("a%2Bb%26c%3Dd%2Fe%3Ff%25", encode("a+b&c=d/e?f%"));
+        assertEquals("%C3%BCber%20caf%C3%A9", encode("über café"));
+        assertEquals("%E2%82%AC", encode("€"));
+        assertEquals("%F0%9F%98%80", encode("😀")); // one code point, two chars
+        assertEquals("", encode(""));
+    }
+
+    @Test
+    public void encodesUnpairedSurrogatesAsQuestionMark() {
+        assertEquals("a%3Fb", encode("a\ud83db"));
+        assertEquals("%3F", encode("\ude00"));
+        assertEquals("%3F%3F", encode("\ude00\ud83d"));
+    }
+
+    @Test
+    public void matchesReferenceEncodingOfRandomText() throws UnsupportedEncodingException {
+        Random random = new Random(6);
+        for (int n = 0; n < 10000; ++n) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(12);
+            for (int i = 0; i < length; ++i) {
+                switch (random.nextInt(4)) {
+                    case 0:
+                        text.append((char) random.nextInt(0x80)); // ASCII
+                        break;
+                    case 1:
+                        text.append((char) (0x80 + random.nextInt(0x780))); // two UTF-8 bytes
+                        break;
+                    case 2:
+                        text.append((char) random.nextInt(0x10000)); // may be a lone surrogate
+                        break;
+                    default:
+                        text.appendCodePoint(0x10000 + random.nextInt(0x100000));
+                }
+            }
+            String s = text.toString();
+            assertEquals(s, referenceEncode(s), encode(s));
+        }
+    }
+
+    @Test
+    public void buildsEveryFilterCombination() throws UnsupportedEncodingException {
+        SearchUrlBuilder builder = new SearchUrlBuilder(SEARCH_URL);
+        String topic = "java OR #android";
+        for (int filters = 0; filters <= SearchUrlBuilder.ALL_FILTERS; ++filters) {
+            assertEquals("filters " + filters,
+                    legacySearchString(filters, referenceEncode(topic)),
+                    builder.build(filters, topic));
+        }
+    }
+
+    @Test
+    public void listsFiltersInOrder() {
+        SearchUrlBuilder builder = new SearchUrlBuilder(SEARCH_URL);
+        assertEquals(SEARCH_URL + "?q=a", builder.build(SearchUrlBuilder.ALL_FILTERS, "a"));
+        assertEquals(SEARCH_URL + "?q=a", builder.build(0, "a")); // no filter parameters either
+        assertEquals(SEARCH_URL + "?f=tweets&f=videos&q=a",
+                builder.build(SearchUrlBuilder.LIVE | SearchUrlBuilder.VIDEOS, "a"));
+        assertEquals(SEARCH_URL + "?f=news&f=images&q=a",
+                builder.build(SearchUrlBuilder.NEWS | SearchUrlBuilder.PHOTOS, "a"));
+    }
+
+    @Test
+    public void ignoresUnknownFilterBits() {
+        SearchUrlBuilder builder = new SearchUrlBuilder(SEARCH_URL);
+        assertEquals(builder.build(SearchUrlBuilder.NEWS, "a"),
+                builder.build(SearchUrlBuilder.NEWS | 0x100, "a"));
+    }
+
+    private static String encode(String s) {
+        StringBuilder out = new StringBuilder();
+        SearchUrlBuilder.encode(s, out);
+        return out.toString();
+    }
+
+    /**
+     * Uri.encode, which isn't available off Android, through URLEncoder:
+     * both percent-encode UTF-8 bytes, but URLEncoder writes a space as "+"
+     * and also encodes "!~'()".
+     */
+    private static String referenceEncode(String s) throws UnsupportedEncodingException {
+        return URLEncoder.encode(s, "UTF-8")
+                .replace("+", "%20")
+                .replace("%21", "!")
+                .replace("%7E", "~")
+                .replace("%27", "'")
+                .replace("%28", "(")
+                .replace("%29", ")");
+    }
+
+    // the URL MainActivity.buildSearchString built for the checked filters
+    private static String legacySearchString(int filters, String topic) {
+        if (filters == SearchUrlBuilder.ALL_FILTERS)
+            return SEARCH_URL + "?q=" + topic;
+
+        StringBuilder filterString = new StringBuilder("?");
+        if ((filters & SearchUrlBuilder.LIVE) != 0)
+            filterString.append("f=tweets&");
+        if ((filters & SearchUrlBuilder.NEWS) != 0)
+            filterString.append("f=news&");
+        if ((filters & SearchUrlBuilder.PHOTOS) != 0)
+            filterString.append("f=images&");
+        if ((filters & SearchUrlBuilder.VIDEOS) != 0)
+            filterString.append("f=videos&");
+        return SEARCH_URL + filterString.toString() + "q=" + topic;
+    }
+}
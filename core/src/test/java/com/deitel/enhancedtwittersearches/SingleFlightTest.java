@@ -0,0 +1,171 @@
+package com.deitel.enhancedtwittersearches;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    private static final int FOLLOWERS = 7;
+    private static int instances; // counters are shared, so each test gets its own name
+
+    private SingleFlight<String, String> flight;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        flight = new SingleFlight<String, String>("SingleFlightTest" + ++instances);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    // a load that waits for release, counting how often it ran
+    private static class BlockedLoad implements SingleFlight.Load<String> {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger();
+        final String value;
+        final IOException error;
+
+        BlockedLoad(String value, IOException error) {
+            this.value = value;
+            this.error = error;
+        }
+
+        @Override
+        public String load() throws IOException {
+            runs.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            if (error != null)
+                throw error;
+            return value;
+        }
+    }
+
+    private Future<String> submit(final String key, final SingleFlight.Load<String> load) {
+        return executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                return flight.execute(key, load);
+            }
+        });
+    }
+
+    // starts a blocked leader and FOLLOWERS callers of key that wait for it
+    private List<Future<String>> startFlight(String key, BlockedLoad load)
+            throws InterruptedException {
+        List<Future<String>> calls = new ArrayList<Future<String>>();
+        calls.add(submit(key, load));
+        assertTrue(load.started.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < FOLLOWERS; ++i)
+            calls.add(submit(key, load));
+
+        // followers count as suppressed before they wait
+        long deadline = System.currentTimeMillis() + 5000;
+        while (flight.getSuppressedCount() < FOLLOWERS) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        return calls;
+    }
+
+    @Test
+    public void followersShareTheLeadersValue() throws Exception {
+        BlockedLoad load = new BlockedLoad("page", null);
+        List<Future<String>> calls = startFlight("key", load);
+
+        load.release.countDown();
+
+        for (Future<String> call : calls)
+            assertSame(load.value, call.get(5, TimeUnit.SECONDS));
+        assertEquals(1, load.runs.get());
+        assertEquals(1, flight.getLoadCount());
+        assertEquals(FOLLOWERS, flight.getSuppressedCount());
+    }
+
+    @Test
+    public void followersGetTheLeadersException() throws Exception {
+        IOException error = new IOException("HTTP 500");
+        BlockedLoad load = new BlockedLoad(null, error);
+        List<Future<String>> calls = startFlight("key", load);
+
+        load.release.countDown();
+
+        for (Future<String> call : calls) {
+            try {
+                call.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertSame(error, e.getCause());
+            }
+        }
+        assertEquals(1, load.runs.get());
+        assertEquals(1, flight.getLoadCount());
+        assertEquals(FOLLOWERS, flight.getSuppressedCount());
+    }
+
+    @Test
+    public void forgetsKeyOnceLoaded() throws Exception {
+        BlockedLoad load = new BlockedLoad("first", null);
+        load.release.countDown();
+        assertEquals("first", flight.execute("key", load));
+
+        // a later call loads afresh, also after a failure
+        BlockedLoad failing = new BlockedLoad(null, new IOException());
+        failing.release.countDown();
+        try {
+            flight.execute("key", failing);
+            fail();
+        } catch (IOException expected) {
+        }
+        BlockedLoad second = new BlockedLoad("second", null);
+        second.release.countDown();
+        assertEquals("second", flight.execute("key", second));
+
+        assertEquals(3, flight.getLoadCount());
+        assertEquals(0, flight.getSuppressedCount());
+    }
+
+    @Test
+    public void keysLoadIndependently() throws Exception {
+        BlockedLoad blocked = new BlockedLoad("a", null);
+        Future<String> a = submit("a", blocked);
+        assertTrue(blocked.started.await(5, TimeUnit.SECONDS));
+
+        // "b" does not wait for the load of "a"
+        BlockedLoad other = new BlockedLoad("b", null);
+        other.release.countDown();
+        assertEquals("b", flight.execute("b", other));
+
+        blocked.release.countDown();
+        assertEquals("a", a.get(5, TimeUnit.SECONDS));
+        assertEquals(2, flight.getLoadCount());
+        assertEquals(0, flight.getSuppressedCount());
+    }
+}
@@ -0,0 +1,173 @@
+package com.deitel.enhancedtwittersearches;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local HTTP server for tests, answering each path with a canned response
+ * and recording the requests it receives. Requests are served on a thread
+ * each, so concurrent clients are answered concurrently.
+ */
+class StubServer {
+
+    // a canned response
+    static class Reply {
+        final int status;
+        final String contentType;
+        final byte[] body;
+        final Map<String, String> headers = new HashMap<String, String>();
+        long delayMillis; // before the response is sent
+        long stallMillis; // after the first half of the body is sent
+
+        Reply(int status, String contentType, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        Reply header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        Reply delay(long millis) {
+            delayMillis = millis;
+            return this;
+        }
+
+        Reply stall(long millis) {
+            stallMillis = millis;
+            return this;
+        }
+    }
+
+    // a request received
+    static class Request {
+        final String path;
+        final String cookie;
+
+        Request(String path, String cookie) {
+            this.path = path;
+            this.cookie = cookie;
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger inFlight = new AtomicInteger(); // requests being answered
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final Map<String, Reply> replies =
+            Collections.synchronizedMap(new HashMap<String, Reply>());
+    private final List<Request> requests =
+            Collections.synchronizedList(new ArrayList<Request>());
+
+    StubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().toString();
+                requests.add(new Request(path, exchange.getRequestHeaders().getFirst("Cookie")));
+                int count = inFlight.incrementAndGet();
+                while (true) {
+                    int max = maxInFlight.get();
+                    if (count <= max || maxInFlight.compareAndSet(max, count))
+                        break;
+                }
+                respond(exchange, path);
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    private void respond(HttpExchange exchange, String path) throws IOException {
+        Reply reply = replies.get(path);
+        if (reply == null)
+            reply = new Reply(404, "text/plain", new byte[0]);
+        sleep(reply.delayMillis);
+        if (reply.contentType != null)
+            exchange.getResponseHeaders().set("Content-Type", reply.contentType);
+        for (Map.Entry<String, String> header : reply.headers.entrySet())
+            exchange.getResponseHeaders().set(header.getKey(), header.getValue());
+
+        // the client can send its next request as soon as it has read the whole
+        // reply, so the request stops counting before the last bytes go out
+        boolean empty = reply.body.length == 0;
+        if (empty)
+            inFlight.decrementAndGet();
+        exchange.sendResponseHeaders(reply.status, empty ? -1 : reply.body.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            int half = reply.body.length / 2;
+            out.write(reply.body, 0, half);
+            out.flush();
+            sleep(reply.stallMillis);
+            if (!empty)
+                inFlight.decrementAndGet();
+            out.write(reply.body, half, reply.body.length - half);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // URL of path on this server through host, e.g. "localhost" or "127.0.0.1"
+    String url(String host, String path) {
+        return "http://" + host + ":" + server.getAddress().getPort() + path;
+    }
+
+    String url(String path) {
+        return url("127.0.0.1", path);
+    }
+
+    void reply(String path, Reply reply) {
+        replies.put(path, reply);
+    }
+
+    void page(String path, String contentType, byte[] body) {
+        reply(path, new Reply(200, contentType, body));
+    }
+
+    void redirect(String path, int status, String location) {
+        reply(path, new Reply(status, null, new byte[0]).header("Location", location));
+    }
+
+    List<Request> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<Request>(requests);
+        }
+    }
+
+    // most requests answered at the same time so far
+    int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
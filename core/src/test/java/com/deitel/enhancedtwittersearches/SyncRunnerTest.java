@@ -0,0 +1,175 @@
+package com.deitel.enhancedtwittersearches;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SyncRunnerTest {
+
+    private static final String TYPE = "text/html; charset=UTF-8";
+
+    // a clock that only moves when a test moves it
+    private static class FakeClock implements SyncRunner.Clock {
+        final AtomicLong millis = new AtomicLong(1000);
+
+        @Override
+        public long now() {
+            return millis.get();
+        }
+
+        void advance(long delta) {
+            millis.addAndGet(delta);
+        }
+    }
+
+    // records what each tag was synced with
+    private static class Sink implements SyncRunner.ResultSink {
+        final Map<String, List<SearchResult>> synced =
+                new ConcurrentHashMap<String, List<SearchResult>>();
+
+        @Override
+        public void onSynced(String tag, List<SearchResult> results) {
+            synced.put(tag, results);
+        }
+    }
+
+    private StubServer server;
+    private FakeClock clock;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StubServer();
+        clock = new FakeClock();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    // a search page with one tweet per id
+    private static byte[] page(long... ids) {
+        StringBuilder html = new StringBuilder("<html><body>");
+        for (long id : ids)
+            html.append("<table class=\"tweet\" href=\"/user/status/").append(id).append("\">")
+                    .append("<tr><td class=\"tweet-content\"><div class=\"tweet-text\" data-id=\"")
+                    .append(id).append("\">tweet ").append(id).append("</div></td></tr></table>");
+        return html.append("</body></html>").toString().getBytes();
+    }
+
+    @Test
+    public void syncsEverySearch() throws Exception {
+        server.page("/a", TYPE, page(1, 2));
+        server.page("/b", TYPE, page(3));
+        Map<String, String> urls = new LinkedHashMap<String, String>();
+        urls.put("a", server.url("/a"));
+        urls.put("b", server.url("/b"));
+        urls.put("missing", server.url("/missing"));
+        Sink sink = new Sink();
+
+        SyncRunner.Report report =
+                new SyncRunner(2, 60000, 1 << 20, 5000, clock).run(urls, sink);
+
+        assertEquals(2, report.synced);
+        assertEquals(1, report.failed);
+        assertEquals(0, report.skipped);
+        assertEquals(page(1, 2).length + page(3).length, report.bytes);
+        assertEquals(0, report.millis);
+        assertEquals(2, sink.synced.get("a").size());
+        assertEquals(3, sink.synced.get("b").get(0).getId());
+    }
+
+    @Test
+    public void emptyRun() throws Exception {
+        SyncRunner.Report report = new SyncRunner(2, 60000, 1 << 20, 5000, clock)
+                .run(Collections.<String, String>emptyMap(), new Sink());
+
+        assertEquals(0, report.synced + report.failed + report.skipped);
+        assertEquals(0, report.bytes);
+    }
+
+    @Test
+    public void stopsWhenBytesAreSpent() throws Exception {
+        byte[] body = page(1, 2, 3);
+        Map<String, String> urls = new LinkedHashMap<String, String>();
+        for (int i = 0; i < 4; ++i) {
+            server.page("/" + i, TYPE, body);
+            urls.put("tag" + i, server.url("/" + i));
+        }
+
+        // the budget covers the first page and part of the second
+        SyncRunner.Report report = new SyncRunner(1, 60000, body.length + body.length / 2,
+                5000, clock).run(urls, new Sink());
+
+        assertEquals(1, report.synced);
+        assertEquals(1, report.failed);
+        assertEquals(2, report.skipped);
+        assertEquals(2 * body.length, report.bytes); // the second page was read before failing
+    }
+
+    @Test
+    public void stopsWhenTimeIsSpent() throws Exception {
+        Map<String, String> urls = new LinkedHashMap<String, String>();
+        for (int i = 0; i < 4; ++i) {
+            server.page("/" + i, TYPE, page(i));
+            urls.put("tag" + i, server.url("/" + i));
+        }
+        Sink sink = new Sink() {
+            @Override
+            public void onSynced(String tag, List<SearchResult> results) {
+                super.onSynced(tag, results);
+                clock.advance(6000); // each search takes 6s on the fake clock
+            }
+        };
+
+        SyncRunner.Report report = new SyncRunner(1, 10000, 1 << 20, 5000, clock).run(urls, sink);
+
+        assertEquals(2, report.synced);
+        assertEquals(2, report.skipped);
+        assertEquals(12000, report.millis);
+        assertTrue(sink.synced.containsKey("tag0"));
+        assertTrue(sink.synced.containsKey("tag1"));
+    }
+
+    @Test
+    public void stopsWaitingAtClockDeadline() throws Exception {
+        // a fetch that hangs for longer than the test is willing to wait
+        server.reply("/slow", new StubServer.Reply(200, TYPE, page(1)).delay(3000));
+        Map<String, String> urls = new LinkedHashMap<String, String>();
+        urls.put("slow", server.url("/slow"));
+
+        // the deadline passes on the fake clock while the fetch is in flight
+        Thread ticker = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                clock.advance(60000);
+            }
+        };
+        ticker.start();
+        long wallStart = System.nanoTime();
+        SyncRunner.Report report =
+                new SyncRunner(1, 10000, 1 << 20, 10000, clock).run(urls, new Sink());
+        long wallMillis = (System.nanoTime() - wallStart) / 1000000;
+        ticker.join();
+
+        assertTrue("waited " + wallMillis + "ms", wallMillis < 2000);
+        assertEquals(0, report.synced);
+        assertEquals(60000, report.millis);
+    }
+}
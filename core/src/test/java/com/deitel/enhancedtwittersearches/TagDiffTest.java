@@ -0,0 +1,146 @@
+package com.deitel.enhancedtwittersearches;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TagDiffTest {
+
+    private static List<String> tags(String... tags) {
+        return Arrays.asList(tags);
+    }
+
+    // checks diff against a scan of both lists
+    private static void assertDiff(List<String> oldTags, List<String> newTags) {
+        TagDiff diff = TagDiff.compute(oldTags, newTags);
+        String context = oldTags + " -> " + newTags;
+
+        HashSet<String> oldSet = new HashSet<String>(oldTags);
+        HashSet<String> newSet = new HashSet<String>(newTags);
+        ArrayList<String> removed = new ArrayList<String>();
+        ArrayList<String> keptOld = new ArrayList<String>(); // in old order
+        for (String tag : oldTags) {
+            if (newSet.contains(tag))
+                keptOld.add(tag);
+            else
+                removed.add(tag);
+        }
+        ArrayList<String> keptNew = new ArrayList<String>(); // in new order
+        for (String tag : newTags) {
+            if (oldSet.contains(tag))
+                keptNew.add(tag);
+        }
+
+        assertEquals(context, oldTags.size(), diff.getOldSize());
+        assertEquals(context, newTags.size(), diff.getNewSize());
+        assertEquals(context, removed, diff.getRemovedTags());
+        assertEquals(context, removed.size(), diff.getRemoveCount());
+        assertEquals(context, newTags.size() - keptNew.size(), diff.getInsertCount());
+        assertEquals(context, keptOld.size() - commonSubsequence(keptOld, keptNew),
+                diff.getMoveCount());
+        assertEquals(context, oldTags.equals(newTags), diff.isEmpty());
+        for (int i = 0; i < oldTags.size(); ++i)
+            assertEquals(context + " at " + i, newTags.indexOf(oldTags.get(i)), diff.newPosition(i));
+    }
+
+    // length of the longest common subsequence, by dynamic programming
+    private static int commonSubsequence(List<String> a, List<String> b) {
+        int[][] lengths = new int[a.size() + 1][b.size() + 1];
+        for (int i = 1; i <= a.size(); ++i) {
+            for (int j = 1; j <= b.size(); ++j) {
+                lengths[i][j] = a.get(i - 1).equals(b.get(j - 1)) ? lengths[i - 1][j - 1] + 1 :
+                        Math.max(lengths[i - 1][j], lengths[i][j - 1]);
+            }
+        }
+        return lengths[a.size()][b.size()];
+    }
+
+    @Test
+    public void sameTags() {
+        TagDiff diff = TagDiff.compute(tags("a", "b", "c"), tags("a", "b", "c"));
+
+        assertTrue(diff.isEmpty());
+        assertEquals("+0 -0 ~0 of 3", diff.toString());
+        assertDiff(tags(), tags());
+    }
+
+    @Test
+    public void inserts() {
+        assertDiff(tags("a", "c"), tags("a", "b", "c"));
+        assertDiff(tags("b", "c"), tags("a", "b", "c"));
+        assertDiff(tags("a", "b"), tags("a", "b", "c", "d")); // appended chunk
+        assertDiff(tags(), tags("a", "b"));
+        assertDiff(tags("a", "d"), tags("a", "b", "c", "d", "e"));
+    }
+
+    @Test
+    public void removals() {
+        assertDiff(tags("a", "b", "c"), tags("a", "c"));
+        assertDiff(tags("a", "b", "c"), tags("b", "c"));
+        assertDiff(tags("a", "b", "c"), tags());
+        assertDiff(tags("a", "b", "c", "d", "e"), tags("b", "d"));
+    }
+
+    @Test
+    public void moves() {
+        TagDiff diff = TagDiff.compute(tags("a", "b", "c", "d"), tags("d", "a", "b", "c"));
+        assertEquals(1, diff.getMoveCount());
+        assertEquals(1, diff.newPosition(0));
+        assertEquals(0, diff.newPosition(3));
+
+        assertDiff(tags("a", "b", "c", "d"), tags("b", "c", "d", "a"));
+        assertDiff(tags("a", "b", "c", "d"), tags("d", "c", "b", "a"));
+        assertDiff(tags("a", "b", "c", "d", "e"), tags("a", "d", "c", "b", "e")); // head and tail kept
+    }
+
+    @Test
+    public void mixed() {
+        assertDiff(tags("a", "b", "c", "d", "e"), tags("e", "x", "b", "a", "y"));
+        assertDiff(tags("a", "b", "c"), tags("x", "y", "z"));
+        assertDiff(tags("a", "b", "c", "d"), tags("a", "c", "x", "b", "d"));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsPositionOutsideOldTags() {
+        TagDiff.compute(tags("a"), tags("a", "b")).newPosition(1);
+    }
+
+    @Test
+    public void randomEdits() {
+        Random random = new Random(22);
+        for (int run = 0; run < 500; ++run) {
+            ArrayList<String> oldTags = new ArrayList<String>();
+            LinkedHashSet<String> unique = new LinkedHashSet<String>();
+            for (int i = random.nextInt(30); i > 0; --i)
+                unique.add("tag" + random.nextInt(1000));
+            oldTags.addAll(unique);
+
+            // a few inserts, removals and moves
+            ArrayList<String> newTags = new ArrayList<String>(oldTags);
+            for (int edit = random.nextInt(5); edit > 0; --edit) {
+                int kind = random.nextInt(3);
+                if (kind == 0) {
+                    String tag = "new" + run + "_" + edit;
+                    newTags.add(random.nextInt(newTags.size() + 1), tag);
+                } else if (!newTags.isEmpty()) {
+                    String tag = newTags.remove(random.nextInt(newTags.size()));
+                    if (kind == 2)
+                        newTags.add(random.nextInt(newTags.size() + 1), tag);
+                }
+            }
+            if (random.nextInt(10) == 0)
+                Collections.shuffle(newTags, random);
+
+            assertDiff(oldTags, newTags);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.deitel.enhancedtwittersearches;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+public class TagFilterTest {
+
+    private ArrayList<SavedSearch> searches;
+    private TagFilter filter;
+
+    @Before
+    public void setUp() {
+        searches = new ArrayList<SavedSearch>(Arrays.asList(
+                new SavedSearch("Android", "#android OR #androiddev"),
+                new SavedSearch("deitel", "from:deitel java"),
+                new SavedSearch("Mars", "curiosity rover"),
+                new SavedSearch("mars", "NASA mars"),
+                new SavedSearch("news", "android news"),
+                new SavedSearch("Weather", "rain OR snow")));
+        filter = new TagFilter();
+        filter.addAll(searches);
+    }
+
+    // the tags the filter should return, by scanning every search
+    private List<String> expected(String text) {
+        String prefix = text.trim().toLowerCase(Locale.US);
+        ArrayList<String> tags = new ArrayList<String>();
+        for (SavedSearch search : searches) {
+            String words = " " + search.getTag() + " " + search.getQuery();
+            String lower = words.toLowerCase(Locale.US);
+            for (int i = 1; i < lower.length(); ++i) {
+                boolean wordStart = i == 1 || (Character.isLetterOrDigit(lower.charAt(i)) &&
+                        !Character.isLetterOrDigit(lower.charAt(i - 1)));
+                if (wordStart && lower.startsWith(prefix, i)) {
+                    tags.add(search.getTag());
+                    break;
+                }
+            }
+        }
+        Collections.sort(tags, SavedSearchIndex.TAG_ORDER);
+        return tags;
+    }
+
+    private void assertFilters(String text) {
+        assertEquals(text, expected(text), filter.filter(text));
+    }
+
+    @Test
+    public void matchesWordStartsInTagOrder() {
+        assertEquals(Arrays.asList("Android", "news"), filter.filter("andr"));
+        assertEquals(Arrays.asList("Mars", "mars"), filter.filter("MARS"));
+        assertEquals(Arrays.asList("deitel"), filter.filter("java"));
+        assertEquals(Collections.<String>emptyList(), filter.filter("ndroid"));
+    }
+
+    @Test
+    public void typingAndDeleting() {
+        String[] typed = {"", "a", "an", "and", "andr", "and", "an", "a", "",
+                "r", "ra", "rai", "ro", "n", "na", "nas", "ne", "x", ""};
+        for (String text : typed)
+            assertFilters(text);
+    }
+
+    @Test
+    public void pastingAndReplacing() {
+        assertFilters("android");
+        assertFilters("mars");
+        assertFilters("ma");
+        assertFilters("curiosity rover");
+        assertFilters("c");
+    }
+
+    @Test
+    public void followsAddAndRemove() {
+        assertFilters("an");
+        searches.add(new SavedSearch("Antarctica", "ice"));
+        filter.add("Antarctica", "ice");
+        assertFilters("an");
+        assertFilters("ant");
+
+        searches.remove(4); // news
+        filter.remove("news", "android news");
+        assertFilters("an");
+        assertFilters("n");
+    }
+}